@@ -1,21 +1,35 @@
 package org.jenkinsci.plugins.gitclient;
 
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
 import com.cloudbees.plugins.credentials.common.StandardUsernameCredentials;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 
 import hudson.FilePath;
 import hudson.ProxyConfiguration;
+import hudson.model.TaskListener;
 import hudson.plugins.git.GitException;
 import hudson.remoting.Channel;
+import org.jenkinsci.plugins.gitclient.cgit.GitCommandsExecutor;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryCache;
+import org.eclipse.jgit.util.FS;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Serializable;
 import java.io.Writer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * Common parts between {@link JGitAPIImpl} and {@link CliGitAPIImpl}.
@@ -88,6 +102,129 @@ abstract class AbstractGitAPIImpl implements GitClient, Serializable {
         merge().setRevisionToMerge(rev).execute();
     }
 
+    /**
+     * Lists the references of a remote repository like
+     * {@link #getRemoteReferences(String, String, boolean, boolean)}, with
+     * the given credentials instead of those added to this client.
+     *
+     * @param url URL of the remote repository
+     * @param credentials credentials for the repository, or null to use the credentials of this client for the URL
+     * @param pattern only references matching this pattern, null for all references
+     * @param headsOnly if true, only list the references below refs/heads/
+     * @param tagsOnly if true, only list the references below refs/tags/
+     * @return references of the repository
+     * @throws GitException if underlying git operation fails.
+     * @throws InterruptedException if interrupted.
+     */
+    abstract Map<String, ObjectId> getRemoteReferences(String url, @CheckForNull StandardCredentials credentials,
+                                                       String pattern, boolean headsOnly, boolean tagsOnly)
+            throws GitException, InterruptedException;
+
+    /* Parallel getRemoteReferences, shared by the implementations */
+    RemoteReferencesCommand remoteReferences(final TaskListener listener) {
+        return new RemoteReferencesCommand() {
+            private final Map<String, List<String>> urlsByHost = new LinkedHashMap<>();
+            private final Map<String, StandardCredentials> credentials = new HashMap<>();
+            private String pattern;
+            private boolean headsOnly;
+            private boolean tagsOnly;
+            private int threads = 4;
+            private int threadsPerHost = 2;
+            private Listener referencesListener;
+
+            @Override
+            public RemoteReferencesCommand repository(String url, @CheckForNull StandardCredentials credentials) {
+                String host = GitOperationRecorder.hostOf(url);
+                urlsByHost.computeIfAbsent(host == null ? "" : host, k -> new ArrayList<>()).add(url);
+                this.credentials.put(url, credentials);
+                return this;
+            }
+
+            @Override
+            public RemoteReferencesCommand pattern(String pattern) {
+                this.pattern = pattern;
+                return this;
+            }
+
+            @Override
+            public RemoteReferencesCommand headsOnly(boolean headsOnly) {
+                this.headsOnly = headsOnly;
+                return this;
+            }
+
+            @Override
+            public RemoteReferencesCommand tagsOnly(boolean tagsOnly) {
+                this.tagsOnly = tagsOnly;
+                return this;
+            }
+
+            @Override
+            public RemoteReferencesCommand threads(int threads) {
+                this.threads = threads;
+                return this;
+            }
+
+            @Override
+            public RemoteReferencesCommand threadsPerHost(int threadsPerHost) {
+                this.threadsPerHost = threadsPerHost;
+                return this;
+            }
+
+            @Override
+            public RemoteReferencesCommand listener(Listener listener) {
+                this.referencesListener = listener;
+                return this;
+            }
+
+            @Override
+            public void execute() throws GitException, InterruptedException {
+                if (referencesListener == null) {
+                    throw new IllegalStateException("No listener for the references");
+                }
+                final Object callbackLock = new Object();
+                Map<String, List<Callable<Void>>> commandsByHost = new LinkedHashMap<>();
+                for (Map.Entry<String, List<String>> entry : urlsByHost.entrySet()) {
+                    List<Callable<Void>> commands = new ArrayList<>();
+                    for (String url : entry.getValue()) {
+                        commands.add(() -> {
+                            Map<String, ObjectId> references;
+                            try {
+                                references = getRemoteReferences(url, credentials.get(url), pattern, headsOnly, tagsOnly);
+                            } catch (GitException e) {
+                                synchronized (callbackLock) {
+                                    referencesListener.onFailure(url, e);
+                                }
+                                return null;
+                            }
+                            synchronized (callbackLock) {
+                                referencesListener.onReferences(url, references);
+                            }
+                            return null;
+                        });
+                    }
+                    commandsByHost.put(entry.getKey(), commands);
+                }
+                new GitCommandsExecutor(threads, listener).invokeAll(commandsByHost, threadsPerHost);
+            }
+        };
+    }
+
+    /**
+     * Fetches the branches of a remote repository below
+     * <code>refs/prefetch/</code> for {@link BackgroundPrefetch}, without
+     * changing <code>FETCH_HEAD</code>.
+     *
+     * @param url remote repository URL
+     * @throws GitException if the fetch failed
+     * @throws InterruptedException if interrupted while fetching
+     */
+    abstract void prefetch(String url) throws GitException, InterruptedException;
+
+    /* A repository without work tree in the directory itself, like reference repositories */
+    static boolean isBareRepository(File dir) {
+        return !new File(dir, Constants.DOT_GIT).exists() && RepositoryCache.FileKey.isGitRepository(dir, FS.DETECTED);
+    }
+
     /**
      * When sent to remote, switch to the proxy.
      *
@@ -0,0 +1,330 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.plugins.git.GitException;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.transport.RefSpec;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background fetches of the remote repositories of workspaces and reference
+ * repositories, so that the fetch of a build finds the objects it needs
+ * already downloaded and only negotiates with the remote repository.
+ * Disabled unless
+ * <code>-Dorg.jenkinsci.plugins.gitclient.BackgroundPrefetch.intervalSeconds</code>
+ * is set to a positive number of seconds.
+ * <p>
+ * Each successful fetch from a remote host registers its repository and
+ * URL, which are then fetched again every <code>intervalSeconds</code>.
+ * Workspaces fetch the branches of the remote repository into
+ * <code>refs/prefetch/</code>, without tags, so that their branches,
+ * remote tracking branches and tags are unchanged, and prune the branches
+ * deleted from the remote repository there; reference repositories are
+ * brought up to date. Like <code>git maintenance prefetch</code>, the
+ * prefetch of a workspace leaves its <code>FETCH_HEAD</code> unchanged and
+ * does not start garbage collection. Repositories where a client of this
+ * JVM runs a fetch, checkout or clone are not prefetched meanwhile.
+ * <p>
+ * A prefetch runs with the credentials and environment of the last fetch
+ * which registered it. Repositories which were not fetched by a client
+ * other than the prefetch for <code>maxIdleIntervals</code> (default 24)
+ * intervals are forgotten with their credentials.
+ * <p>
+ * One repository is prefetched at a time, and a host is sent at most one
+ * prefetch every <code>hostIntervalSeconds</code> (default 30). No
+ * prefetch starts while the system load average per processor is above
+ * <code>maxLoad</code> (default 0.5). Each failed prefetch doubles the
+ * interval of its repository, up to 16 times the interval. Deleted
+ * repositories are forgotten, and so are the least recently registered
+ * ones beyond <code>maxEntries</code> (default 100).
+ */
+final class BackgroundPrefetch {
+
+    static final long INTERVAL_SECONDS = Long.getLong(BackgroundPrefetch.class.getName() + ".intervalSeconds", 0);
+    static final long HOST_INTERVAL_SECONDS = Long.getLong(BackgroundPrefetch.class.getName() + ".hostIntervalSeconds", 30);
+    static final double MAX_LOAD = Double.parseDouble(System.getProperty(BackgroundPrefetch.class.getName() + ".maxLoad", "0.5"));
+    static final int MAX_ENTRIES = Integer.getInteger(BackgroundPrefetch.class.getName() + ".maxEntries", 100);
+    static final int MAX_IDLE_INTERVALS = Integer.getInteger(BackgroundPrefetch.class.getName() + ".maxIdleIntervals", 24);
+
+    private static final int MAX_BACKOFF_SHIFT = 4;
+    private static final Logger LOGGER = Logger.getLogger(BackgroundPrefetch.class.getName());
+
+    private static final BackgroundPrefetch INSTANCE = new BackgroundPrefetch(INTERVAL_SECONDS, HOST_INTERVAL_SECONDS, TimeUnit.SECONDS, MAX_LOAD, MAX_ENTRIES, MAX_IDLE_INTERVALS, true);
+
+    /* Repositories where a client of this JVM runs a command, by the number of commands */
+    private static final ConcurrentMap<String, Integer> IN_USE = new ConcurrentHashMap<>();
+
+    /**
+     * Fetches a registered repository.
+     */
+    @FunctionalInterface
+    interface Prefetch {
+        void run() throws GitException, InterruptedException;
+    }
+
+    /**
+     * Marks a repository used by a command, until {@link #close()}.
+     */
+    static final class InUse implements AutoCloseable {
+        private final String key;
+        private boolean closed;
+
+        private InUse(String key) {
+            this.key = key;
+            IN_USE.merge(key, 1, Integer::sum);
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                IN_USE.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final File dir;
+        private final String host;
+        private Prefetch prefetch;
+        private long registered;
+        private long due;
+        private int failures;
+
+        Entry(File dir, String host) {
+            this.dir = dir;
+            this.host = host;
+        }
+    }
+
+    private final long intervalMillis;
+    private final long hostIntervalMillis;
+    private final double maxLoad;
+    private final int maxEntries;
+    private final long maxIdleMillis;
+    private final boolean scheduled;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final Map<String, Long> lastPrefetchOfHost = new HashMap<>();
+    private ScheduledExecutorService executor;
+    /* Fetches of the prefetches register them again, which must not extend their lifetime */
+    private Thread prefetchThread;
+
+    /**
+     * @param scheduled false if only {@link #prefetchDue()} runs the prefetches, for tests
+     */
+    BackgroundPrefetch(long interval, long hostInterval, TimeUnit unit, double maxLoad, int maxEntries, int maxIdleIntervals, boolean scheduled) {
+        this.intervalMillis = unit.toMillis(interval);
+        this.hostIntervalMillis = Math.max(1000, unit.toMillis(hostInterval));
+        this.maxLoad = maxLoad;
+        this.maxEntries = maxEntries;
+        this.maxIdleMillis = intervalMillis * Math.max(1, maxIdleIntervals);
+        this.scheduled = scheduled;
+    }
+
+    static BackgroundPrefetch get() {
+        return INSTANCE;
+    }
+
+    boolean isEnabled() {
+        return intervalMillis > 0;
+    }
+
+    /**
+     * Refspec of the workspace prefetches from a remote repository.
+     *
+     * @param url remote repository URL
+     * @return refspec fetching the branches below <code>refs/prefetch/</code>
+     */
+    @NonNull
+    static RefSpec refSpec(@NonNull String url) {
+        String namespace = Util.getDigestOf(RemoteReferenceCache.normalize(url)).substring(0, 16);
+        return new RefSpec("+" + Constants.R_HEADS + "*:refs/prefetch/" + namespace + "/*");
+    }
+
+    /**
+     * Marks a repository used by a command of a client, which prefetches
+     * skip until the command ends.
+     *
+     * @param dir repository directory
+     * @return the mark, to close when the command ends
+     */
+    @NonNull
+    static InUse use(@NonNull File dir) {
+        return new InUse(dir.getAbsolutePath());
+    }
+
+    static boolean isInUse(@NonNull File dir) {
+        return IN_USE.containsKey(dir.getAbsolutePath());
+    }
+
+    /**
+     * Runs the fetch of a prefetch which writes <code>FETCH_HEAD</code>,
+     * then restores the <code>FETCH_HEAD</code> of the last fetch of a
+     * build, which later commands may read. It is not restored if a command
+     * of a client started in the repository meanwhile.
+     *
+     * @param dir repository directory
+     * @param fetchHead <code>FETCH_HEAD</code> file of the repository
+     * @param fetch fetches the remote repository
+     * @throws GitException if the fetch failed
+     * @throws InterruptedException if interrupted while fetching
+     */
+    static void keepFetchHead(@NonNull File dir, @NonNull File fetchHead, @NonNull Prefetch fetch) throws GitException, InterruptedException {
+        byte[] before = readIfExists(fetchHead);
+        try {
+            fetch.run();
+        } finally {
+            if (!isInUse(dir) && !Arrays.equals(before, readIfExists(fetchHead))) {
+                try {
+                    if (before == null) {
+                        Files.deleteIfExists(fetchHead.toPath());
+                    } else {
+                        Files.write(fetchHead.toPath(), before);
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to restore " + fetchHead, e);
+                }
+            }
+        }
+    }
+
+    @CheckForNull
+    private static byte[] readIfExists(File file) {
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Registers a repository fetched from a remote repository, or replaces
+     * the prefetch of a registered one. Repositories of local remotes are
+     * not registered, nor are the fetches of the prefetches themselves.
+     *
+     * @param dir repository directory
+     * @param url remote repository URL
+     * @param prefetch fetches the remote repository, with a client which does not log to a build
+     */
+    void register(@NonNull File dir, @NonNull String url, @NonNull Prefetch prefetch) {
+        String host = GitOperationRecorder.hostOf(url);
+        if (!isEnabled() || host == null || host.isEmpty()) {
+            return;
+        }
+        String key = dir.getAbsolutePath() + " " + RemoteReferenceCache.normalize(url);
+        synchronized (this) {
+            if (Thread.currentThread() == prefetchThread) {
+                return;
+            }
+            Entry entry = entries.remove(key);
+            if (entry == null) {
+                entry = new Entry(dir, host);
+            }
+            /* Just fetched, nothing to prefetch before the next interval */
+            entry.prefetch = prefetch;
+            entry.registered = System.currentTimeMillis();
+            entry.due = entry.registered + intervalMillis;
+            entry.failures = 0;
+            entries.put(key, entry);
+            for (Iterator<Entry> it = entries.values().iterator(); entries.size() > maxEntries && it.hasNext();) {
+                it.next();
+                it.remove();
+            }
+            if (scheduled && executor == null) {
+                executor = Executors.newSingleThreadScheduledExecutor(new NamingThreadFactory(new DaemonThreadFactory(), BackgroundPrefetch.class.getSimpleName()));
+                executor.scheduleWithFixedDelay(this::prefetchDue, hostIntervalMillis, hostIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /* Runs the due prefetches, at most one per host */
+    void prefetchDue() {
+        List<Entry> due = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            Set<String> hosts = new HashSet<>();
+            for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+                Entry entry = it.next();
+                if (!new File(entry.dir, Constants.DOT_GIT).exists() && !AbstractGitAPIImpl.isBareRepository(entry.dir) || now - entry.registered > maxIdleMillis) {
+                    it.remove();
+                    continue;
+                }
+                if (isInUse(entry.dir)) {
+                    continue; // prefetched once the command of the client ended
+                }
+                Long last = lastPrefetchOfHost.get(entry.host);
+                if (entry.due <= now && (last == null || now - last >= hostIntervalMillis) && hosts.add(entry.host)) {
+                    due.add(entry);
+                }
+            }
+        }
+        for (Entry entry : due) {
+            if (isOverloaded()) {
+                return;
+            }
+            if (isInUse(entry.dir)) {
+                continue;
+            }
+            Prefetch prefetch;
+            synchronized (this) {
+                lastPrefetchOfHost.put(entry.host, System.currentTimeMillis());
+                prefetch = entry.prefetch;
+                prefetchThread = Thread.currentThread();
+            }
+            boolean succeeded = false;
+            HostConcurrencyGovernor.Priority priority = HostConcurrencyGovernor.setThreadPriority(HostConcurrencyGovernor.Priority.BACKGROUND);
+            try {
+                prefetch.run();
+                succeeded = true;
+            } catch (RuntimeException e) { // GitException included
+                LOGGER.log(Level.FINE, "Prefetch failed in " + entry.dir, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                HostConcurrencyGovernor.setThreadPriority(priority);
+                synchronized (this) {
+                    prefetchThread = null;
+                }
+            }
+            synchronized (this) {
+                entry.failures = succeeded ? 0 : Math.min(entry.failures + 1, MAX_BACKOFF_SHIFT);
+                entry.due = System.currentTimeMillis() + (intervalMillis << entry.failures);
+            }
+        }
+    }
+
+    private boolean isOverloaded() {
+        double load = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+        return load >= 0 && load / Runtime.getRuntime().availableProcessors() > maxLoad;
+    }
+
+    /* For tests */
+    synchronized int size() {
+        return entries.size();
+    }
+}
@@ -23,20 +23,33 @@ import hudson.plugins.git.IndexEntry;
 import hudson.plugins.git.Revision;
 import hudson.util.ArgumentListBuilder;
 import hudson.util.Secret;
+import jenkins.util.Timer;
 import hudson.Proc;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang.StringUtils;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.ConfigConstants;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.eclipse.jgit.lib.RepositoryCache;
+import org.eclipse.jgit.storage.file.FileBasedConfig;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.RawParseUtils;
+import org.jenkinsci.plugins.gitclient.cgit.CatFileBatch;
 import org.jenkinsci.plugins.gitclient.cgit.GitCommandsExecutor;
+import org.jenkinsci.plugins.gitclient.cgit.GitVersionCache;
+import org.jenkinsci.plugins.gitclient.cgit.LineOutputStream;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted;
 import org.kohsuke.stapler.framework.io.WriterOutputStream;
 
@@ -48,6 +61,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.AclEntry;
 import java.nio.file.attribute.AclEntryPermission;
 import java.nio.file.attribute.AclEntryType;
@@ -59,19 +73,25 @@ import java.nio.file.attribute.UserPrincipal;
 import java.text.MessageFormat;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.util.stream.Collectors;
@@ -83,7 +103,7 @@ import java.util.stream.Collectors;
  * For internal use only, don't use directly. See {@link org.jenkinsci.plugins.gitclient.Git}
  * </b>
  */
-public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
+public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl implements AutoCloseable {
 
     /**
      * Constant which can block use of setsid in git calls for ssh credentialed operations.
@@ -183,9 +203,92 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      */
     private static final boolean USE_FORCE_FETCH = Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".forceFetch", "true"));
 
+    /**
+     * Constant which enables a long-lived <code>git cat-file --batch</code> process for object lookups.
+     *
+     * <code>USE_CAT_FILE_BATCH=Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".useCatFileBatch", "false"))</code>.
+     *
+     * When enabled, revParse, validateRevision, isCommitInRepo,
+     * getTagMessage and lsTree are answered by one git process kept
+     * running for the client instead of a new git process for each call.
+     * The process is stopped by {@link #close()} or after it has been
+     * idle for <code>catFileBatchIdleSeconds</code> seconds (default 60).
+     */
+    static boolean USE_CAT_FILE_BATCH = Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".useCatFileBatch", "false"));
+    private static final int CAT_FILE_BATCH_IDLE_SECONDS = Integer.getInteger(CliGitAPIImpl.class.getName() + ".catFileBatchIdleSeconds", 60);
+
+    /**
+     * Constant which enables answering simple read-only queries without running git.
+     *
+     * <code>IN_PROCESS_READS=Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".inProcessReads", "false"))</code>.
+     *
+     * When enabled, hasGitRepo, getRemoteUrl, getDefaultRemote,
+     * getSubmoduleUrl, getSubmodulePath, refExists and the sparse checkout
+     * setting are read with JGit from the files of the repository. Git is
+     * still run when the answer could depend on something JGit does not
+     * read the way git does: include and includeIf sections, repository
+     * extensions like reftable, linked worktrees, environment variables
+     * which relocate the repository or its configuration, a repository
+     * owned by another user (safe.directory), and values which are not
+     * set in the repository's own configuration file.
+     */
+    static boolean IN_PROCESS_READS = Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".inProcessReads", "false"));
+
+    /**
+     * Constant which enables reuse of credential files between commands.
+     *
+     * <code>REUSE_CREDENTIAL_FILES=Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".reuseCredentialFiles", "false"))</code>.
+     *
+     * When enabled, the private key, passphrase, username and password
+     * files and the GIT_SSH and askpass scripts written for a credential
+     * are kept for the following commands of the same client which use
+     * that credential, instead of being written and deleted for every
+     * command. The files are overwritten and deleted by {@link #close()},
+     * by {@link #clearCredentials()}, after they have not been used for
+     * <code>credentialFilesIdleSeconds</code> seconds (default 300) and when
+     * the JVM exits.
+     */
+    static boolean REUSE_CREDENTIAL_FILES = Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".reuseCredentialFiles", "false"));
+    static int CREDENTIAL_FILES_IDLE_SECONDS = Integer.getInteger(CliGitAPIImpl.class.getName() + ".credentialFilesIdleSeconds", 300);
+
+    /**
+     * Constant which enables ssh connection sharing between commands.
+     *
+     * <code>SSH_CONTROL_MASTER=Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".sshControlMaster", "false"))</code>.
+     *
+     * When enabled, the GIT_SSH wrapper written for ssh private key
+     * credentials runs ssh with <code>ControlMaster=auto</code>, so that
+     * the commands which connect to the same host and user with the same
+     * credentials share one authenticated connection, see
+     * {@link SshControlDirectory}. The shared connection is closed by ssh
+     * after it has been unused for <code>sshControlPersistSeconds</code>
+     * seconds (default 60), or when the JVM exits.
+     */
+    static boolean SSH_CONTROL_MASTER = Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".sshControlMaster", "false"));
+    private static final int SSH_CONTROL_PERSIST_SECONDS = Integer.getInteger(CliGitAPIImpl.class.getName() + ".sshControlPersistSeconds", 60);
+
+    /**
+     * Constant which makes <code>git ls-remote</code> use git protocol version 2.
+     *
+     * <code>USE_PROTOCOL_V2=Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".protocolV2", "false"))</code>.
+     *
+     * With protocol version 2 the server only sends the references below
+     * the prefixes requested by the client, like <code>refs/heads/</code>
+     * for heads only queries, instead of all its references. Command line
+     * git 2.26 and later use protocol version 2 by default, git 2.18 and
+     * later use it when enabled here. Servers which do not support
+     * protocol version 2 answer with all their references as before.
+     */
+    static boolean USE_PROTOCOL_V2 = Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".protocolV2", "false"));
+
+    /* Environment variables which change where git looks for the repository, its refs or its configuration */
+    private static final String[] GIT_LOCATION_VARIABLES = {
+        "GIT_DIR", "GIT_WORK_TREE", "GIT_COMMON_DIR", "GIT_NAMESPACE", "GIT_CONFIG",
+        "GIT_CONFIG_PARAMETERS", "GIT_CONFIG_COUNT", "GIT_OBJECT_DIRECTORY"
+    };
+
     private static final long serialVersionUID = 1;
-    static final String SPARSE_CHECKOUT_FILE_DIR = ".git/info";
-    static final String SPARSE_CHECKOUT_FILE_PATH = ".git/info/sparse-checkout";
+    private static final Logger LOGGER = Logger.getLogger(CliGitAPIImpl.class.getName());
     static final String TIMEOUT_LOG_PREFIX = " # timeout=";
     private static final String INDEX_LOCK_FILE_PATH = ".git" + File.separator + "index.lock";
     transient Launcher launcher;
@@ -196,6 +299,13 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     private StandardCredentials defaultCredentials;
     private StandardCredentials lfsCredentials;
     private final String encoding;
+    private transient CatFileBatch catFileBatch;
+    private transient Map<String, CredentialFiles> credentialFiles;
+    private transient boolean credentialFilesCheckScheduled;
+    private static final Set<File> REUSED_CREDENTIAL_FILES = ConcurrentHashMap.newKeySet();
+    private static boolean credentialFilesShutdownHook;
+    /* Fetches of this client are background prefetches */
+    private transient boolean prefetching;
 
     /* If we fail some helper tool (e.g. SELinux chcon) do not make noise
      * until actually git fails. Use a TreeMap to sort by keys (timestamp).
@@ -252,7 +362,8 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
         String version = "";
         try {
-            version = launchCommand("--version").trim();
+            // The version of an unchanged executable is shared by all clients of this JVM
+            version = GitVersionCache.getVersion(gitExe, () -> launchCommand("--version").trim());
             listener.getLogger().println(" > git --version # '" + version + "'");
         } catch (Throwable e) {
         }
@@ -364,6 +475,9 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public boolean hasGitRepo() throws GitException, InterruptedException {
         if (hasGitRepo(".git")) {
+            if (isValidRepositoryInProcess()) {
+                return true;
+            }
             // Check if this is a valid git repo with --is-inside-work-tree
             try {
                 launchCommand("rev-parse", "--is-inside-work-tree");
@@ -392,6 +506,9 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             return hasGitRepo();
         }
         if (hasGitRepo(".git")) {
+            if (isValidRepositoryInProcess()) {
+                return true;
+            }
             // Check if this is a valid git repo with --resolve-git-dir
             try {
                 launchCommand("rev-parse", "--resolve-git-dir",
@@ -516,6 +633,9 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             private Integer timeout;
             private boolean tags = true;
             private Integer depth = 1;
+            private String filter;
+            private boolean skipIfUpToDate;
+            private List<ObjectId> commits;
 
             @Override
             public FetchCommand from(URIish remote, List<RefSpec> refspecs) {
@@ -559,12 +679,65 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 return this;
             }
 
+            @Override
+            public FetchCommand filter(String filter) {
+                this.filter = filter;
+                return this;
+            }
+
+            @Override
+            public FetchCommand skipIfUpToDate(boolean skipIfUpToDate) {
+                this.skipIfUpToDate = skipIfUpToDate;
+                return this;
+            }
+
+            @Override
+            public FetchCommand commits(List<ObjectId> commits) {
+                this.commits = commits;
+                return this;
+            }
+
+            private boolean isCommitFetch() {
+                return commits != null && !commits.isEmpty();
+            }
+
+            /* Compares the references of the remote repository with the local references */
+            private boolean isUpToDate(URIish remoteUrl, StandardCredentials cred) throws InterruptedException {
+                if (!isCommitFetch() && (refspecs == null || shallow)) {
+                    return false;
+                }
+                try (Repository repo = getRepository()) {
+                    if (isCommitFetch()) {
+                        return FetchCommits.isPresent(repo, commits);
+                    }
+                    Map<String, ObjectId> advertised = getRemoteReferences(remoteUrl.toPrivateString(), cred, null, false, false);
+                    return FetchUpToDate.isUpToDate(advertised, repo, refspecs, tags, prune);
+                } catch (IOException | GitException e) {
+                    listener.getLogger().println("Failed to compare references with " + url + ", fetching: " + e.getMessage());
+                    return false;
+                }
+            }
+
             @Override
             public void execute() throws GitException, InterruptedException {
+                try (BackgroundPrefetch.InUse inUse = BackgroundPrefetch.use(workspace)) {
+                    doExecute();
+                }
+            }
+
+            private void doExecute() throws GitException, InterruptedException {
                 listener.getLogger().println(
                         "Fetching upstream changes from " + url);
 
                 ArgumentListBuilder args = new ArgumentListBuilder();
+                if (isCommitFetch() && USE_PROTOCOL_V2 && isAtLeastVersion(2, 18, 0, 0)) {
+                    /* Protocol version 2 servers may allow fetching any reachable commit */
+                    args.add("-c", "protocol.version=2");
+                }
+                if (prefetching) {
+                    /* Garbage collection is left to the fetches of builds, like git maintenance prefetch does */
+                    args.add("-c", "gc.auto=0", "-c", "maintenance.auto=false");
+                }
                 args.add("fetch");
                 args.add(tags ? "--tags" : "--no-tags");
                 if (USE_FORCE_FETCH && isAtLeastVersion(2, 20, 0, 0)) {
@@ -574,7 +747,11 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 if (isAtLeastVersion(1,7,1,0))
                     args.add("--progress");
 
-                if (prune) args.add("--prune");
+                if (prune && !isCommitFetch()) args.add("--prune");
+
+                if (prefetching && isAtLeastVersion(2, 29, 0, 0)) {
+                    args.add("--no-write-fetch-head");
+                }
 
                 if (shallow) {
                     if (depth == null) {
@@ -583,10 +760,17 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     args.add("--depth=" + depth);
                 }
 
+                if (filter != null && !filter.isEmpty()) {
+                    if (isAtLeastVersion(2, 19, 0, 0)) {
+                        args.add("--filter=" + filter);
+                    } else {
+                        listener.getLogger().println("[WARNING] CLI git 2.19 or newer is required for partial clone. The filter is ignored");
+                    }
+                }
+
                 warnIfWindowsTemporaryDirNameHasSpaces();
 
                 StandardCredentials cred = credentials.get(url.toPrivateString());
-                if (cred == null) cred = defaultCredentials;
                 if (isAtLeastVersion(1,8,0,0)) {
                     addCheckedRemoteUrl(args, url.toPrivateASCIIString());
                 } else {
@@ -601,11 +785,6 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     addCheckedRemoteUrl(args, url.toString());
                 }
 
-                if (refspecs != null)
-                    for (RefSpec rs: refspecs)
-                        if (rs != null)
-                            args.add(rs.toString());
-
                 /* If url looks like a remote name reference, convert to remote URL for authentication */
                 /* See JENKINS-50573 for more details */
                 /* "git remote add" rejects remote names with ':' (and it is a common character in remote URLs) */
@@ -620,12 +799,101 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                         listener.getLogger().println("Unexpected remote name or URL: '" + url + "'");
                     }
                 }
+                if (cred == null && remoteUrl != url) cred = credentials.get(remoteUrl.toPrivateString());
+                if (cred == null) cred = defaultCredentials;
+
+                if (skipIfUpToDate && isUpToDate(remoteUrl, cred)) {
+                    listener.getLogger().println("References are up to date with " + url + ", fetch skipped");
+                    GitOperationRecorder recorder = new GitOperationRecorder("git", "fetch", GitOperationRecorder.hostOf(remoteUrl), timeout);
+                    recorder.skipped();
+                    recorder.succeeded();
+                    recorder.finish();
+                    return;
+                }
+                if (isCommitFetch()) {
+                    fetchCommits(args, remoteUrl, cred);
+                    return;
+                }
+                if (refspecs != null)
+                    for (RefSpec rs: refspecs)
+                        if (rs != null)
+                            args.add(rs.toString());
+                launchCommandWithCredentials(args, workspace, cred, remoteUrl, timeout);
+                if (!shallow && (filter == null || filter.isEmpty())) {
+                    registerPrefetch(remoteUrl, cred);
+                }
+            }
 
+            /* Requests the commits by object id, or through the refspecs covering them if the server refuses */
+            private void fetchCommits(ArgumentListBuilder args, URIish remoteUrl, StandardCredentials cred) throws GitException, InterruptedException {
+                ArgumentListBuilder wantArgs = args.clone();
+                for (RefSpec want : FetchCommits.wants(commits)) {
+                    wantArgs.add(want.toString());
+                }
+                try {
+                    launchCommandWithCredentials(wantArgs, workspace, cred, remoteUrl, timeout);
+                    return;
+                } catch (GitException e) {
+                    List<RefSpec> covering;
+                    try {
+                        Map<String, ObjectId> advertised = getRemoteReferences(remoteUrl.toPrivateString(), cred, null, false, false);
+                        covering = FetchCommits.covering(advertised, commits, refspecs);
+                    } catch (GitException lsRemoteException) {
+                        e.addSuppressed(lsRemoteException);
+                        throw e;
+                    }
+                    if (covering.isEmpty()) {
+                        throw e;
+                    }
+                    listener.getLogger().println("Fetch of commits by object id failed, fetching " + covering + " from " + url);
+                    for (RefSpec rs : covering) {
+                        args.add(rs.toString());
+                    }
+                }
                 launchCommandWithCredentials(args, workspace, cred, remoteUrl, timeout);
             }
         };
     }
 
+    /* Prefetches run with a client of their own, which does not log to this build */
+    private void registerPrefetch(URIish remoteUrl, StandardCredentials cred) {
+        BackgroundPrefetch prefetch = BackgroundPrefetch.get();
+        if (!prefetch.isEnabled()) {
+            return;
+        }
+        String url = remoteUrl.toPrivateString();
+        String exe = gitExe;
+        File dir = workspace;
+        EnvVars env = new EnvVars(environment);
+        prefetch.register(dir, url, () -> {
+            CliGitAPIImpl client = new CliGitAPIImpl(exe, dir, TaskListener.NULL, env);
+            if (cred != null) client.addDefaultCredentials(cred);
+            client.prefetch(url);
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void prefetch(String url) throws GitException, InterruptedException {
+        FetchCommand fetch;
+        try {
+            fetch = fetch_().from(new URIish(url), Collections.singletonList(BackgroundPrefetch.refSpec(url))).tags(false).prune(true);
+        } catch (URISyntaxException e) {
+            throw new GitException("Invalid URL " + url, e);
+        }
+        prefetching = true;
+        try {
+            if (isAtLeastVersion(2, 29, 0, 0)) {
+                fetch.execute();
+            } else {
+                // --no-write-fetch-head requires CLI git 2.29
+                BackgroundPrefetch.keepFetchHead(workspace, new File(gitDir(), "FETCH_HEAD"), fetch::execute);
+            }
+        } finally {
+            prefetching = false;
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public void fetch(URIish url, List<RefSpec> refspecs) throws GitException, InterruptedException {
@@ -706,6 +974,10 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             private boolean tags = true;
             private List<RefSpec> refspecs;
             private Integer depth = 1;
+            private String filter;
+            private String referenceCache;
+            private boolean worktree;
+            private String bundle;
 
             @Override
             public CloneCommand url(String url) {
@@ -777,8 +1049,77 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 return this;
             }
 
+            @Override
+            public CloneCommand filter(String filter) {
+                this.filter = filter;
+                return this;
+            }
+
+            @Override
+            public CloneCommand referenceCache(String directory) {
+                this.referenceCache = directory;
+                return this;
+            }
+
+            @Override
+            public CloneCommand worktree(boolean worktree) {
+                this.worktree = worktree;
+                return this;
+            }
+
+            @Override
+            public CloneCommand bundle(String bundle) {
+                this.bundle = bundle;
+                return this;
+            }
+
+            /* Adds the workspace as a worktree of the reference repository, false if it must be cloned instead */
+            private boolean addWorktree() throws InterruptedException {
+                RefSpec mirrored = ReferenceRepositoryCache.BRANCHES_REFSPEC;
+                if (!isAtLeastVersion(2, 20, 0, 0)) {
+                    listener.getLogger().println("[WARNING] CLI git 2.20 or newer is required for worktrees. The workspace is cloned");
+                    return false;
+                }
+                if (!origin.equals("origin") || (refspecs != null && !refspecs.equals(Collections.singletonList(mirrored)))) {
+                    listener.getLogger().println("[WARNING] Worktrees require the remote name origin and the default refspec. The workspace is cloned");
+                    return false;
+                }
+                ReferenceRepositoryCache cache = ReferenceRepositoryCache.at(referenceCache);
+                if (cache == null) {
+                    listener.getLogger().println("[WARNING] Worktrees require a reference repository cache directory. The workspace is cloned");
+                    return false;
+                }
+                /* Pruning and adding worktrees changes the mirror, which concurrent clones also change */
+                boolean[] added = new boolean[1];
+                File mirror = cache.update(url, (dir, l) -> referenceCacheClient(dir, url, l), listener, dir -> {
+                    CliGitAPIImpl mirrorClient = new CliGitAPIImpl(gitExe, dir, listener, environment);
+                    String start = mirrorClient.launchCommand("for-each-ref", "--count=1", "--format=%(objectname)", "refs/remotes/origin/").trim();
+                    if (start.isEmpty()) {
+                        listener.getLogger().println("[WARNING] Reference repository " + dir + " has no branches. The workspace is cloned");
+                        return;
+                    }
+                    listener.getLogger().println("Adding worktree of reference repository " + dir);
+                    try {
+                        ReferenceRepositoryCache.enableWorktreeConfig(dir);
+                    } catch (IOException e) {
+                        throw new GitException("Failed to enable worktree configuration of " + dir, e);
+                    }
+                    // entries of deleted workspaces, including an earlier worktree in this workspace
+                    mirrorClient.launchCommand("worktree", "prune");
+                    mirrorClient.launchCommand("worktree", "add", "--detach", "--no-checkout", workspace.getAbsolutePath(), start);
+                    added[0] = true;
+                });
+                return mirror != null && added[0];
+            }
+
             @Override
             public void execute() throws GitException, InterruptedException {
+                try (BackgroundPrefetch.InUse inUse = BackgroundPrefetch.use(workspace)) {
+                    doExecute();
+                }
+            }
+
+            private void doExecute() throws GitException, InterruptedException {
 
                 URIish urIish = null;
                 try {
@@ -790,6 +1131,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
                 listener.getLogger().println("Cloning repository " + url);
 
+                close(); // the repository is replaced
                 try {
                     Util.deleteContentsRecursive(workspace);
                 } catch (Exception e) {
@@ -797,11 +1139,23 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     throw new GitException("Failed to delete workspace", e);
                 }
 
+                if (worktree && addWorktree()) {
+                    return;
+                }
+
                 // we don't run a 'git clone' command but git init + git fetch
                 // this allows launchCommandWithCredentials() to pass credentials via a local gitconfig
 
                 init_().workspace(workspace.getAbsolutePath()).execute();
 
+                ReferenceRepositoryCache cache = ReferenceRepositoryCache.at(referenceCache);
+                if (cache != null && !shared && (reference == null || reference.isEmpty())) {
+                    File mirror = cache.update(url, (dir, l) -> referenceCacheClient(dir, url, l), listener);
+                    if (mirror != null) {
+                        reference = mirror.getAbsolutePath();
+                    }
+                }
+
                 if (shared) {
                     if (reference == null || reference.isEmpty()) {
                         // we use origin as reference
@@ -845,11 +1199,46 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 if (refspecs == null) {
                     refspecs = Collections.singletonList(new RefSpec("+refs/heads/*:refs/remotes/"+origin+"/*"));
                 }
-                fetch_().from(urIish, refspecs)
+                boolean partial = filter != null && !filter.isEmpty();
+                if (partial && !isAtLeastVersion(2, 19, 0, 0)) {
+                    listener.getLogger().println("[WARNING] CLI git 2.19 or newer is required for partial clone. The filter is ignored");
+                    partial = false;
+                }
+                URIish fetchFrom = urIish;
+                if (partial) {
+                    /* Objects missing after the clone are fetched later from the promisor remote */
+                    setRemoteUrl(origin, url);
+                    launchCommand("config", "core.repositoryformatversion", "1");
+                    launchCommand("config", "extensions.partialClone", origin);
+                    launchCommand("config", "remote." + origin + ".promisor", "true");
+                    launchCommand("config", "remote." + origin + ".partialclonefilter", filter);
+                    /* Older CLI git only accepts --filter when fetching from the promisor remote by name */
+                    try {
+                        fetchFrom = new URIish(origin);
+                    } catch (URISyntaxException e) {
+                        throw new GitException("Invalid remote name " + origin, e);
+                    }
+                }
+                if (bundle != null && !bundle.isEmpty()) {
+                    if (shallow) {
+                        listener.getLogger().println("[WARNING] Shallow clones are not seeded from a bundle. The bundle is ignored");
+                    } else {
+                        try (CloneBundle cloneBundle = CloneBundle.open(bundle, new File(workspace, Constants.DOT_GIT), proxy, listener)) {
+                            fetch_().from(new URIish(cloneBundle.getFile().getAbsolutePath()), refspecs)
+                                    .timeout(timeout)
+                                    .tags(tags)
+                                    .execute();
+                        } catch (IOException | URISyntaxException | GitException e) {
+                            listener.getLogger().println("[WARNING] Failed to fetch bundle " + bundle + ", fetching everything from " + url + ": " + e.getMessage());
+                        }
+                    }
+                }
+                fetch_().from(fetchFrom, refspecs)
                         .shallow(shallow)
                         .depth(depth)
                         .timeout(timeout)
                         .tags(tags)
+                        .filter(partial ? filter : null)
                         .execute();
                 setRemoteUrl(origin, url);
                 for (RefSpec refSpec : refspecs) {
@@ -860,6 +1249,15 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         };
     }
 
+    /* Client of a reference repository, with the credentials used for its URL */
+    private GitClient referenceCacheClient(File mirror, String url, TaskListener listener) {
+        CliGitAPIImpl client = new CliGitAPIImpl(gitExe, mirror, listener, environment);
+        StandardCredentials cred = credentials.get(url);
+        if (cred == null) cred = defaultCredentials;
+        if (cred != null) client.addDefaultCredentials(cred);
+        return client;
+    }
+
     /**
      * merge.
      *
@@ -1083,6 +1481,10 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public ObjectId revParse(String revName) throws GitException, InterruptedException {
+        CatFileBatch.ObjectData object = catFile(revName + "^{commit}");
+        if (object != null) {
+            return object.getId();
+        }
 
         String arg = sanitize(revName + "^{commit}");
         String result = launchCommand("rev-parse", arg);
@@ -1138,6 +1540,10 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      * @throws java.lang.InterruptedException if interrupted.
      */
     public ObjectId validateRevision(String revName) throws GitException, InterruptedException {
+        CatFileBatch.ObjectData object = catFile(revName);
+        if (object != null) {
+            return object.getId();
+        }
         String result = launchCommand("rev-parse", "--verify", revName);
         String line = StringUtils.trimToNull(result);
         if (line == null)
@@ -1297,9 +1703,13 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             args.add("-1", to.name());
     	}
 
-        StringWriter writer = new StringWriter();
-        writer.write(launchCommand(args));
-        return new ArrayList<>(Arrays.asList(writer.toString().split("\\n")));
+        List<String> lines = new ArrayList<>();
+        launchCommandIn(args, workspace, environment, TIMEOUT, lines::add);
+        // Match String.split(), which drops trailing empty lines
+        while (!lines.isEmpty() && lines.get(lines.size() - 1).isEmpty()) {
+            lines.remove(lines.size() - 1);
+        }
+        return lines;
     }
 
     /**
@@ -1560,6 +1970,10 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      */
     @Override
     public @CheckForNull String getSubmoduleUrl(String name) throws GitException, InterruptedException {
+        String value = getConfigValueInProcess("submodule", name, "url");
+        if (value != null) {
+            return value;
+        }
         String result = launchCommand( "config", "--get", "submodule."+name+".url" );
         return StringUtils.trim(firstLine(result));
     }
@@ -1574,6 +1988,121 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         launchCommand( "config", "submodule."+name+".url", url );
     }
 
+    /**
+     * Returns the configuration file of the repository in the workspace if
+     * queries may be answered from it without running git, otherwise null.
+     */
+    @CheckForNull
+    private FileBasedConfig getRepositoryConfigInProcess() {
+        if (!IN_PROCESS_READS) {
+            return null;
+        }
+        for (String variable : GIT_LOCATION_VARIABLES) {
+            if ((environment != null && environment.containsKey(variable)) || System.getenv(variable) != null) {
+                return null;
+            }
+        }
+        File dotGit = new File(workspace, Constants.DOT_GIT);
+        if (!dotGit.isDirectory() || new File(dotGit, "commondir").exists() || !isOwnedByCurrentUser(dotGit)) {
+            return null;
+        }
+        FileBasedConfig config = loadConfigInProcess(new File(dotGit, Constants.CONFIG));
+        if (config == null
+                || config.getInt(ConfigConstants.CONFIG_CORE_SECTION, ConfigConstants.CONFIG_KEY_REPO_FORMAT_VERSION, 0) > 1) {
+            return null;
+        }
+        for (String extension : config.getNames("extensions")) {
+            if (!extension.equalsIgnoreCase("partialclone") && !extension.equalsIgnoreCase("preciousobjects")
+                    && !extension.equalsIgnoreCase("noop")) {
+                return null; // reftable, worktreeConfig, objectFormat and others
+            }
+        }
+        return config;
+    }
+
+    /* Load a configuration file without its include sections, null if it has any or cannot be read */
+    @CheckForNull
+    private FileBasedConfig loadConfigInProcess(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        FileBasedConfig config = new FileBasedConfig(file, FS.DETECTED);
+        try {
+            config.load();
+        } catch (IOException | ConfigInvalidException e) {
+            return null;
+        }
+        for (String section : config.getSections()) {
+            if (section.equalsIgnoreCase("include") || section.equalsIgnoreCase("includeIf")) {
+                return null;
+            }
+        }
+        return config;
+    }
+
+    /* git refuses to use a repository owned by another user unless it is listed in safe.directory */
+    private boolean isOwnedByCurrentUser(File dotGit) {
+        try {
+            String user = System.getProperty("user.name");
+            return Files.getOwner(workspace.toPath()).getName().equals(user)
+                    && Files.getOwner(dotGit.toPath()).getName().equals(user);
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Value of a key set in the repository's own configuration file, formatted like
+     * <code>git config --get</code> output. Returns null if git must be run to read it.
+     * A value set in the repository configuration file is the value git reports, because
+     * git reads that file after the system and global configuration files.
+     */
+    @CheckForNull
+    private String getConfigValueInProcess(String section, String subsection, String name) {
+        FileBasedConfig config = getRepositoryConfigInProcess();
+        return config == null ? null : configValue(config, section, subsection, name);
+    }
+
+    @CheckForNull
+    private String configValue(FileBasedConfig config, String section, String subsection, String name) {
+        String value = config.getString(section, subsection, name);
+        if (value == null || value.indexOf('\n') >= 0) {
+            return null;
+        }
+        return value.trim();
+    }
+
+    private boolean isValidRepositoryInProcess() {
+        return getRepositoryConfigInProcess() != null
+                && RepositoryCache.FileKey.isGitRepository(new File(workspace, Constants.DOT_GIT), FS.DETECTED);
+    }
+
+    /**
+     * Answers <code>git show-ref refName</code> from the refs of the repository,
+     * or returns null if git must be run to answer it.
+     */
+    @CheckForNull
+    private Boolean refExistsInProcess(String refName) {
+        if (refName.isEmpty() || getRepositoryConfigInProcess() == null) {
+            return null;
+        }
+        try (Repository repo = new RepositoryBuilder().setGitDir(new File(workspace, Constants.DOT_GIT)).setMustExist(true).build()) {
+            if (refName.startsWith(Constants.R_REFS) && repo.exactRef(refName) != null) {
+                return true;
+            }
+            // show-ref matches the pattern against the end of the ref name, on a '/' boundary
+            for (Ref ref : repo.getRefDatabase().getRefsByPrefix(Constants.R_REFS)) {
+                String name = ref.getName();
+                if (name.equals(refName) || name.endsWith("/" + refName)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
     /**
      * Get submodule path.
      *
@@ -1583,6 +2112,14 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      * @throws InterruptedException if interrupted
      */
     public @CheckForNull String getSubmodulePath(String name) throws GitException, InterruptedException {
+        if (IN_PROCESS_READS) {
+            // git config -f does not read include sections or other configuration files
+            FileBasedConfig gitmodules = loadConfigInProcess(new File(workspace, Constants.DOT_GIT_MODULES));
+            String value = gitmodules == null ? null : configValue(gitmodules, "submodule", name, "path");
+            if (value != null) {
+                return value;
+            }
+        }
         String result = launchCommand( "config", "-f", ".gitmodules", "--get", "submodule."+name+".path" );
         return StringUtils.trim(firstLine(result));
     }
@@ -1590,6 +2127,10 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public @CheckForNull String getRemoteUrl(String name) throws GitException, InterruptedException {
+        String value = getConfigValueInProcess("remote", name, "url");
+        if (value != null) {
+            return value;
+        }
         String result = launchCommand( "config", "--get", "remote."+name+".url" );
         return StringUtils.trim(firstLine(result));
     }
@@ -1634,6 +2175,11 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public String getDefaultRemote( String _default_ ) throws GitException, InterruptedException {
+        FileBasedConfig config = getRepositoryConfigInProcess();
+        if (config != null && !config.getNames("remote", _default_).isEmpty()) {
+            // The default is preferred whenever it is defined, the other remotes do not matter
+            return _default_;
+        }
         BufferedReader rdr =
             new BufferedReader(
                 new StringReader( launchCommand( "remote" ) )
@@ -2005,13 +2551,27 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                                                 StandardCredentials credentials,
                                                 @NonNull URIish url,
                                                 Integer timeout) throws GitException, InterruptedException {
+        return launchCommandWithCredentials(args, workDir, credentials, url, timeout, null);
+    }
+
+    private void launchCommandWithCredentials(ArgumentListBuilder args, File workDir,
+                                              StandardCredentials credentials,
+                                              @NonNull String url,
+                                              @NonNull LineOutputStream.LineHandler stdoutHandler) throws GitException, InterruptedException {
+        try {
+            launchCommandWithCredentials(args, workDir, credentials, new URIish(url), TIMEOUT, stdoutHandler);
+        } catch (URISyntaxException e) {
+            throw new GitException("Invalid URL " + url, e);
+        }
+    }
+
+    private String launchCommandWithCredentials(ArgumentListBuilder args, File workDir,
+                                                StandardCredentials credentials,
+                                                @NonNull URIish url,
+                                                Integer timeout,
+                                                @CheckForNull LineOutputStream.LineHandler stdoutHandler) throws GitException, InterruptedException {
 
-        File key = null;
-        File ssh = null;
-        File askpass = null;
-        File usernameFile = null;
-        File passwordFile = null;
-        File passphrase = null;
+        CredentialFiles files = null;
         EnvVars env = environment;
         if (!PROMPT_FOR_AUTHENTICATION && isAtLeastVersion(2, 3, 0, 0)) {
             env = new EnvVars(env);
@@ -2025,26 +2585,16 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 SSHUserPrivateKey sshUser = (SSHUserPrivateKey) credentials;
                 listener.getLogger().println("using GIT_SSH to set credentials " + sshUser.getDescription());
 
-                key = createSshKeyFile(sshUser);
                 // Prefer url username if set, OpenSSH 7.7 argument precedence change
                 // See JENKINS-50573 for details
                 String userName = url.getUser();
                 if (userName == null) {
                     userName = sshUser.getUsername();
                 }
-                passphrase = createPassphraseFile(sshUser);
-                if (launcher.isUnix()) {
-                    ssh =  createUnixGitSSH(key, userName);
-                    askpass =  createUnixSshAskpass(sshUser, passphrase);
-                } else {
-                    ssh = createWindowsGitSSH(key, userName);
-                    askpass =  createWindowsSshAskpass(sshUser, passphrase);
-                }
+                files = acquireCredentialFiles(sshUser, userName);
 
                 env = new EnvVars(env);
-                env.put("GIT_SSH", ssh.getAbsolutePath());
-                env.put("GIT_SSH_VARIANT", "ssh");
-                env.put("SSH_ASKPASS", askpass.getAbsolutePath());
+                env.putAll(files.variables);
 
                 // supply a dummy value for DISPLAY if not already present
                 // or else ssh will not invoke SSH_ASKPASS
@@ -2056,17 +2606,10 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 StandardUsernamePasswordCredentials userPass = (StandardUsernamePasswordCredentials) credentials;
                 listener.getLogger().println("using GIT_ASKPASS to set credentials " + userPass.getDescription());
 
-                usernameFile = createUsernameFile(userPass);
-                passwordFile = createPasswordFile(userPass);
-                if (launcher.isUnix()) {
-                    askpass = createUnixStandardAskpass(userPass, usernameFile, passwordFile);
-                } else {
-                    askpass = createWindowsStandardAskpass(userPass, usernameFile, passwordFile);
-                }
+                files = acquireCredentialFiles(userPass, null);
 
                 env = new EnvVars(env);
-                env.put("GIT_ASKPASS", askpass.getAbsolutePath());
-                env.put("SSH_ASKPASS", askpass.getAbsolutePath());
+                env.putAll(files.variables);
             }
 
             if ("http".equalsIgnoreCase(url.getScheme()) || "https".equalsIgnoreCase(url.getScheme())) {
@@ -2099,37 +2642,303 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 }
             }
 
-            return launchCommandIn(args, workDir, env, timeout);
+            return launchCommandIn(args, workDir, env, timeout, stdoutHandler, url);
         } catch (IOException e) {
             throw new GitException("Failed to setup credentials", e);
         } finally {
-            deleteTempFile(key);
-            deleteTempFile(ssh);
-            deleteTempFile(askpass);
-            deleteTempFile(passphrase);
-            deleteTempFile(usernameFile);
-            deleteTempFile(passwordFile);
+            if (files != null) {
+                releaseCredentialFiles(files);
+            }
         }
     }
 
-    @SuppressFBWarnings(value = "DMI_HARDCODED_ABSOLUTE_FILENAME",
-        justification = "Path operations below intentionally use absolute '/usr/bin/chcon' and '/sys/fs/selinux/enforce' and '/proc/self/attr/current' at this time (as delivered in relevant popular Linux distros)"
-        )
-    private Boolean fixSELinuxLabel(File key, String label) {
-        // returning false means chcon was tried and failed,
-        // maybe caller needs to retry with other logic
-        // true means all ok, including nothing needs to be done
-        if (!launcher.isUnix()) return true;
-
-        // JENKINS-64913: SELinux Enforced mode forbids SSH client to read
-        // "untrusted" key files.
-        // Check that tools exist and then if SELinux subsystem is activated
-        // Otherwise calling the tools just pollutes build log with errors
-        if (Files.isExecutable(Paths.get("/usr/bin/chcon"))) {
-            // SELinux may actually forbid us to read system paths, so
-            // there are a couple of ways to try checking if it is enabled
-            // (whether this run needs to worry about security labels) and
-            // we genuinely do not care if we failed to probe those points
+    /**
+     * Files written for one credential and the environment variables which
+     * point git at them. Shared by concurrent commands when credential files
+     * are reused, {@link #users} counts the commands using them.
+     */
+    private static final class CredentialFiles {
+        private final String key;
+        private final List<File> files = new ArrayList<>();
+        private final Map<String, String> variables = new HashMap<>();
+        private int users;
+        private long lastUsed;
+
+        CredentialFiles(String key) {
+            this.key = key;
+        }
+
+        boolean exist() {
+            for (File file : files) {
+                if (!file.exists()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private CredentialFiles acquireCredentialFiles(StandardCredentials credentials, @CheckForNull String sshUserName) throws IOException, InterruptedException {
+        if (!REUSE_CREDENTIAL_FILES) {
+            CredentialFiles files = new CredentialFiles(null);
+            boolean written = false;
+            try {
+                writeCredentialFiles(files, credentials, sshUserName);
+                written = true;
+            } finally {
+                if (!written) {
+                    wipeCredentialFiles(files);
+                }
+            }
+            files.users = 1;
+            return files;
+        }
+        String key = credentialFilesKey(credentials, sshUserName);
+        List<CredentialFiles> removed = new ArrayList<>();
+        synchronized (this) {
+            CredentialFiles files = keptCredentialFiles(key, removed);
+            if (files != null) {
+                files.users++;
+                return files;
+            }
+        }
+        for (CredentialFiles files : removed) {
+            wipeCredentialFiles(files);
+        }
+        /* Written without holding the lock of the client, the SELinux label of ssh keys is set by a process */
+        CredentialFiles written = new CredentialFiles(key);
+        boolean complete = false;
+        try {
+            writeCredentialFiles(written, credentials, sshUserName);
+            complete = true;
+        } finally {
+            if (!complete) {
+                wipeCredentialFiles(written);
+            }
+        }
+        removed.clear();
+        CredentialFiles files;
+        synchronized (this) {
+            files = keptCredentialFiles(key, removed);
+            if (files == null) {
+                files = written;
+                credentialFiles.put(key, files);
+                wipeAtExit(files.files);
+                scheduleCredentialFilesCheck(TimeUnit.SECONDS.toMillis(CREDENTIAL_FILES_IDLE_SECONDS));
+            } else {
+                removed.add(written); // written meanwhile by a concurrent command
+            }
+            files.users++;
+        }
+        for (CredentialFiles unused : removed) {
+            wipeCredentialFiles(unused);
+        }
+        return files;
+    }
+
+    /* Credential files kept for the key, null if there are none or if they were removed behind our back, for
+     * example by a workspace cleanup; called with the lock of the client held */
+    @CheckForNull
+    private CredentialFiles keptCredentialFiles(String key, List<CredentialFiles> removed) {
+        if (credentialFiles == null) {
+            credentialFiles = new HashMap<>();
+        }
+        CredentialFiles files = credentialFiles.get(key);
+        if (files != null && files.users == 0 && !files.exist()) {
+            credentialFiles.remove(key);
+            removed.add(files);
+            return null;
+        }
+        return files;
+    }
+
+    /* Reused credential files of all clients, wiped if the JVM exits before their clients discard them */
+    private static synchronized void wipeAtExit(List<File> files) {
+        if (!credentialFilesShutdownHook) {
+            credentialFilesShutdownHook = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                for (File file : REUSED_CREDENTIAL_FILES) {
+                    try {
+                        overwrite(file);
+                        Files.deleteIfExists(file.toPath());
+                    } catch (IOException e) {
+                        LOGGER.log(Level.FINE, "Failed to wipe " + file, e);
+                    }
+                }
+            }, CliGitAPIImpl.class.getSimpleName() + " credential files"));
+        }
+        REUSED_CREDENTIAL_FILES.addAll(files);
+    }
+
+    private void releaseCredentialFiles(CredentialFiles files) {
+        synchronized (this) {
+            files.users--;
+            files.lastUsed = System.currentTimeMillis();
+            if (files.key != null && credentialFiles != null && credentialFiles.get(files.key) == files) {
+                return; // kept for the next command
+            }
+            if (files.users > 0) {
+                return; // discarded while still in use, the last user wipes the files
+            }
+        }
+        wipeCredentialFiles(files);
+    }
+
+    private void writeCredentialFiles(CredentialFiles files, StandardCredentials credentials, @CheckForNull String sshUserName) throws IOException, InterruptedException {
+        if (credentials instanceof SSHUserPrivateKey) {
+            SSHUserPrivateKey sshUser = (SSHUserPrivateKey) credentials;
+            File key = createSshKeyFile(sshUser);
+            files.files.add(key);
+            File passphrase = createPassphraseFile(sshUser);
+            files.files.add(passphrase);
+            File ssh;
+            File askpass;
+            if (launcher.isUnix()) {
+                ssh = createUnixGitSSH(key, sshUserName, sshUser);
+                files.files.add(ssh);
+                askpass = createUnixSshAskpass(sshUser, passphrase);
+            } else {
+                ssh = createWindowsGitSSH(key, sshUserName);
+                files.files.add(ssh);
+                askpass = createWindowsSshAskpass(sshUser, passphrase);
+            }
+            files.files.add(askpass);
+            files.variables.put("GIT_SSH", ssh.getAbsolutePath());
+            files.variables.put("GIT_SSH_VARIANT", "ssh");
+            files.variables.put("SSH_ASKPASS", askpass.getAbsolutePath());
+        } else if (credentials instanceof StandardUsernamePasswordCredentials) {
+            StandardUsernamePasswordCredentials userPass = (StandardUsernamePasswordCredentials) credentials;
+            File usernameFile = createUsernameFile(userPass);
+            files.files.add(usernameFile);
+            File passwordFile = createPasswordFile(userPass);
+            files.files.add(passwordFile);
+            File askpass;
+            if (launcher.isUnix()) {
+                askpass = createUnixStandardAskpass(userPass, usernameFile, passwordFile);
+            } else {
+                askpass = createWindowsStandardAskpass(userPass, usernameFile, passwordFile);
+            }
+            files.files.add(askpass);
+            files.variables.put("GIT_ASKPASS", askpass.getAbsolutePath());
+            files.variables.put("SSH_ASKPASS", askpass.getAbsolutePath());
+        }
+    }
+
+    /* The secrets are part of the key so that a credential updated under the same id is written again */
+    private String credentialFilesKey(StandardCredentials credentials, @CheckForNull String sshUserName) {
+        String key = CredentialsDigest.key(credentials);
+        if (key == null) {
+            key = credentials.getClass().getName() + '/' + credentials.getId();
+        }
+        return key + '/' + sshUserName;
+    }
+
+    private void scheduleCredentialFilesCheck(long delayMillis) {
+        if (credentialFilesCheckScheduled) {
+            return;
+        }
+        credentialFilesCheckScheduled = true;
+        Timer.get().schedule(this::credentialFilesCheck, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void credentialFilesCheck() {
+        List<CredentialFiles> idle = new ArrayList<>();
+        synchronized (this) {
+            credentialFilesCheckScheduled = false;
+            if (credentialFiles == null || credentialFiles.isEmpty()) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long idleMillis = TimeUnit.SECONDS.toMillis(CREDENTIAL_FILES_IDLE_SECONDS);
+            long nextCheck = idleMillis;
+            for (Iterator<CredentialFiles> it = credentialFiles.values().iterator(); it.hasNext();) {
+                CredentialFiles files = it.next();
+                long unused = now - files.lastUsed;
+                if (files.users == 0 && unused >= idleMillis) {
+                    it.remove();
+                    idle.add(files);
+                } else if (files.users == 0) {
+                    nextCheck = Math.min(nextCheck, idleMillis - unused);
+                }
+            }
+            if (!credentialFiles.isEmpty()) {
+                scheduleCredentialFilesCheck(nextCheck);
+            }
+        }
+        for (CredentialFiles files : idle) {
+            wipeCredentialFiles(files);
+        }
+    }
+
+    /* Overwrite and delete the credential files which are not in use, the others are wiped by their last user */
+    private void discardCredentialFiles() {
+        List<CredentialFiles> unused = new ArrayList<>();
+        synchronized (this) {
+            if (credentialFiles == null) {
+                return;
+            }
+            for (CredentialFiles files : credentialFiles.values()) {
+                if (files.users == 0) {
+                    unused.add(files);
+                }
+            }
+            credentialFiles.clear();
+        }
+        for (CredentialFiles files : unused) {
+            wipeCredentialFiles(files);
+        }
+    }
+
+    private void wipeCredentialFiles(CredentialFiles files) {
+        for (File file : files.files) {
+            wipeTempFile(file);
+        }
+        REUSED_CREDENTIAL_FILES.removeAll(files.files);
+    }
+
+    /* Overwrite the content of a file holding a secret before deleting it */
+    private void wipeTempFile(File tempFile) {
+        try {
+            overwrite(tempFile);
+        } catch (IOException e) {
+            listener.getLogger().println("[WARNING] temp file " + tempFile + " not overwritten: " + e.getMessage());
+        }
+        deleteTempFile(tempFile);
+    }
+
+    private static void overwrite(File file) throws IOException {
+        long length = file.length();
+        if (length > 0 && file.isFile()) {
+            if (!file.canWrite()) {
+                file.setWritable(true, true); // ssh key files are read only
+            }
+            try (OutputStream out = Files.newOutputStream(file.toPath(), StandardOpenOption.WRITE)) {
+                byte[] zeros = new byte[(int) Math.min(length, 8192)];
+                for (long written = 0; written < length; written += zeros.length) {
+                    out.write(zeros, 0, (int) Math.min(zeros.length, length - written));
+                }
+            }
+        }
+    }
+
+    @SuppressFBWarnings(value = "DMI_HARDCODED_ABSOLUTE_FILENAME",
+        justification = "Path operations below intentionally use absolute '/usr/bin/chcon' and '/sys/fs/selinux/enforce' and '/proc/self/attr/current' at this time (as delivered in relevant popular Linux distros)"
+        )
+    private Boolean fixSELinuxLabel(File key, String label) {
+        // returning false means chcon was tried and failed,
+        // maybe caller needs to retry with other logic
+        // true means all ok, including nothing needs to be done
+        if (!launcher.isUnix()) return true;
+
+        // JENKINS-64913: SELinux Enforced mode forbids SSH client to read
+        // "untrusted" key files.
+        // Check that tools exist and then if SELinux subsystem is activated
+        // Otherwise calling the tools just pollutes build log with errors
+        if (Files.isExecutable(Paths.get("/usr/bin/chcon"))) {
+            // SELinux may actually forbid us to read system paths, so
+            // there are a couple of ways to try checking if it is enabled
+            // (whether this run needs to worry about security labels) and
+            // we genuinely do not care if we failed to probe those points
 
             // Keep track which "clues" indicate that SELinux currently is
             // a force that should be reckoned with, on this host now:
@@ -2561,7 +3370,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         return ssh;
     }
 
-    private File createUnixGitSSH(File key, String user) throws IOException {
+    private File createUnixGitSSH(File key, String user, SSHUserPrivateKey credentials) throws IOException {
         File ssh = createTempFile("ssh", ".sh");
         File ssh_copy = new File(ssh.toString() + "-copy");
         boolean isCopied = false;
@@ -2572,7 +3381,14 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             w.println("  DISPLAY=:123.456");
             w.println("  export DISPLAY");
             w.println("fi");
-            w.println("ssh -i \"" + key.getAbsolutePath() + "\" -l \"" + user + "\" -o StrictHostKeyChecking=no \"$@\"");
+            File controlDir = SSH_CONTROL_MASTER ? SshControlDirectory.get(listener) : null;
+            if (controlDir == null) {
+                w.println("ssh -i \"" + key.getAbsolutePath() + "\" -l \"" + user + "\" -o StrictHostKeyChecking=no \"$@\"");
+            } else {
+                w.println("ssh -i \"" + key.getAbsolutePath() + "\" -l \"" + user + "\" -o StrictHostKeyChecking=no"
+                        + " -o ControlMaster=auto -o ControlPersist=" + SSH_CONTROL_PERSIST_SECONDS
+                        + " -o \"ControlPath=" + SshControlDirectory.controlPath(controlDir, credentials) + "\" \"$@\"");
+            }
         }
         ssh.setExecutable(true, true);
         //JENKINS-48258 git client plugin occasionally fails with "text file busy" error
@@ -2623,6 +3439,31 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     }
 
     private String launchCommandIn(ArgumentListBuilder args, File workDir, EnvVars env, Integer timeout) throws GitException, InterruptedException {
+        return launchCommandIn(args, workDir, env, timeout, null);
+    }
+
+    /**
+     * Launch command and either return its output or, if {@code stdoutHandler} is not null,
+     * pass its output to {@code stdoutHandler} line by line while the command runs.
+     * Streaming keeps memory use constant for commands with very large output
+     * (ls-remote on repositories with many refs, for example).
+     *
+     * @return command output, or an empty string if the output was passed to {@code stdoutHandler}
+     */
+    private String launchCommandIn(ArgumentListBuilder args, File workDir, EnvVars env, Integer timeout,
+                                   @CheckForNull LineOutputStream.LineHandler stdoutHandler) throws GitException, InterruptedException {
+        return launchCommandIn(args, workDir, env, timeout, stdoutHandler, null);
+    }
+
+    /**
+     * Launch command as {@link #launchCommandIn(ArgumentListBuilder, File, EnvVars, Integer, LineOutputStream.LineHandler)}
+     * does and report it to the {@link GitOperationListener}s.
+     *
+     * @param remote remote repository contacted by the command, if any
+     */
+    private String launchCommandIn(ArgumentListBuilder args, File workDir, EnvVars env, Integer timeout,
+                                   @CheckForNull LineOutputStream.LineHandler stdoutHandler,
+                                   @CheckForNull URIish remote) throws GitException, InterruptedException {
 
         EnvVars freshEnv = new EnvVars(env);
         // If we don't have credentials, but the requested URL requires them,
@@ -2633,7 +3474,12 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             freshEnv.put("GIT_ASKPASS", "echo");
         }
         String command = gitExe + " " + StringUtils.join(args.toCommandArray(), " ");
+        GitOperationRecorder recorder = new GitOperationRecorder("git", operationName(args.toCommandArray()), GitOperationRecorder.hostOf(remote),
+                timeout == null ? TIMEOUT : timeout);
+        /* Structured progress of fetch, clone and push, see GitProgressListener */
+        GitProgressTracker progress = args.toList().contains("--progress") ? recorder.progress() : null;
         try {
+            recorder.queue();
             args.prepend(gitExe);
             if (CALL_SETSID && launcher.isUnix() && env.containsKey("GIT_SSH") && env.containsKey("DISPLAY")) {
                 /* Detach from controlling terminal for git calls with ssh authentication */
@@ -2665,29 +3511,75 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
                 stdout = readProcessIntoString(process, encoding, false);
                 stderr = readProcessIntoString(process, encoding, true);
+                if (progress != null) {
+                    progress.parse(stderr);
+                }
+                recorder.stdoutBytes(stdout.getBytes(encoding).length);
+                recorder.stderrBytes(stderr.getBytes(encoding).length);
+                if (stdoutHandler != null) {
+                    BufferedReader rdr = new BufferedReader(new StringReader(stdout));
+                    String line;
+                    while ((line = rdr.readLine()) != null) {
+                        stdoutHandler.handle(line);
+                    }
+                    stdout = "";
+                }
+            } else if (stdoutHandler != null) {
+                ByteArrayOutputStream stderrStream = new ByteArrayOutputStream();
+                LineOutputStream stdoutStream = new LineOutputStream(stdoutHandler, Charset.forName(encoding));
+                CountingOutputStream stdoutCount = new CountingOutputStream(stdoutStream);
+
+                p.stdout(stdoutCount).stderr(progress == null ? stderrStream : new TeeOutputStream(stderrStream, progress.stream()));
+                status = p.start().joinWithTimeout(usedTimeout, TimeUnit.MINUTES, listener);
+
+                recorder.stdoutBytes(stdoutCount.getByteCount());
+                recorder.stderrBytes(stderrStream.size());
+                stdoutStream.close(); // passes the last line to the handler if it has no trailing newline
+                stdoutStream.rethrowFailure();
+                stdout = "";
+                stderr = stderrStream.toString(encoding);
             } else {
                 // JENKINS-13356: capture stdout and stderr separately
                 ByteArrayOutputStream stdoutStream = new ByteArrayOutputStream();
                 ByteArrayOutputStream stderrStream = new ByteArrayOutputStream();
 
-                p.stdout(stdoutStream).stderr(stderrStream);
+                p.stdout(stdoutStream).stderr(progress == null ? stderrStream : new TeeOutputStream(stderrStream, progress.stream()));
                 status = p.start().joinWithTimeout(usedTimeout, TimeUnit.MINUTES, listener);
 
+                recorder.stdoutBytes(stdoutStream.size());
+                recorder.stderrBytes(stderrStream.size());
                 stdout = stdoutStream.toString(encoding);
                 stderr = stderrStream.toString(encoding);
             }
 
+            recorder.exitStatus(status);
             if (status != 0) {
                 throw new GitException("Command \"" + command + "\" returned status code " + status + ":\nstdout: " + stdout + "\nstderr: "+ stderr);
             }
 
+            recorder.succeeded();
             return stdout;
         } catch (GitException | InterruptedException e) {
             throw e;
         } catch (Throwable e) {
             reportFailureClues();
             throw new GitException("Error performing git command: " + command, e);
+        } finally {
+            recorder.finish();
+        }
+    }
+
+    /* The git subcommand of a command line, skipping global options like "-c name=value" */
+    private static String operationName(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-c") || arg.equals("-C")) {
+                i++;
+            } else if (!arg.startsWith("-")) {
+                return arg;
+            }
         }
+        return "git";
     }
 
     /**
@@ -2936,8 +3828,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             /* Allow test of index.lock cleanup when checkout is interrupted */
             private void interruptThisCheckout() throws InterruptedException {
-                final File indexFile = new File(workspace.getPath() + File.separator
-                        + INDEX_LOCK_FILE_PATH);
+                final File indexFile = new File(gitDir(), "index.lock");
                 boolean created = false;
                 try {
                     created = indexFile.createNewFile();
@@ -2949,6 +3840,12 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public void execute() throws GitException, InterruptedException {
+                try (BackgroundPrefetch.InUse inUse = BackgroundPrefetch.use(workspace)) {
+                    doExecute();
+                }
+            }
+
+            private void doExecute() throws GitException, InterruptedException {
                 /* File.lastModified() limited by file system time, several
                  * popular Linux file systems only have 1 second granularity.
                  * None of the common file systems (Windows or Linux) have
@@ -2974,7 +3871,9 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                         checkoutEnv.put("GIT_LFS_SKIP_SMUDGE", "1");
                     }
 
-                    if (branch!=null && deleteBranch) {
+                    /* Branches of linked worktrees are shared with the reference repository and the other worktrees */
+                    boolean linkedWorktree = commonDir() != null;
+                    if (branch!=null && deleteBranch && !linkedWorktree) {
                         // First, checkout to detached HEAD, so we can delete the branch.
                         ArgumentListBuilder args = new ArgumentListBuilder();
                         args.add("checkout", "-f", ref);
@@ -2989,7 +3888,14 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     }
                     ArgumentListBuilder args = new ArgumentListBuilder();
                     args.add("checkout");
-                    if (branch != null) {
+                    if (branch != null && linkedWorktree) {
+                        // reset the branch even if it exists or another worktree has it checked out
+                        if (deleteBranch) {
+                            args.add("-f");
+                        }
+                        args.add("--ignore-other-worktrees", "-B");
+                        args.add(branch);
+                    } else if (branch != null) {
                         args.add("-b");
                         args.add(branch);
                     } else {
@@ -3023,8 +3929,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                             throw new GitException("Could not checkout " + ref, e);
                     }
                 } catch (InterruptedException e) {
-                    final File indexFile = new File(workspace.getPath() + File.separator
-                            + INDEX_LOCK_FILE_PATH);
+                    final File indexFile = new File(gitDir(), "index.lock");
                     if (indexFile.exists() && indexFile.lastModified() >= startTimeSeconds) {
                         // If lock file is created before checkout command
                         // started, it is not created by this checkout command
@@ -3043,10 +3948,15 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             private void sparseCheckout(@NonNull List<String> paths) throws GitException, InterruptedException {
 
                 boolean coreSparseCheckoutConfigEnable;
-                try {
-                    coreSparseCheckoutConfigEnable = launchCommand("config", "core.sparsecheckout").contains("true");
-                } catch (GitException ge) {
-                    coreSparseCheckoutConfigEnable = false;
+                String sparseCheckoutValue = getConfigValueInProcess("core", null, "sparsecheckout");
+                if (sparseCheckoutValue != null) {
+                    coreSparseCheckoutConfigEnable = sparseCheckoutValue.contains("true");
+                } else {
+                    try {
+                        coreSparseCheckoutConfigEnable = launchCommand("config", "core.sparsecheckout").contains("true");
+                    } catch (GitException ge) {
+                        coreSparseCheckoutConfigEnable = false;
+                    }
                 }
 
                 boolean deactivatingSparseCheckout = false;
@@ -3056,15 +3966,20 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     deactivatingSparseCheckout = true;
                     paths = Lists.newArrayList("/*");
                 } else if(! coreSparseCheckoutConfigEnable) { // activating sparse checkout
-                    launchCommand( "config", "core.sparsecheckout", "true" );
+                    if (commonDir() != null) {
+                        // not for the other worktrees sharing the configuration
+                        launchCommand( "config", "--worktree", "core.sparsecheckout", "true" );
+                    } else {
+                        launchCommand( "config", "core.sparsecheckout", "true" );
+                    }
                 }
 
-                File sparseCheckoutDir = new File(workspace, SPARSE_CHECKOUT_FILE_DIR);
+                File sparseCheckoutDir = new File(gitDir(), "info");
                 if (!sparseCheckoutDir.exists() && !sparseCheckoutDir.mkdir()) {
                     throw new GitException("Impossible to create sparse checkout dir " + sparseCheckoutDir.getAbsolutePath());
                 }
 
-                File sparseCheckoutFile = new File(workspace, SPARSE_CHECKOUT_FILE_PATH);
+                File sparseCheckoutFile = new File(sparseCheckoutDir, "sparse-checkout");
                 try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(Files.newOutputStream(sparseCheckoutFile.toPath()), StandardCharsets.UTF_8))) {
                     for (String path : paths) {
                         writer.println(path);
@@ -3159,6 +4074,15 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public List<IndexEntry> lsTree(String treeIsh, boolean recursive) throws GitException, InterruptedException {
         List<IndexEntry> entries = new ArrayList<>();
+        CatFileBatch.ObjectData tree = catFile(treeIsh + "^{tree}");
+        if (tree != null) {
+            try {
+                lsTree(tree, "", recursive, entries);
+                return entries;
+            } catch (CatFileUnavailableException e) {
+                entries.clear();
+            }
+        }
         String result = launchCommand("ls-tree", recursive?"-r":null, treeIsh);
 
         BufferedReader rdr = new BufferedReader(new StringReader(result));
@@ -3308,6 +4232,13 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         if (commit == null) {
             return false;
         }
+        if (useCatFile()) {
+            try {
+                return catFileOrFail(commit.name() + "^{commit}") != null;
+            } catch (CatFileUnavailableException e) {
+                // fall back to rev-list
+            }
+        }
         try {
             // Use revList_() directly in order to pass .nowalk(true) which
             // allows us to bypass the unnecessary revision walk when we
@@ -3325,6 +4256,141 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         }
     }
 
+    /* Thrown when the cat-file process cannot answer a lookup and git should be run instead */
+    private static class CatFileUnavailableException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        CatFileUnavailableException(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    private boolean useCatFile() {
+        // Only at the top of the work tree, git run from a subdirectory may interpret names differently
+        return USE_CAT_FILE_BATCH && new File(workspace, ".git").exists() && isAtLeastVersion(1, 8, 0, 0);
+    }
+
+    /**
+     * Look up an object with the long-lived cat-file process.
+     *
+     * @return the object, or null if the object does not exist or the cat-file process is not used
+     */
+    @CheckForNull
+    private CatFileBatch.ObjectData catFile(String objectName) throws GitException, InterruptedException {
+        if (!useCatFile()) {
+            return null;
+        }
+        try {
+            return catFileOrFail(objectName);
+        } catch (CatFileUnavailableException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Look up an object with the long-lived cat-file process.
+     *
+     * @return the object, or null if the object does not exist
+     * @throws CatFileUnavailableException if the cat-file process cannot answer
+     */
+    @CheckForNull
+    private CatFileBatch.ObjectData catFileOrFail(String objectName)
+            throws CatFileUnavailableException, GitException, InterruptedException {
+        if (objectName.isEmpty() || objectName.indexOf('\n') >= 0 || objectName.indexOf('\r') >= 0) {
+            throw new CatFileUnavailableException(null);
+        }
+        try {
+            return getCatFileBatch().read(objectName, TIMEOUT, TimeUnit.MINUTES);
+        } catch (IOException e) {
+            throw new CatFileUnavailableException(e);
+        } catch (TimeoutException e) {
+            throw new GitException("git cat-file did not answer within " + TIMEOUT + " minutes", e);
+        }
+    }
+
+    private synchronized CatFileBatch getCatFileBatch() {
+        if (catFileBatch == null) {
+            Map<String, String> env = environment == null ? Collections.emptyMap() : environment;
+            catFileBatch = new CatFileBatch(gitExe, workspace, env, CAT_FILE_BATCH_IDLE_SECONDS, TimeUnit.SECONDS);
+        }
+        return catFileBatch;
+    }
+
+    /* Format a tree object like git ls-tree does */
+    private void lsTree(CatFileBatch.ObjectData tree, String prefix, boolean recursive, List<IndexEntry> entries)
+            throws CatFileUnavailableException, GitException, InterruptedException {
+        // Entries are "<octal mode> <name>\0<20 byte object id>"
+        byte[] raw = tree.getContent();
+        int pos = 0;
+        while (pos < raw.length) {
+            int space = RawParseUtils.next(raw, pos, ' ');
+            int nul = RawParseUtils.next(raw, space, '\0');
+            if (nul + Constants.OBJECT_ID_LENGTH > raw.length) {
+                throw new CatFileUnavailableException(null);
+            }
+            int mode;
+            try {
+                mode = Integer.parseInt(RawParseUtils.decode(raw, pos, space - 1), 8);
+            } catch (NumberFormatException e) {
+                throw new CatFileUnavailableException(e);
+            }
+            String name = prefix + RawParseUtils.decode(raw, space, nul - 1);
+            ObjectId id = ObjectId.fromRaw(raw, nul);
+            pos = nul + Constants.OBJECT_ID_LENGTH;
+
+            int type = mode & FileMode.TYPE_MASK;
+            if (recursive && type == FileMode.TYPE_TREE) {
+                CatFileBatch.ObjectData subtree = catFileOrFail(id.name());
+                if (subtree == null) {
+                    throw new CatFileUnavailableException(null);
+                }
+                lsTree(subtree, name + "/", true, entries);
+            } else {
+                String typeName = type == FileMode.TYPE_TREE ? "tree" : type == FileMode.TYPE_GITLINK ? "commit" : "blob";
+                entries.add(new IndexEntry(String.format("%06o", mode), typeName, id.name(), name));
+            }
+        }
+    }
+
+    /* Message of an annotated tag, or of the commit a lightweight tag points to, as git tag -n prints it */
+    private String tagMessage(CatFileBatch.ObjectData object) {
+        String raw = new String(object.getContent(), Charset.forName(encoding));
+        int body = raw.indexOf("\n\n");
+        if (body < 0) {
+            return "";
+        }
+        StringBuilder message = new StringBuilder();
+        String[] lines = raw.substring(body + 2).split("\n", -1);
+        for (int i = 0; i < lines.length && i < 10000; i++) {
+            if (object.getType().equals("tag") && (lines[i].startsWith("-----BEGIN PGP SIGNATURE-----")
+                    || lines[i].startsWith("-----BEGIN SSH SIGNATURE-----") || lines[i].startsWith("-----BEGIN SIGNED MESSAGE-----"))) {
+                break; // git tag -n does not print the signature
+            }
+            message.append(lines[i]).append('\n');
+        }
+        return message.toString().trim();
+    }
+
+    /**
+     * Stops the <code>git cat-file --batch</code> process and overwrites and
+     * deletes the reused credential files of this client, if any. The client
+     * remains usable, its next commands start them again. Clients which are
+     * not closed release them after their idle timeouts, and reused
+     * credential files are wiped when the JVM exits.
+     */
+    @Override
+    public void close() {
+        CatFileBatch batch;
+        synchronized (this) {
+            batch = catFileBatch;
+            catFileBatch = null;
+        }
+        if (batch != null) {
+            batch.close();
+        }
+        discardCredentialFiles();
+    }
+
     /** {@inheritDoc} */
     @Override
     public void add(String filePattern) throws GitException, InterruptedException {
@@ -3375,6 +4441,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public void clearCredentials() {
         this.credentials.clear();
+        discardCredentialFiles();
     }
 
     /** {@inheritDoc} */
@@ -3404,6 +4471,9 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
     /**
      * Returns the {@link org.eclipse.jgit.lib.Repository} used by this git instance.
+     * When the workspace is a linked worktree, it is the repository sharing its
+     * refs, objects and configuration, with the index of the workspace; its
+     * <code>HEAD</code> is not the <code>HEAD</code> of the workspace.
      *
      * @return a {@link org.eclipse.jgit.lib.Repository} object.
      * @throws hudson.plugins.git.GitException if underlying git operation fails.
@@ -3414,12 +4484,60 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public Repository getRepository() throws GitException {
         try {
+            File commonDir = commonDir();
+            if (commonDir != null) {
+                // JGit does not read the common directory of linked worktrees
+                return new RepositoryBuilder().setGitDir(commonDir).setWorkTree(workspace)
+                        .setIndexFile(new File(gitDir(), "index")).build();
+            }
+            if (isBareRepository(workspace)) {
+                return new RepositoryBuilder().setGitDir(workspace).setBare().build();
+            }
             return new RepositoryBuilder().setWorkTree(workspace).build();
         } catch (IOException e) {
             throw new GitException(e);
         }
     }
 
+    /* Repository directory of the workspace, named by the .git file of linked worktrees */
+    private File gitDir() {
+        if (isBareRepository(workspace)) {
+            return workspace;
+        }
+        File dotGit = new File(workspace, Constants.DOT_GIT);
+        if (dotGit.isFile()) {
+            String gitDir = readFirstLine(dotGit);
+            if (gitDir != null && gitDir.startsWith("gitdir:")) {
+                return resolve(workspace, gitDir.substring("gitdir:".length()).trim());
+            }
+        }
+        return dotGit;
+    }
+
+    /* Directory of the refs, objects and configuration shared by a linked worktree, null if not a linked worktree */
+    @CheckForNull
+    private File commonDir() {
+        File gitDir = gitDir();
+        File commonDirFile = new File(gitDir, "commondir");
+        String commonDir = commonDirFile.isFile() ? readFirstLine(commonDirFile) : null;
+        return commonDir == null || commonDir.isEmpty() ? null : resolve(gitDir, commonDir);
+    }
+
+    @CheckForNull
+    private static String readFirstLine(File file) {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            return line == null ? null : line.trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static File resolve(File dir, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(dir, path);
+    }
+
 
     /**
      * getWorkTree.
@@ -3443,16 +4561,13 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             }
             if (tagPattern != null)
                 args.add(tagPattern);
-            String result = launchCommandIn(args, workspace);
             Set<String> tags = new HashSet<>();
-            BufferedReader rdr = new BufferedReader(new StringReader(result));
-            String tag;
-            while ((tag = rdr.readLine()) != null) {
+            launchCommandIn(args, workspace, environment, TIMEOUT, tag -> {
                 // Add the tag name without the SHA1
                 tags.add(tag.replaceFirst(".*refs/tags/", ""));
-            }
+            });
             return tags;
-        } catch (GitException | IOException | InterruptedException e) {
+        } catch (GitException | InterruptedException e) {
             throw new GitException("Error retrieving remote tag names", e);
         }
     }
@@ -3464,17 +4579,11 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             ArgumentListBuilder args = new ArgumentListBuilder();
             args.add("tag", "-l", tagPattern);
 
-            String result = launchCommandIn(args, workspace);
-
             Set<String> tags = new HashSet<>();
-            BufferedReader rdr = new BufferedReader(new StringReader(result));
-            String tag;
-            while ((tag = rdr.readLine()) != null) {
-                // Add the SHA1
-                tags.add(tag);
-            }
+            // Add the SHA1
+            launchCommandIn(args, workspace, environment, TIMEOUT, tags::add);
             return tags;
-        } catch (GitException | IOException | InterruptedException e) {
+        } catch (GitException | InterruptedException e) {
             throw new GitException("Error retrieving tag names", e);
         }
     }
@@ -3482,6 +4591,12 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public String getTagMessage(String tagName) throws GitException, InterruptedException {
+        if (!tagName.matches(".*[*?\\[\\\\].*")) { // git tag -l takes a pattern
+            CatFileBatch.ObjectData object = catFile(Constants.R_TAGS + tagName);
+            if (object != null && (object.getType().equals("tag") || object.getType().equals("commit"))) {
+                return tagMessage(object);
+            }
+        }
         // 10000 lines of tag message "ought to be enough for anybody"
         String out = launchCommand("tag", "-l", tagName, "-n10000");
         // Strip the leading four spaces which git prefixes multi-line messages with
@@ -3503,6 +4618,10 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public boolean refExists(String refName) throws GitException, InterruptedException {
 	refName = refName.replace(' ', '_');
+	Boolean exists = refExistsInProcess(refName);
+	if (exists != null) {
+	    return exists;
+	}
 	try {
 	    launchCommand("show-ref", refName);
 	    return true; // If show-ref returned zero, ref exists.
@@ -3531,15 +4650,11 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 	    refPrefix = refPrefix.replace(' ', '_');
 	}
 	try {
-	    String result = launchCommand("for-each-ref", "--format=%(refname)", refPrefix);
+	    ArgumentListBuilder args = new ArgumentListBuilder("for-each-ref", "--format=%(refname)", refPrefix);
 	    Set<String> refs = new HashSet<>();
-	    BufferedReader rdr = new BufferedReader(new StringReader(result));
-	    String ref;
-	    while ((ref = rdr.readLine()) != null) {
-		refs.add(ref);
-	    }
+	    launchCommandIn(args, workspace, environment, TIMEOUT, refs::add);
 	    return refs;
-	} catch (GitException | IOException e) {
+	} catch (GitException e) {
 	    throw new GitException("Error retrieving refs with prefix " + refPrefix, e);
 	}
     }
@@ -3547,38 +4662,39 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public Map<String, ObjectId> getHeadRev(String url) throws GitException, InterruptedException {
-        ArgumentListBuilder args = new ArgumentListBuilder("ls-remote");
+        ArgumentListBuilder args = lsRemoteArgs();
         args.add("-h");
         addCheckedRemoteUrl(args, url);
 
         StandardCredentials cred = credentials.get(url);
         if (cred == null) cred = defaultCredentials;
+        final StandardCredentials finalCred = cred;
 
-        String result = launchCommandWithCredentials(args, null, cred, url);
-
-        Map<String, ObjectId> heads = new HashMap<>();
-        String[] lines = result.split("\n");
-        for (String line : lines) {
-            if (line.length() >= 41) {
-                heads.put(line.substring(41), ObjectId.fromString(line.substring(0, 40)));
-            } else {
-                listener.getLogger().println("Unexpected ls-remote output line '" + line + "'");
-            }
-        }
-        return heads;
+        return new HashMap<>(cachedRemoteQuery("getHeadRev", url, cred, () -> {
+            Map<String, ObjectId> heads = new HashMap<>();
+            launchCommandWithCredentials(args, null, finalCred, url, line -> {
+                if (line.length() >= 41) {
+                    heads.put(line.substring(41), ObjectId.fromString(line.substring(0, 40)));
+                } else {
+                    listener.getLogger().println("Unexpected ls-remote output line '" + line + "'");
+                }
+            });
+            return heads;
+        }));
     }
 
     /** {@inheritDoc} */
     @Override
     public ObjectId getHeadRev(String url, String branchSpec) throws GitException, InterruptedException {
         final String branchName = extractBranchNameFromBranchSpec(branchSpec);
-        ArgumentListBuilder args = new ArgumentListBuilder("ls-remote");
+        ArgumentListBuilder args = lsRemoteArgs();
         if(!branchName.startsWith("refs/tags/")) {
             args.add("-h");
         }
 
         StandardCredentials cred = credentials.get(url);
         if (cred == null) cred = defaultCredentials;
+        final StandardCredentials finalCred = cred;
 
         addCheckedRemoteUrl(args, url);
 
@@ -3587,15 +4703,127 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         } else {
             args.add(branchName);
         }
-        String result = launchCommandWithCredentials(args, null, cred, url);
-        return result.length()>=40 ? ObjectId.fromString(result.substring(0, 40)) : null;
+        return cachedRemoteQuery("getHeadRev " + branchName, url, cred, () -> {
+            ObjectId[] headRev = new ObjectId[1];
+            launchCommandWithCredentials(args, null, finalCred, url, line -> {
+                if (headRev[0] == null && line.length() >= 40) {
+                    headRev[0] = ObjectId.fromString(line.substring(0, 40));
+                }
+            });
+            return headRev[0];
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, ObjectId> getHeadRevs(String url, Collection<String> branchSpecs) throws GitException, InterruptedException {
+        Map<String, ObjectId> heads = new HashMap<>();
+        Map<String, String> patterns = new LinkedHashMap<>();
+        boolean tags = false;
+        for (String branchSpec : branchSpecs) {
+            String branchName = extractBranchNameFromBranchSpec(branchSpec);
+            if (branchName.indexOf('[') >= 0 || branchName.indexOf('\\') >= 0) {
+                // character classes and escapes are left to git
+                ObjectId head = getHeadRev(url, branchSpec);
+                if (head != null) {
+                    heads.put(branchSpec, head);
+                }
+            } else if (branchName.startsWith("refs/tags/")) {
+                patterns.put(branchSpec, branchName + "^{}"); // JENKINS-23299 - tag SHA1 needs to be converted to commit SHA1
+                tags = true;
+            } else {
+                patterns.put(branchSpec, branchName);
+            }
+        }
+        if (patterns.isEmpty()) {
+            return heads;
+        }
+
+        ArgumentListBuilder args = lsRemoteArgs();
+        if (!tags) {
+            args.add("-h");
+        }
+        addCheckedRemoteUrl(args, url);
+        for (String pattern : new LinkedHashSet<>(patterns.values())) {
+            args.add(pattern);
+        }
+
+        StandardCredentials cred = credentials.get(url);
+        if (cred == null) cred = defaultCredentials;
+        final StandardCredentials finalCred = cred;
+
+        // ls-remote matches a pattern against the tail of the ref name, '*' and '?' also match '/'
+        Map<String, Pattern> compiled = new LinkedHashMap<>();
+        for (Map.Entry<String, String> pattern : patterns.entrySet()) {
+            compiled.put(pattern.getKey(), Pattern.compile(".*/" + lsRemotePatternToRegex(pattern.getValue()), Pattern.DOTALL));
+        }
+        String query = "getHeadRevs " + String.join("\n", patterns.keySet()) + " " + String.join("\n", patterns.values());
+        heads.putAll(cachedRemoteQuery(query, url, cred, () -> {
+            Map<String, ObjectId> matches = new HashMap<>();
+            Map<String, Pattern> pending = new LinkedHashMap<>(compiled);
+            launchCommandWithCredentials(args, null, finalCred, url, line -> {
+                if (pending.isEmpty() || line.length() < 41) {
+                    return;
+                }
+                String refName = line.substring(41);
+                for (Iterator<Map.Entry<String, Pattern>> it = pending.entrySet().iterator(); it.hasNext();) {
+                    Map.Entry<String, Pattern> pattern = it.next();
+                    boolean tag = patterns.get(pattern.getKey()).startsWith("refs/tags/");
+                    if ((tag || refName.startsWith(Constants.R_HEADS)) && pattern.getValue().matcher("/" + refName).matches()) {
+                        matches.put(pattern.getKey(), ObjectId.fromString(line.substring(0, 40)));
+                        it.remove();
+                    }
+                }
+            });
+            return matches;
+        }));
+        return heads;
+    }
+
+    /* Regular expression matching what a wildmatch pattern of ls-remote matches */
+    private static String lsRemotePatternToRegex(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return regex.toString();
     }
 
     /** {@inheritDoc} */
     @Override
     public Map<String, ObjectId> getRemoteReferences(String url, String pattern, boolean headsOnly, boolean tagsOnly)
             throws GitException, InterruptedException {
-        ArgumentListBuilder args = new ArgumentListBuilder("ls-remote");
+        return getRemoteReferences(url, null, pattern, headsOnly, tagsOnly);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public RemoteReferencesCommand remoteReferences() {
+        return remoteReferences(listener);
+    }
+
+    @Override
+    Map<String, ObjectId> getRemoteReferences(String url, @CheckForNull StandardCredentials credentials,
+                                              String pattern, boolean headsOnly, boolean tagsOnly)
+            throws GitException, InterruptedException {
+        ArgumentListBuilder args = lsRemoteArgs();
+        if (pattern != null && USE_PROTOCOL_V2 && !headsOnly && !tagsOnly) {
+            // patterns match the tail of ref names, only the ref type of an anchored pattern narrows the query
+            headsOnly = pattern.startsWith(Constants.R_HEADS);
+            tagsOnly = pattern.startsWith(Constants.R_TAGS);
+        }
         if (headsOnly) {
             args.add("-h");
         }
@@ -3607,32 +4835,33 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             args.add(pattern);
         }
 
-        StandardCredentials cred = credentials.get(url);
+        StandardCredentials cred = credentials;
+        if (cred == null) cred = this.credentials.get(url);
         if (cred == null) cred = defaultCredentials;
-
-        String result = launchCommandWithCredentials(args, null, cred, url);
-
-        Map<String, ObjectId> references = new HashMap<>();
-        String[] lines = result.split("\n");
-        for (String line : lines) {
-            if (line.length() < 41) {
-                continue; // throw new GitException("unexpected ls-remote output " + line);
-            }
-            String refName = line.substring(41);
-            ObjectId refObjectId = ObjectId.fromString(line.substring(0, 40));
-            if (refName.startsWith("refs/tags") && refName.endsWith("^{}")) {
-                // get peeled object id for annotated tag
-                String tagName = refName.replace("^{}", "");
-                // Replace with the peeled object id if the entry with tagName exists
-                references.put(tagName, refObjectId);
-            } else {
-                if (!references.containsKey(refName)) {
-                    references.put(refName, refObjectId);
+        final StandardCredentials finalCred = cred;
+
+        String query = "getRemoteReferences " + pattern + " " + headsOnly + " " + tagsOnly;
+        return new HashMap<>(cachedRemoteQuery(query, url, cred, () -> {
+            Map<String, ObjectId> references = new HashMap<>();
+            launchCommandWithCredentials(args, null, finalCred, url, line -> {
+                if (line.length() < 41) {
+                    return; // throw new GitException("unexpected ls-remote output " + line);
                 }
-            }
-
-        }
-        return references;
+                String refName = line.substring(41);
+                ObjectId refObjectId = ObjectId.fromString(line.substring(0, 40));
+                if (refName.startsWith("refs/tags") && refName.endsWith("^{}")) {
+                    // get peeled object id for annotated tag
+                    String tagName = refName.replace("^{}", "");
+                    // Replace with the peeled object id if the entry with tagName exists
+                    references.put(tagName, refObjectId);
+                } else {
+                    if (!references.containsKey(refName)) {
+                        references.put(refName, refObjectId);
+                    }
+                }
+            });
+            return references;
+        }));
     }
 
     @Override
@@ -3642,7 +4871,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         if (isAtLeastVersion(2, 8, 0, 0)) {
             // --symref is only understood by ls-remote starting from git 2.8.0
             // https://github.com/git/git/blob/afd6726309/Documentation/RelNotes/2.8.0.txt#L72-L73
-            ArgumentListBuilder args = new ArgumentListBuilder("ls-remote");
+            ArgumentListBuilder args = lsRemoteArgs();
             args.add("--symref");
             addCheckedRemoteUrl(args, url);
             if (pattern != null) {
@@ -3651,21 +4880,43 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             StandardCredentials cred = credentials.get(url);
             if (cred == null) cred = defaultCredentials;
+            final StandardCredentials finalCred = cred;
 
-            String result = launchCommandWithCredentials(args, null, cred, url);
-
-            String[] lines = result.split("\n");
             Pattern symRefPattern = Pattern.compile("^ref:\\s+([^ ]+)\\s+([^ ]+)$");
-            for (String line : lines) {
-                Matcher matcher = symRefPattern.matcher(line);
-                if (matcher.matches()) {
-                    references.put(matcher.group(2), matcher.group(1));
-                }
-            }
+            references.putAll(cachedRemoteQuery("getRemoteSymbolicReferences " + pattern, url, cred, () -> {
+                Map<String, String> symbolicReferences = new HashMap<>();
+                launchCommandWithCredentials(args, null, finalCred, url, line -> {
+                    Matcher matcher = symRefPattern.matcher(line);
+                    if (matcher.matches()) {
+                        symbolicReferences.put(matcher.group(2), matcher.group(1));
+                    }
+                });
+                return symbolicReferences;
+            }));
         }
         return references;
     }
 
+    /* Arguments of ls-remote, requesting protocol version 2 if enabled */
+    private ArgumentListBuilder lsRemoteArgs() throws InterruptedException {
+        ArgumentListBuilder args = new ArgumentListBuilder();
+        if (USE_PROTOCOL_V2 && isAtLeastVersion(2, 18, 0, 0)) {
+            args.add("-c", "protocol.version=2");
+        }
+        return args.add("ls-remote");
+    }
+
+    /* Answer a remote reference query from the JVM wide cache if it is enabled, the result must not be modified */
+    private <V> V cachedRemoteQuery(String query, String url, StandardCredentials cred,
+                                    RemoteReferenceCache.Query<V> remoteQuery) throws GitException, InterruptedException {
+        String credentialsKey = RemoteReferenceCache.credentialsKey(cred);
+        if (credentialsKey == null) {
+            return remoteQuery.run();
+        }
+        String key = RemoteReferenceCache.key("git", query, url, credentialsKey);
+        return RemoteReferenceCache.get().get(key, remoteQuery);
+    }
+
     //
     //
     // Legacy Implementation of IGitAPI
@@ -3801,46 +5052,22 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public Set<GitObject> getTags() throws GitException, InterruptedException {
         ArgumentListBuilder args = new ArgumentListBuilder("show-ref", "--tags", "-d");
-        String result;
-        try {
-            result = launchCommandIn(args, workspace);
-        } catch (GitException ge) {
-            /* If no tags, then git show-ref --tags -d returns non-zero */
-            result = "";
-        }
 
         /*
         Output shows SHA1 and tag with (optional) marker for annotated tags
         7ac27f7a051e1017da9f7c45ade8f091dbe6f99d refs/tags/git-3.6.4
         7b5856ef2b4d35530a06d6482d0f4e972769d89b refs/tags/git-3.6.4^{}
          */
-        String[] output = result.split("[\\n\\r]+");
-        if (output.length == 0 || (output.length == 1 && output[0].isEmpty())) {
-            return Collections.emptySet();
-        }
         Pattern pattern = Pattern.compile("(\\p{XDigit}{40})\\s+refs/tags/([^^]+)(\\^\\{\\})?");
         Map<String, ObjectId> tagMap = new HashMap<>();
-        for (String line : output) {
-            Matcher matcher = pattern.matcher(line);
-            if (!matcher.find()) {
-                // Log the surprise and skip the line
-                String message = MessageFormat.format(
-                        "git show-ref --tags -d output not matched in line: {0}",
-                        line);
-                listener.getLogger().println(message);
-                continue;
-            }
-            String sha1String = matcher.group(1);
-            String tagName = matcher.group(2);
-            String trailingText = matcher.group(3);
-            boolean isPeeledRef = false;
-            if (trailingText != null && trailingText.equals("^{}")) { // Line ends with '^{}'
-                isPeeledRef = true;
-            }
-            /* Prefer peeled ref if available (for tag commit), otherwise take first tag reference seen */
-            if (isPeeledRef || !tagMap.containsKey(tagName)) {
-                tagMap.put(tagName, ObjectId.fromString(sha1String));
-            }
+        try {
+            launchCommandIn(args, workspace, environment, TIMEOUT, line -> parseTagLine(line, pattern, tagMap));
+        } catch (GitException ge) {
+            /* If no tags, then git show-ref --tags -d returns non-zero */
+            return Collections.emptySet();
+        }
+        if (tagMap.isEmpty()) {
+            return Collections.emptySet();
         }
         Set<GitObject> tags = new HashSet<>(tagMap.size());
         for (Map.Entry<String, ObjectId> entry : tagMap.entrySet()) {
@@ -3849,4 +5076,30 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         return tags;
     }
 
+    private void parseTagLine(String line, Pattern pattern, Map<String, ObjectId> tagMap) {
+        if (line.trim().isEmpty()) {
+            return;
+        }
+        Matcher matcher = pattern.matcher(line);
+        if (!matcher.find()) {
+            // Log the surprise and skip the line
+            String message = MessageFormat.format(
+                    "git show-ref --tags -d output not matched in line: {0}",
+                    line);
+            listener.getLogger().println(message);
+            return;
+        }
+        String sha1String = matcher.group(1);
+        String tagName = matcher.group(2);
+        String trailingText = matcher.group(3);
+        boolean isPeeledRef = false;
+        if (trailingText != null && trailingText.equals("^{}")) { // Line ends with '^{}'
+            isPeeledRef = true;
+        }
+        /* Prefer peeled ref if available (for tag commit), otherwise take first tag reference seen */
+        if (isPeeledRef || !tagMap.containsKey(tagName)) {
+            tagMap.put(tagName, ObjectId.fromString(sha1String));
+        }
+    }
+
 }
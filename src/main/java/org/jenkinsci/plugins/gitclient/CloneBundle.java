@@ -0,0 +1,124 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.ProxyConfiguration;
+import hudson.model.TaskListener;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.Locale;
+
+/**
+ * Bundle file seeding a clone, see {@link CloneCommand#bundle(String)}.
+ * <p>
+ * A bundle named by a path or a <code>file:</code> URL is read in place. A
+ * bundle named by an <code>http:</code> or <code>https:</code> URL is
+ * downloaded into the new repository with one sequential read, and deleted
+ * when closed, through the proxy of the client if one is set. Downloads
+ * time out after <code>timeoutSeconds</code> (default 600) without data.
+ */
+final class CloneBundle implements Closeable {
+
+    static final int TIMEOUT_SECONDS = Integer.getInteger(CloneBundle.class.getName() + ".timeoutSeconds", 600);
+
+    private final File file;
+    private final boolean downloaded;
+
+    private CloneBundle(File file, boolean downloaded) {
+        this.file = file;
+        this.downloaded = downloaded;
+    }
+
+    /**
+     * Opens a bundle.
+     *
+     * @param bundle path or URL of the bundle
+     * @param gitDir repository directory which receives downloaded bundles
+     * @param proxy proxy of the client, null to connect directly
+     * @param listener receives progress
+     * @return the bundle, to be closed once fetched
+     * @throws IOException if the bundle does not exist or could not be downloaded
+     */
+    @NonNull
+    static CloneBundle open(@NonNull String bundle, @NonNull File gitDir, @CheckForNull ProxyConfiguration proxy,
+                            @NonNull TaskListener listener) throws IOException {
+        String scheme = bundle.contains("://") ? bundle.substring(0, bundle.indexOf("://")).toLowerCase(Locale.ENGLISH) : "";
+        if (!scheme.equals("http") && !scheme.equals("https")) {
+            File file = localFile(bundle);
+            if (!file.isFile()) {
+                throw new IOException("Bundle " + bundle + " does not exist");
+            }
+            listener.getLogger().println("Using bundle " + file);
+            return new CloneBundle(file, false);
+        }
+        listener.getLogger().println("Downloading bundle " + bundle);
+        File file = File.createTempFile("clone", ".bundle", gitDir);
+        try {
+            URLConnection connection = openConnection(new URL(bundle), proxy);
+            connection.setConnectTimeout(TIMEOUT_SECONDS * 1000);
+            connection.setReadTimeout(TIMEOUT_SECONDS * 1000);
+            try (InputStream in = connection.getInputStream()) {
+                Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(file.toPath());
+            throw e;
+        }
+        return new CloneBundle(file, true);
+    }
+
+    /* Like ProxyConfiguration.open, which reads the proxy of the controller and is not available on agents */
+    private static URLConnection openConnection(URL url, @CheckForNull ProxyConfiguration proxy) throws IOException {
+        if (proxy == null) {
+            return url.openConnection();
+        }
+        URLConnection connection = url.openConnection(proxy.createProxy(url.getHost()));
+        if (proxy.getUserName() != null) {
+            // Preemptive basic authentication, honored by proxies forwarding plain http requests
+            String userInfo = proxy.getUserName() + ':' + (proxy.getPassword() != null ? proxy.getPassword() : "");
+            connection.setRequestProperty("Proxy-Authorization",
+                    "Basic " + Base64.getEncoder().encodeToString(userInfo.getBytes(StandardCharsets.UTF_8)));
+        }
+        return connection;
+    }
+
+    private static File localFile(String bundle) throws IOException {
+        if (!bundle.startsWith("file:")) {
+            return new File(bundle);
+        }
+        try {
+            return new File(new URI(bundle));
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new IOException("Invalid bundle URL " + bundle, e);
+        }
+    }
+
+    /**
+     * @return local bundle file
+     */
+    @NonNull
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Deletes the bundle if it was downloaded.
+     */
+    @Override
+    public void close() throws IOException {
+        if (downloaded) {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+}
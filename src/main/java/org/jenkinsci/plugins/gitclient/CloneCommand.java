@@ -115,4 +115,69 @@ public interface CloneCommand extends GitCommand {
      * @return a {@link org.jenkinsci.plugins.gitclient.CloneCommand} object.
      */
     CloneCommand depth(Integer depth);
+
+    /**
+     * Partial clone: only download the objects allowed by a filter, like
+     * <code>blob:none</code> (no file contents, fetched when checked out)
+     * or <code>tree:0</code> (no trees nor file contents). The cloned
+     * remote is configured as a promisor remote, later checkouts download
+     * the missing objects they need from it. Sparse checkouts only download
+     * the files they check out. Requires a remote repository allowing
+     * filters. Default is to download all objects.
+     *
+     * @param filter object filter, as in <code>git clone --filter</code>, or null for no filter
+     * @return a {@link org.jenkinsci.plugins.gitclient.CloneCommand} object.
+     * @since 3.10.0
+     */
+    CloneCommand filter(String filter);
+
+    /**
+     * Use a reference repository maintained in a cache directory, shared by
+     * all clones of the same remote repository on the machine. The
+     * reference repository is created by the first clone and brought up to
+     * date by later clones, so that clones only download new objects.
+     * Ignored when {@link #reference(String)} or {@link #shared(boolean)}
+     * is used. Default is the directory named by the system property
+     * <code>org.jenkinsci.plugins.gitclient.ReferenceRepositoryCache.root</code>,
+     * no cache if it is not set.
+     *
+     * @param directory directory of the reference repositories, for instance below the agent root
+     * @return a {@link org.jenkinsci.plugins.gitclient.CloneCommand} object.
+     * @since 3.10.0
+     */
+    CloneCommand referenceCache(String directory);
+
+    /**
+     * Create the workspace as a linked worktree of the reference repository
+     * of {@link #referenceCache(String)} instead of a new repository. The
+     * workspace then has no refs, objects or configuration of its own, the
+     * clone only brings the reference repository up to date. Refs,
+     * configuration and the remote of the workspace are those of the
+     * reference repository, and so are shared with all other worktrees of
+     * the same remote repository; branches checked out in one worktree
+     * cannot be checked out in another. Requires CLI git 2.20 or newer,
+     * the remote name <code>origin</code> and the default refspec; the
+     * workspace is cloned as usual otherwise, and with JGit.
+     * Shallow clone, depth and filter do not apply to a worktree.
+     *
+     * @param worktree if true, create the workspace as a worktree of the reference repository
+     * @return a {@link org.jenkinsci.plugins.gitclient.CloneCommand} object.
+     * @since 3.10.0
+     */
+    CloneCommand worktree(boolean worktree);
+
+    /**
+     * Seed the clone from a bundle file, as created by
+     * <code>git bundle create</code>, before fetching from the remote
+     * repository. The refs of the bundle are fetched with the refspecs of
+     * the clone, and the fetch from the remote repository then only
+     * downloads the objects added since the bundle was created. A bundle
+     * which cannot be read is reported and the clone fetches everything
+     * from the remote repository. Not used by shallow clones.
+     *
+     * @param bundle path, <code>file:</code>, <code>http:</code> or <code>https:</code> URL of the bundle, or null for no bundle
+     * @return a {@link org.jenkinsci.plugins.gitclient.CloneCommand} object.
+     * @since 3.10.0
+     */
+    CloneCommand bundle(String bundle);
 }
@@ -0,0 +1,62 @@
+package org.jenkinsci.plugins.gitclient;
+
+import com.cloudbees.jenkins.plugins.sshcredentials.SSHUserPrivateKey;
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.util.Secret;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Identity of credentials including their secrets, for the caches and pools
+ * of this plugin which share work between clients using the same
+ * credentials.
+ * <p>
+ * Credentials with the same id are not necessarily the same: credentials
+ * defined in different folders may share an id, and credentials may be
+ * updated under the same id. The key holds a SHA-256 digest of the user
+ * name and the secrets, never the secrets themselves.
+ */
+final class CredentialsDigest {
+
+    private CredentialsDigest() {
+    }
+
+    /**
+     * Key of credentials, made of their type, their id and a digest of their user name and secrets.
+     *
+     * @param credentials credentials
+     * @return key of the credentials, or null if the secrets of this type of credentials are not known,
+     *         in which case the credentials cannot be told apart from other credentials with the same id
+     */
+    @CheckForNull
+    static String key(@NonNull StandardCredentials credentials) {
+        StringBuilder secrets = new StringBuilder();
+        if (credentials instanceof SSHUserPrivateKey) {
+            SSHUserPrivateKey sshUser = (SSHUserPrivateKey) credentials;
+            secrets.append(sshUser.getUsername()).append('\n');
+            for (String privateKey : sshUser.getPrivateKeys()) {
+                secrets.append(privateKey).append('\n');
+            }
+            secrets.append(Secret.toString(sshUser.getPassphrase()));
+        } else if (credentials instanceof StandardUsernamePasswordCredentials) {
+            StandardUsernamePasswordCredentials userPass = (StandardUsernamePasswordCredentials) credentials;
+            secrets.append(userPass.getUsername()).append('\n');
+            secrets.append(Secret.toString(userPass.getPassword()));
+        } else {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(secrets.toString().getBytes(StandardCharsets.UTF_8));
+            return credentials.getClass().getName() + '/' + credentials.getId() + '/' + Util.toHexString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
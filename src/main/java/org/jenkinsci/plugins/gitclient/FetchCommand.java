@@ -1,5 +1,6 @@
 package org.jenkinsci.plugins.gitclient;
 
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.URIish;
 
@@ -65,4 +66,56 @@ public interface FetchCommand extends GitCommand {
      * @return a {@link org.jenkinsci.plugins.gitclient.CloneCommand} object.
      */
     FetchCommand depth(Integer depth);
+
+    /**
+     * Only download the objects allowed by a filter, like
+     * <code>blob:none</code>. Intended for repositories created by a
+     * partial clone, see {@link CloneCommand#filter(String)}.
+     *
+     * @param filter object filter, as in <code>git fetch --filter</code>, or null for no filter
+     * @return a {@link org.jenkinsci.plugins.gitclient.FetchCommand} object.
+     * @since 3.10.0
+     */
+    FetchCommand filter(String filter);
+
+    /**
+     * Skip the fetch when it would not change any reference. The references
+     * of the remote repository are listed first, through the remote
+     * reference cache when it is enabled, and the fetch is skipped when
+     * every reference matched by the refspecs (and by the tags, if fetched)
+     * already has its advertised value locally and, with
+     * {@link #prune(boolean)}, no local reference would be pruned. A skipped
+     * fetch does not write <code>FETCH_HEAD</code> and is reported to
+     * {@link GitOperationListener}s as a skipped operation. Shallow fetches
+     * and fetches without refspecs are never skipped. Default is to always
+     * fetch.
+     *
+     * @param skipIfUpToDate if true, skip the fetch when the local references are up to date
+     * @return a {@link org.jenkinsci.plugins.gitclient.FetchCommand} object.
+     * @since 3.10.0
+     */
+    FetchCommand skipIfUpToDate(boolean skipIfUpToDate);
+
+    /**
+     * Fetch only these commits, requested by object id, instead of the
+     * refspecs. Intended for builds of one known commit, combined with
+     * {@link #shallow(boolean)}, {@link #depth(Integer)} and
+     * <code>tags(false)</code> to download as little as possible. The
+     * fetched commits are written to <code>FETCH_HEAD</code> and can be
+     * checked out by object id.
+     * <p>
+     * Servers refuse unadvertised object ids unless they allow them
+     * (<code>uploadpack.allowReachableSHA1InWant</code>, or protocol version
+     * 2). The fetch then falls back to the references advertised with those
+     * commits, narrowed from the refspecs of {@link #from(URIish, List)}, or
+     * to the refspecs themselves when a commit is not the tip of a
+     * reference. Fetches of commits never prune. With
+     * {@link #skipIfUpToDate(boolean)} the fetch is skipped when all commits
+     * are already in the repository.
+     *
+     * @param commits commits to fetch, or null or empty to fetch the refspecs
+     * @return a {@link org.jenkinsci.plugins.gitclient.FetchCommand} object.
+     * @since 3.10.0
+     */
+    FetchCommand commits(List<ObjectId> commits);
 }
@@ -0,0 +1,113 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.RefSpec;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Refspecs of a fetch of exact commits, see {@link FetchCommand#commits(List)}.
+ * <p>
+ * The commits are first requested by object id, which the server accepts
+ * when it allows unadvertised objects in wants
+ * (<code>uploadpack.allowReachableSHA1InWant</code>,
+ * <code>uploadpack.allowAnySHA1InWant</code> or protocol version 2 servers
+ * configured like that). When the server refuses, the commits are fetched
+ * through the narrowest refspecs which cover them.
+ */
+final class FetchCommits {
+
+    private FetchCommits() {
+    }
+
+    /**
+     * @param commits commits to fetch
+     * @return refspecs requesting each commit by object id, into <code>FETCH_HEAD</code>
+     */
+    @NonNull
+    static List<RefSpec> wants(@NonNull List<ObjectId> commits) {
+        List<RefSpec> wants = new ArrayList<>();
+        for (ObjectId commit : new LinkedHashSet<>(commits)) {
+            wants.add(new RefSpec(commit.name()));
+        }
+        return wants;
+    }
+
+    /**
+     * @param repo local repository
+     * @param commits commits to fetch
+     * @return true if every commit is already in the local repository
+     */
+    static boolean isPresent(@NonNull Repository repo, @NonNull List<ObjectId> commits) {
+        for (ObjectId commit : commits) {
+            if (!repo.getObjectDatabase().has(commit)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Refspecs to use when the server refuses to send unadvertised objects.
+     * Each commit advertised as the tip of a reference is fetched through
+     * that reference alone, narrowed from a matching refspec of the fetch so
+     * that its destination is updated, or into <code>FETCH_HEAD</code> if
+     * none matches. When a commit is not the tip of any reference, only the
+     * refspecs of the fetch can cover it.
+     *
+     * @param advertised references of the remote repository
+     * @param commits commits to fetch
+     * @param refspecs refspecs of the fetch, may be null
+     * @return refspecs covering the commits, empty if there are none
+     */
+    @NonNull
+    static List<RefSpec> covering(@NonNull Map<String, ObjectId> advertised, @NonNull List<ObjectId> commits,
+                                  @CheckForNull List<RefSpec> refspecs) {
+        List<RefSpec> specs = new ArrayList<>();
+        if (refspecs != null) {
+            for (RefSpec spec : refspecs) {
+                if (spec != null) {
+                    specs.add(spec);
+                }
+            }
+        }
+        Map<String, ObjectId> sorted = new TreeMap<>(advertised);
+        Set<RefSpec> covering = new LinkedHashSet<>();
+        for (ObjectId commit : commits) {
+            RefSpec narrowest = narrowest(sorted, commit, specs);
+            if (narrowest == null) {
+                return specs;
+            }
+            covering.add(narrowest);
+        }
+        return new ArrayList<>(covering);
+    }
+
+    @CheckForNull
+    private static RefSpec narrowest(Map<String, ObjectId> advertised, ObjectId commit, List<RefSpec> specs) {
+        RefSpec unmatched = null;
+        for (Map.Entry<String, ObjectId> remote : advertised.entrySet()) {
+            if (!commit.equals(remote.getValue())) {
+                continue;
+            }
+            String name = remote.getKey();
+            for (RefSpec spec : specs) {
+                if (spec.getDestination() != null && spec.matchSource(name)) {
+                    return spec.isWildcard() ? spec.expandFromSource(name) : spec;
+                }
+            }
+            if (unmatched == null) {
+                unmatched = new RefSpec(name);
+            }
+        }
+        return unmatched;
+    }
+}
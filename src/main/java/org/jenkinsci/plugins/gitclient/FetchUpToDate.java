@@ -0,0 +1,99 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.RefSpec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides from the references advertised by a remote repository whether a
+ * fetch would change any local reference, see
+ * {@link FetchCommand#skipIfUpToDate(boolean)}.
+ * <p>
+ * Advertised annotated tags carry the object they peel to, as returned by
+ * {@link AbstractGitAPIImpl#getRemoteReferences}, so a local annotated tag
+ * is current when it peels to the advertised object.
+ */
+final class FetchUpToDate {
+
+    private static final RefSpec TAGS = new RefSpec("+" + Constants.R_TAGS + "*:" + Constants.R_TAGS + "*");
+
+    private FetchUpToDate() {
+    }
+
+    /**
+     * @param advertised references of the remote repository
+     * @param repo local repository
+     * @param refspecs refspecs of the fetch
+     * @param tags true if the fetch also fetches all tags
+     * @param prune true if the fetch prunes references removed from the remote repository
+     * @return true if the fetch would neither create, update nor prune a reference
+     * @throws IOException if the local references could not be read
+     */
+    static boolean isUpToDate(@NonNull Map<String, ObjectId> advertised, @NonNull Repository repo,
+                              @NonNull List<RefSpec> refspecs, boolean tags, boolean prune) throws IOException {
+        List<RefSpec> specs = new ArrayList<>();
+        for (RefSpec spec : refspecs) {
+            if (spec != null) {
+                specs.add(spec);
+            }
+        }
+        if (specs.isEmpty()) {
+            return false; // fetches the configured refspecs or only FETCH_HEAD
+        }
+        if (tags) {
+            specs.add(TAGS);
+        }
+        RefDatabase refs = repo.getRefDatabase();
+        for (RefSpec spec : specs) {
+            if (spec.getDestination() == null) {
+                return false; // only writes FETCH_HEAD, which the caller may read
+            }
+            boolean matched = false;
+            for (Map.Entry<String, ObjectId> remote : advertised.entrySet()) {
+                String name = remote.getKey();
+                if (!spec.matchSource(name)) {
+                    continue;
+                }
+                matched = true;
+                String destination = spec.isWildcard() ? spec.expandFromSource(name).getDestination() : spec.getDestination();
+                if (!isCurrent(refs, destination, remote.getValue())) {
+                    return false;
+                }
+            }
+            if (!matched && !spec.isWildcard()) {
+                return false; // the fetch reports the missing reference
+            }
+            if (prune && spec.isWildcard()) {
+                String destination = spec.getDestination();
+                for (Ref local : refs.getRefsByPrefix(destination.substring(0, destination.indexOf('*')))) {
+                    if (spec.matchDestination(local.getName())
+                            && !advertised.containsKey(spec.expandFromDestination(local.getName()).getSource())) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isCurrent(RefDatabase refs, String name, ObjectId advertised) throws IOException {
+        Ref ref = refs.exactRef(name);
+        if (ref == null || ref.getObjectId() == null) {
+            return false;
+        }
+        if (ref.getObjectId().equals(advertised)) {
+            return true;
+        }
+        ObjectId peeled = refs.peel(ref).getPeeledObjectId();
+        return peeled != null && peeled.equals(advertised);
+    }
+}
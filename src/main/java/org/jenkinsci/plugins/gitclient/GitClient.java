@@ -21,6 +21,7 @@ import edu.umd.cs.findbugs.annotations.CheckForNull;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -633,6 +634,20 @@ public interface GitClient {
      */
     ObjectId getHeadRev(String remoteRepoUrl, String branch) throws GitException, InterruptedException;
 
+    /**
+     * Resolve several branch specs with a single listing of the references of
+     * a remote repository. Each branch spec resolves to the commit which
+     * {@link #getHeadRev(String, String)} returns for it.
+     *
+     * @param remoteRepoUrl remote repository URL
+     * @param branchSpecs branch specs, like "master", "origin/feature-*" or "refs/tags/v1.0"
+     * @return map from each branch spec to its commit. Branch specs which match no reference are not included.
+     * @throws hudson.plugins.git.GitException if underlying git operation fails.
+     * @throws java.lang.InterruptedException if interrupted.
+     * @since 3.10.0
+     */
+    Map<String, ObjectId> getHeadRevs(String remoteRepoUrl, Collection<String> branchSpecs) throws GitException, InterruptedException;
+
     /**
      * List references in a remote repository. Equivalent to <code>git ls-remote [--heads] [--tags] &lt;repository&gt; [&lt;refs&gt;]</code>.
      *
@@ -652,6 +667,14 @@ public interface GitClient {
      */
     Map<String, ObjectId> getRemoteReferences(String remoteRepoUrl, String pattern, boolean headsOnly, boolean tagsOnly) throws GitException, InterruptedException;
 
+    /**
+     * Returns a {@link org.jenkinsci.plugins.gitclient.RemoteReferencesCommand} to list the references of many remote repositories in parallel.
+     *
+     * @return a {@link org.jenkinsci.plugins.gitclient.RemoteReferencesCommand} object.
+     * @since 3.10.0
+     */
+    RemoteReferencesCommand remoteReferences();
+
     /**
      * List symbolic references in a remote repository. Equivalent to <code>git ls-remote --symref &lt;repository&gt;
      * [&lt;refs&gt;]</code>. Note: the response may be empty for multiple reasons
@@ -0,0 +1,166 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Describes one completed git operation, passed to each {@link GitOperationListener}.
+ * <p>
+ * Values which the implementation cannot measure are reported as -1 (or
+ * null for the exit status and timeout). Command line git reports the
+ * bytes written to stdout and stderr and the exit status. JGit reports the
+ * objects counted by its progress monitor.
+ *
+ * @since 3.10.0
+ */
+public final class GitOperationEvent {
+
+    private final String implementation;
+    private final String operation;
+    private final String host;
+    private final long durationMillis;
+    private final long stdoutBytes;
+    private final long stderrBytes;
+    private final long transferredBytes;
+    private final long objectCount;
+    private final Integer exitStatus;
+    private final Integer timeoutMinutes;
+    private final boolean succeeded;
+    private final boolean skipped;
+    private final long queueMillis;
+    private final GitProgress progress;
+
+    GitOperationEvent(String implementation, String operation, String host, long durationMillis,
+                      long stdoutBytes, long stderrBytes, long transferredBytes, long objectCount,
+                      Integer exitStatus, Integer timeoutMinutes, boolean succeeded, boolean skipped, long queueMillis,
+                      GitProgress progress) {
+        this.implementation = implementation;
+        this.operation = operation;
+        this.host = host;
+        this.durationMillis = durationMillis;
+        this.stdoutBytes = stdoutBytes;
+        this.stderrBytes = stderrBytes;
+        this.transferredBytes = transferredBytes;
+        this.objectCount = objectCount;
+        this.exitStatus = exitStatus;
+        this.timeoutMinutes = timeoutMinutes;
+        this.succeeded = succeeded;
+        this.skipped = skipped;
+        this.queueMillis = queueMillis;
+        this.progress = progress;
+    }
+
+    /**
+     * @return "git" for command line git, "jgit" for JGit
+     */
+    @NonNull
+    public String getImplementation() {
+        return implementation;
+    }
+
+    /**
+     * @return name of the operation, the git subcommand for command line git (for example "fetch" or "ls-remote")
+     */
+    @NonNull
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return host of the remote repository, or null for local operations
+     */
+    @CheckForNull
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return wall clock time of the operation in milliseconds, without {@link #getQueueMillis()}
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return bytes written by git to stdout, or -1 if not measured
+     */
+    public long getStdoutBytes() {
+        return stdoutBytes;
+    }
+
+    /**
+     * @return bytes written by git to stderr, or -1 if not measured
+     */
+    public long getStderrBytes() {
+        return stderrBytes;
+    }
+
+    /**
+     * @return bytes transferred from or to the remote repository, or -1 if not measured
+     */
+    public long getTransferredBytes() {
+        return transferredBytes;
+    }
+
+    /**
+     * @return objects received or sent, or -1 if not measured
+     */
+    public long getObjectCount() {
+        return objectCount;
+    }
+
+    /**
+     * @return exit status of the git process, or null if there was no process or it did not exit
+     */
+    @CheckForNull
+    public Integer getExitStatus() {
+        return exitStatus;
+    }
+
+    /**
+     * @return timeout of the operation in minutes, or null if it had none
+     */
+    @CheckForNull
+    public Integer getTimeoutMinutes() {
+        return timeoutMinutes;
+    }
+
+    /**
+     * @return true if the operation completed without error
+     */
+    public boolean isSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * @return true if the operation was not run because it would not have
+     *         changed the repository, like a fetch skipped by
+     *         {@link FetchCommand#skipIfUpToDate(boolean)}
+     */
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return time the operation waited for its host in milliseconds, see
+     *         <code>-Dorg.jenkinsci.plugins.gitclient.HostConcurrencyGovernor.permitsPerHost</code>
+     */
+    public long getQueueMillis() {
+        return queueMillis;
+    }
+
+    /**
+     * @return summary of the progress reported by a fetch, clone or push, or null if it reported none
+     */
+    @CheckForNull
+    public GitProgress getProgress() {
+        return progress;
+    }
+
+    @Override
+    public String toString() {
+        return implementation + " " + operation + (host == null ? "" : " " + host) + " " + durationMillis + "ms"
+                + (queueMillis == 0 ? "" : " queued " + queueMillis + "ms")
+                + (succeeded ? "" : " failed") + (skipped ? " skipped" : "") + (exitStatus == null ? "" : " status=" + exitStatus);
+    }
+}
@@ -0,0 +1,47 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Receives a {@link GitOperationEvent} after each operation of
+ * {@link CliGitAPIImpl} and {@link JGitAPIImpl} in this JVM.
+ * <p>
+ * Command line git reports every git process it runs. JGit reports the
+ * operations which contact a remote repository. Listeners are called on
+ * the thread which ran the operation, on the machine where the operation
+ * ran (an agent for most operations), and should return quickly. Exceptions
+ * thrown by a listener are logged and otherwise ignored.
+ * <p>
+ * {@link GitOperationStatistics} is a listener which aggregates the events
+ * and exposes them over JMX.
+ *
+ * @since 3.10.0
+ */
+@FunctionalInterface
+public interface GitOperationListener {
+
+    /**
+     * Called after an operation completed, successfully or not.
+     *
+     * @param event the operation
+     */
+    void onOperation(@NonNull GitOperationEvent event);
+
+    /**
+     * Register a listener for the operations of this JVM.
+     *
+     * @param listener listener to add
+     */
+    static void register(@NonNull GitOperationListener listener) {
+        GitOperationRecorder.LISTENERS.addIfAbsent(listener);
+    }
+
+    /**
+     * Remove a listener added by {@link #register(GitOperationListener)}.
+     *
+     * @param listener listener to remove
+     */
+    static void unregister(@NonNull GitOperationListener listener) {
+        GitOperationRecorder.LISTENERS.remove(listener);
+    }
+}
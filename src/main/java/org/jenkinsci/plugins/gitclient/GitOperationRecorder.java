@@ -0,0 +1,171 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import org.eclipse.jgit.transport.URIish;
+
+import java.net.URISyntaxException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures one git operation and passes it to the registered {@link GitOperationListener}s.
+ * <p>
+ * Usage:
+ * <pre>
+ * GitOperationRecorder recorder = new GitOperationRecorder("jgit", "fetch", hostOf(url), timeout);
+ * try {
+ *     recorder.queue(); // operations which contact the remote host
+ *     ...
+ *     recorder.succeeded();
+ * } finally {
+ *     recorder.finish();
+ * }
+ * </pre>
+ */
+final class GitOperationRecorder {
+
+    private static final Logger LOGGER = Logger.getLogger(GitOperationRecorder.class.getName());
+
+    static final CopyOnWriteArrayList<GitOperationListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    static {
+        if (Boolean.getBoolean(GitOperationStatistics.class.getName() + ".enabled")) {
+            GitOperationStatistics.install();
+        }
+    }
+
+    private final String implementation;
+    private final String operation;
+    private final String host;
+    private final Integer timeoutMinutes;
+    private long start = System.nanoTime();
+    private long queueNanos;
+    private HostConcurrencyGovernor.Permit permit;
+    private GitProgressTracker progress;
+    private long stdoutBytes = -1;
+    private long stderrBytes = -1;
+    private long transferredBytes = -1;
+    private long objectCount = -1;
+    private Integer exitStatus;
+    private boolean succeeded;
+    private boolean skipped;
+
+    GitOperationRecorder(String implementation, String operation, @CheckForNull String host, @CheckForNull Integer timeoutMinutes) {
+        this.implementation = implementation;
+        this.operation = operation;
+        this.host = host;
+        this.timeoutMinutes = timeoutMinutes;
+    }
+
+    @CheckForNull
+    static String hostOf(@CheckForNull URIish remote) {
+        return remote == null ? null : remote.getHost();
+    }
+
+    @CheckForNull
+    static String hostOf(@CheckForNull String url) {
+        if (url == null) {
+            return null;
+        }
+        try {
+            return new URIish(url).getHost();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Wait until the {@link HostConcurrencyGovernor} allows the operation to
+     * run against its host. The permit is returned by {@link #finish()},
+     * and the time waiting is not included in the duration of the
+     * operation.
+     *
+     * @throws InterruptedException if interrupted while queued
+     */
+    void queue() throws InterruptedException {
+        if (permit != null || host == null) {
+            return;
+        }
+        permit = HostConcurrencyGovernor.get().acquire(host, HostConcurrencyGovernor.priorityOf(operation));
+        if (permit.getQueueNanos() > 0) {
+            queueNanos = permit.getQueueNanos();
+            start = System.nanoTime();
+        }
+    }
+
+    /**
+     * Progress of the operation, reported to the {@link GitProgressListener}s
+     * and summarized in the event of the operation.
+     *
+     * @return progress tracker of the operation
+     */
+    GitProgressTracker progress() {
+        if (progress == null) {
+            progress = new GitProgressTracker(implementation, operation, host);
+        }
+        return progress;
+    }
+
+    void stdoutBytes(long bytes) {
+        this.stdoutBytes = bytes;
+    }
+
+    void stderrBytes(long bytes) {
+        this.stderrBytes = bytes;
+    }
+
+    void transferredBytes(long bytes) {
+        this.transferredBytes = bytes;
+    }
+
+    void objectCount(long count) {
+        this.objectCount = count;
+    }
+
+    void exitStatus(int status) {
+        this.exitStatus = status;
+    }
+
+    void succeeded() {
+        this.succeeded = true;
+    }
+
+    void skipped() {
+        this.skipped = true;
+    }
+
+    /**
+     * Return the permit of {@link #queue()} and report the operation to the listeners. Never throws.
+     */
+    void finish() {
+        if (permit != null) {
+            permit.close();
+        }
+        GitProgress summary = null;
+        if (progress != null) {
+            summary = progress.finish();
+            if (objectCount < 0 && summary.getReceivedObjects() >= 0) {
+                objectCount = summary.getReceivedObjects();
+            }
+            if (transferredBytes < 0 && summary.getReceivedBytes() >= 0) {
+                transferredBytes = summary.getReceivedBytes();
+            }
+        }
+        if (LISTENERS.isEmpty()) {
+            return;
+        }
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        GitOperationEvent event = new GitOperationEvent(implementation, operation, host, durationMillis,
+                stdoutBytes, stderrBytes, transferredBytes, objectCount, exitStatus, timeoutMinutes, succeeded, skipped,
+                TimeUnit.NANOSECONDS.toMillis(queueNanos), summary);
+        for (GitOperationListener listener : LISTENERS) {
+            try {
+                listener.onOperation(event);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Git operation listener " + listener + " failed for " + event, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * {@link GitOperationListener} which aggregates latency histograms and
+ * transfer counts by operation and by remote host, and exposes them over
+ * JMX as <code>org.jenkinsci.plugins.gitclient:type=GitOperationStatistics</code>.
+ * <p>
+ * Installed in a JVM by {@link #install()}, or at the first git operation
+ * when the JVM runs with
+ * <code>-Dorg.jenkinsci.plugins.gitclient.GitOperationStatistics.enabled=true</code>.
+ *
+ * @since 3.10.0
+ */
+public final class GitOperationStatistics implements GitOperationListener, GitOperationStatisticsMXBean {
+
+    private static final Logger LOGGER = Logger.getLogger(GitOperationStatistics.class.getName());
+
+    /** Name of the MBean registered by {@link #install()} */
+    public static final String OBJECT_NAME = "org.jenkinsci.plugins.gitclient:type=GitOperationStatistics";
+
+    private static final long[] BOUNDS_MILLIS = { 10, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 300000 };
+
+    private static GitOperationStatistics installed;
+
+    private final ConcurrentMap<String, Summary> operations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Summary> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * Register the statistics of this JVM as listener and MBean, unless already done.
+     *
+     * @return the installed statistics
+     */
+    @NonNull
+    public static synchronized GitOperationStatistics install() {
+        if (installed == null) {
+            installed = new GitOperationStatistics();
+            GitOperationListener.register(installed);
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                server.registerMBean(installed, new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                LOGGER.log(Level.WARNING, "Failed to register " + OBJECT_NAME, e);
+            }
+        }
+        return installed;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onOperation(@NonNull GitOperationEvent event) {
+        String operation = event.getImplementation() + " " + event.getOperation();
+        operations.computeIfAbsent(operation, k -> new Summary()).add(event);
+        if (event.getHost() != null) {
+            hosts.computeIfAbsent(event.getHost(), k -> new Summary()).add(event);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, Summary> getOperations() {
+        return snapshot(operations);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, Summary> getHosts() {
+        return snapshot(hosts);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long[] getHistogramBoundsMillis() {
+        return BOUNDS_MILLIS.clone();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void reset() {
+        operations.clear();
+        hosts.clear();
+    }
+
+    private static Map<String, Summary> snapshot(Map<String, Summary> summaries) {
+        Map<String, Summary> result = new TreeMap<>();
+        for (Map.Entry<String, Summary> entry : summaries.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().copy());
+        }
+        return result;
+    }
+
+    /**
+     * Aggregated events of one operation or host.
+     */
+    public static final class Summary {
+        private long count;
+        private long failures;
+        private long totalMillis;
+        private long maxMillis;
+        private long stdoutBytes;
+        private long stderrBytes;
+        private long transferredBytes;
+        private long objectCount;
+        private long totalQueueMillis;
+        private long maxQueueMillis;
+        private long receivingMillis;
+        private long receivedBytes;
+        private long resolvingDeltasMillis;
+        private final long[] histogram = new long[BOUNDS_MILLIS.length + 1];
+
+        synchronized void add(GitOperationEvent event) {
+            count++;
+            if (!event.isSucceeded()) {
+                failures++;
+            }
+            long millis = event.getDurationMillis();
+            totalMillis += millis;
+            maxMillis = Math.max(maxMillis, millis);
+            stdoutBytes += Math.max(0, event.getStdoutBytes());
+            stderrBytes += Math.max(0, event.getStderrBytes());
+            transferredBytes += Math.max(0, event.getTransferredBytes());
+            objectCount += Math.max(0, event.getObjectCount());
+            totalQueueMillis += event.getQueueMillis();
+            maxQueueMillis = Math.max(maxQueueMillis, event.getQueueMillis());
+            GitProgress progress = event.getProgress();
+            if (progress != null) {
+                if (progress.getReceivedBytes() >= 0 && progress.getReceivingMillis() > 0) {
+                    receivingMillis += progress.getReceivingMillis();
+                    receivedBytes += progress.getReceivedBytes();
+                }
+                resolvingDeltasMillis += progress.getResolvingDeltasMillis();
+            }
+            int bucket = 0;
+            while (bucket < BOUNDS_MILLIS.length && millis > BOUNDS_MILLIS[bucket]) {
+                bucket++;
+            }
+            histogram[bucket]++;
+        }
+
+        synchronized Summary copy() {
+            Summary copy = new Summary();
+            copy.count = count;
+            copy.failures = failures;
+            copy.totalMillis = totalMillis;
+            copy.maxMillis = maxMillis;
+            copy.stdoutBytes = stdoutBytes;
+            copy.stderrBytes = stderrBytes;
+            copy.transferredBytes = transferredBytes;
+            copy.objectCount = objectCount;
+            copy.totalQueueMillis = totalQueueMillis;
+            copy.maxQueueMillis = maxQueueMillis;
+            copy.receivingMillis = receivingMillis;
+            copy.receivedBytes = receivedBytes;
+            copy.resolvingDeltasMillis = resolvingDeltasMillis;
+            System.arraycopy(histogram, 0, copy.histogram, 0, histogram.length);
+            return copy;
+        }
+
+        /**
+         * @return number of operations
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return number of operations which failed
+         */
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return total wall clock time of the operations in milliseconds
+         */
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+
+        /**
+         * @return wall clock time of the slowest operation in milliseconds
+         */
+        public long getMaxMillis() {
+            return maxMillis;
+        }
+
+        /**
+         * @return bytes written to stdout by command line git
+         */
+        public long getStdoutBytes() {
+            return stdoutBytes;
+        }
+
+        /**
+         * @return bytes written to stderr by command line git
+         */
+        public long getStderrBytes() {
+            return stderrBytes;
+        }
+
+        /**
+         * @return bytes transferred from or to remote repositories, where measured
+         */
+        public long getTransferredBytes() {
+            return transferredBytes;
+        }
+
+        /**
+         * @return objects received or sent, where measured
+         */
+        public long getObjectCount() {
+            return objectCount;
+        }
+
+        /**
+         * @return total time the operations waited for their host in milliseconds
+         */
+        public long getTotalQueueMillis() {
+            return totalQueueMillis;
+        }
+
+        /**
+         * @return longest time an operation waited for its host in milliseconds
+         */
+        public long getMaxQueueMillis() {
+            return maxQueueMillis;
+        }
+
+        /**
+         * @return time spent receiving objects in milliseconds, by the operations which reported the bytes they received
+         */
+        public long getReceivingMillis() {
+            return receivingMillis;
+        }
+
+        /**
+         * @return bytes received while receiving objects, see {@link #getReceivingMillis()}
+         */
+        public long getReceivedBytes() {
+            return receivedBytes;
+        }
+
+        /**
+         * @return bytes received per second while receiving objects, or -1 if no operation reported it
+         */
+        public long getReceivedBytesPerSecond() {
+            return receivingMillis == 0 ? -1 : (long) (receivedBytes * 1000.0 / receivingMillis);
+        }
+
+        /**
+         * @return time spent resolving deltas in milliseconds
+         */
+        public long getResolvingDeltasMillis() {
+            return resolvingDeltasMillis;
+        }
+
+        /**
+         * @return number of operations in each latency bucket, see {@link GitOperationStatistics#getHistogramBoundsMillis()}
+         */
+        public long[] getHistogram() {
+            return histogram.clone();
+        }
+    }
+}
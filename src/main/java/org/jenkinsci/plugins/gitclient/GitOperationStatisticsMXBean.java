@@ -0,0 +1,31 @@
+package org.jenkinsci.plugins.gitclient;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link GitOperationStatistics}.
+ *
+ * @since 3.10.0
+ */
+public interface GitOperationStatisticsMXBean {
+
+    /**
+     * @return statistics by implementation and operation, keyed like "git fetch" or "jgit ls-remote"
+     */
+    Map<String, GitOperationStatistics.Summary> getOperations();
+
+    /**
+     * @return statistics of the operations which contacted a remote repository, keyed by host
+     */
+    Map<String, GitOperationStatistics.Summary> getHosts();
+
+    /**
+     * @return upper bounds in milliseconds of the latency histogram buckets, the last bucket has no upper bound
+     */
+    long[] getHistogramBoundsMillis();
+
+    /**
+     * Discard all statistics.
+     */
+    void reset();
+}
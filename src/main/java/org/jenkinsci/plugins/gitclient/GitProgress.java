@@ -0,0 +1,273 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.Locale;
+
+/**
+ * Progress of a fetch, clone or push, passed to each {@link GitProgressListener}
+ * while the operation runs and reported by {@link GitOperationEvent#getProgress()}
+ * when it completed.
+ * <p>
+ * Command line git reports its <code>--progress</code> output, JGit reports
+ * the tasks of its progress monitor. Both report the phases of the server
+ * (counting and compressing objects) and of the client (receiving objects
+ * and resolving deltas). Values which were not reported are -1. JGit does
+ * not report received bytes while receiving; they are measured from the
+ * growth of the pack files once the operation completed.
+ * <p>
+ * A long {@link #getReceivingMillis()} with a low throughput points at the
+ * network or the server, a long {@link #getResolvingDeltasMillis()} at the
+ * CPU or disk of the machine running git.
+ *
+ * @since 3.10.0
+ */
+public final class GitProgress {
+
+    /**
+     * Phase of a transfer.
+     */
+    public enum Phase {
+        /** The server enumerates or counts the objects to send */
+        COUNTING_OBJECTS,
+        /** The server compresses the objects to send */
+        COMPRESSING_OBJECTS,
+        /** The client receives (or unpacks) objects */
+        RECEIVING_OBJECTS,
+        /** The client resolves the deltas of the received pack */
+        RESOLVING_DELTAS,
+        /** The client sends objects, when pushing */
+        SENDING_OBJECTS,
+        /** Files are checked out */
+        CHECKING_OUT,
+        /** Any other task reported by git */
+        OTHER;
+
+        /**
+         * @param title task title, like "Receiving objects" or "remote: Counting objects"
+         * @return the phase of the task
+         */
+        @NonNull
+        static Phase of(@NonNull String title) {
+            String task = title.toLowerCase(Locale.ENGLISH).trim();
+            if (task.startsWith("remote:")) {
+                task = task.substring("remote:".length()).trim();
+            }
+            switch (task) {
+                case "enumerating objects":
+                case "counting objects":
+                case "finding sources":
+                    return COUNTING_OBJECTS;
+                case "compressing objects":
+                    return COMPRESSING_OBJECTS;
+                case "receiving objects":
+                case "unpacking objects":
+                    return RECEIVING_OBJECTS;
+                case "resolving deltas":
+                    return RESOLVING_DELTAS;
+                case "writing objects":
+                    return SENDING_OBJECTS;
+                case "checking out files":
+                case "updating files":
+                    return CHECKING_OUT;
+                default:
+                    return OTHER;
+            }
+        }
+    }
+
+    private final String implementation;
+    private final String operation;
+    private final String host;
+    private final Phase phase;
+    private final String title;
+    private final long completed;
+    private final long total;
+    private final long receivedObjects;
+    private final long totalObjects;
+    private final long receivedBytes;
+    private final long resolvedDeltas;
+    private final long totalDeltas;
+    private final long elapsedMillis;
+    private final long receivingMillis;
+    private final long resolvingDeltasMillis;
+    private final long bytesPerSecond;
+    private final boolean done;
+
+    GitProgress(String implementation, String operation, String host, Phase phase, String title,
+                long completed, long total, long receivedObjects, long totalObjects, long receivedBytes,
+                long resolvedDeltas, long totalDeltas, long elapsedMillis, long receivingMillis,
+                long resolvingDeltasMillis, long bytesPerSecond, boolean done) {
+        this.implementation = implementation;
+        this.operation = operation;
+        this.host = host;
+        this.phase = phase;
+        this.title = title;
+        this.completed = completed;
+        this.total = total;
+        this.receivedObjects = receivedObjects;
+        this.totalObjects = totalObjects;
+        this.receivedBytes = receivedBytes;
+        this.resolvedDeltas = resolvedDeltas;
+        this.totalDeltas = totalDeltas;
+        this.elapsedMillis = elapsedMillis;
+        this.receivingMillis = receivingMillis;
+        this.resolvingDeltasMillis = resolvingDeltasMillis;
+        this.bytesPerSecond = bytesPerSecond;
+        this.done = done;
+    }
+
+    /**
+     * @return "git" for command line git, "jgit" for JGit
+     */
+    @NonNull
+    public String getImplementation() {
+        return implementation;
+    }
+
+    /**
+     * @return name of the operation, like "fetch", "clone" or "push"
+     */
+    @NonNull
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return host of the remote repository, or null if unknown
+     */
+    @CheckForNull
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return phase of the current or last task, or null if git reported no task
+     */
+    @CheckForNull
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * @return title of the current or last task as reported by git, or null if git reported no task
+     */
+    @CheckForNull
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return work completed by the current task
+     */
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return total work of the current task, or -1 if unknown
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return objects received so far, or -1 if not reported
+     */
+    public long getReceivedObjects() {
+        return receivedObjects;
+    }
+
+    /**
+     * @return objects to receive, or -1 if not reported
+     */
+    public long getTotalObjects() {
+        return totalObjects;
+    }
+
+    /**
+     * @return bytes received so far, or -1 if not reported
+     */
+    public long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    /**
+     * @return deltas resolved so far, or -1 if not reported
+     */
+    public long getResolvedDeltas() {
+        return resolvedDeltas;
+    }
+
+    /**
+     * @return deltas to resolve, or -1 if not reported
+     */
+    public long getTotalDeltas() {
+        return totalDeltas;
+    }
+
+    /**
+     * @return time since the operation started reporting progress in milliseconds
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return time spent receiving objects in milliseconds
+     */
+    public long getReceivingMillis() {
+        return receivingMillis;
+    }
+
+    /**
+     * @return time spent resolving deltas in milliseconds
+     */
+    public long getResolvingDeltasMillis() {
+        return resolvingDeltasMillis;
+    }
+
+    /**
+     * @return bytes received per second while receiving objects, as reported
+     *         by command line git or measured, or -1 if unknown
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @return {@link #getBytesPerSecond()} in MiB per second, or -1 if unknown
+     */
+    public double getMegabytesPerSecond() {
+        return bytesPerSecond < 0 ? -1 : bytesPerSecond / (1024.0 * 1024.0);
+    }
+
+    /**
+     * @return true if the operation completed, this is its summary
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder(implementation).append(' ').append(operation);
+        if (host != null) {
+            s.append(' ').append(host);
+        }
+        if (title != null) {
+            s.append(' ').append(title).append(' ').append(completed);
+            if (total >= 0) {
+                s.append('/').append(total);
+            }
+        }
+        if (receivedBytes >= 0) {
+            s.append(' ').append(receivedBytes).append(" bytes");
+        }
+        if (bytesPerSecond >= 0) {
+            s.append(String.format(Locale.ENGLISH, " %.2f MiB/s", getMegabytesPerSecond()));
+        }
+        return s.append(done ? " done" : "").toString();
+    }
+}
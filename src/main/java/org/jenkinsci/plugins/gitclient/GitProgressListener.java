@@ -0,0 +1,45 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Receives the {@link GitProgress} of the fetches, clones and pushes of
+ * {@link CliGitAPIImpl} and {@link JGitAPIImpl} in this JVM while they run.
+ * <p>
+ * Progress is reported when a task starts or completes, and at most once a
+ * second in between. Listeners are called on the thread which reads the
+ * progress, on the machine where the operation runs, and should return
+ * quickly. Exceptions thrown by a listener are logged and otherwise
+ * ignored. The summary of a completed operation is also available from
+ * {@link GitOperationEvent#getProgress()}.
+ *
+ * @since 3.10.0
+ */
+@FunctionalInterface
+public interface GitProgressListener {
+
+    /**
+     * Called when the progress of an operation changed.
+     *
+     * @param progress progress of the operation
+     */
+    void onProgress(@NonNull GitProgress progress);
+
+    /**
+     * Register a listener for the progress of the operations of this JVM.
+     *
+     * @param listener listener to add
+     */
+    static void register(@NonNull GitProgressListener listener) {
+        GitProgressTracker.LISTENERS.addIfAbsent(listener);
+    }
+
+    /**
+     * Remove a listener added by {@link #register(GitProgressListener)}.
+     *
+     * @param listener listener to remove
+     */
+    static void unregister(@NonNull GitProgressListener listener) {
+        GitProgressTracker.LISTENERS.remove(listener);
+    }
+}
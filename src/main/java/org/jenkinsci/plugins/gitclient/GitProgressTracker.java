@@ -0,0 +1,301 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the {@link GitProgress} of one operation from the tasks of a JGit
+ * progress monitor or from the <code>--progress</code> output of command
+ * line git, and passes it to the registered {@link GitProgressListener}s.
+ * Created by {@link GitOperationRecorder#progress()}.
+ */
+final class GitProgressTracker {
+
+    private static final Logger LOGGER = Logger.getLogger(GitProgressTracker.class.getName());
+
+    static final CopyOnWriteArrayList<GitProgressListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /* Progress lines of command line git, like "Receiving objects:  45% (123/273), 1.20 MiB | 2.34 MiB/s" */
+    private static final Pattern PROGRESS_LINE = Pattern.compile(
+            "((?:remote:\\s*)?[A-Za-z][A-Za-z ]*?):\\s+(?:\\d+% \\()?(\\d+)(?:/(\\d+)\\))?"
+            + "(?:, ([\\d.]+) (bytes|KiB|MiB|GiB)(?: \\| ([\\d.]+) (bytes|KiB|MiB|GiB)/s)?)?"
+            + "(, (?:done|completed).*)?");
+
+    private final String implementation;
+    private final String operation;
+    private final String host;
+    private final long start = System.nanoTime();
+    private GitProgress.Phase phase;
+    private String title;
+    private boolean running;
+    private long completed;
+    private long total = -1;
+    private long receivedObjects = -1;
+    private long totalObjects = -1;
+    private long receivedBytes = -1;
+    private long resolvedDeltas = -1;
+    private long totalDeltas = -1;
+    private long taskStart;
+    private long receivingNanos;
+    private long resolvingDeltasNanos;
+    private long reportedBytesPerSecond = -1;
+    private long lastReport;
+
+    GitProgressTracker(String implementation, String operation, @CheckForNull String host) {
+        this.implementation = implementation;
+        this.operation = operation;
+        this.host = host;
+    }
+
+    /**
+     * A task started.
+     *
+     * @param title task title, like "Receiving objects"
+     * @param total total work of the task, or -1 if unknown
+     */
+    synchronized void begin(@NonNull String title, long total) {
+        if (running) {
+            stop();
+        }
+        this.title = title;
+        this.phase = GitProgress.Phase.of(title);
+        this.running = true;
+        this.completed = 0;
+        this.total = total;
+        this.taskStart = System.nanoTime();
+        count();
+        report(true);
+    }
+
+    /**
+     * Work of the current task completed since the last call.
+     *
+     * @param work work units completed
+     */
+    synchronized void add(long work) {
+        if (!running) {
+            return;
+        }
+        completed += work;
+        count();
+        report(false);
+    }
+
+    /**
+     * The current task completed.
+     */
+    synchronized void end() {
+        if (running) {
+            stop();
+            report(true);
+        }
+    }
+
+    /**
+     * Bytes received by the operation, for JGit which does not report them while receiving.
+     *
+     * @param bytes bytes received
+     */
+    synchronized void receivedBytes(long bytes) {
+        receivedBytes = bytes;
+    }
+
+    /**
+     * Parses one line of the <code>--progress</code> output of command line
+     * git. Lines which are not progress are ignored.
+     *
+     * @param line progress line, without the carriage return or newline which ended it
+     */
+    synchronized void line(@NonNull String line) {
+        Matcher matcher = PROGRESS_LINE.matcher(line.trim());
+        if (!matcher.matches()) {
+            return;
+        }
+        String lineTitle = matcher.group(1);
+        long lineTotal = matcher.group(3) == null ? -1 : Long.parseLong(matcher.group(3));
+        if (!running || !lineTitle.equals(title)) {
+            begin(lineTitle, lineTotal);
+        }
+        completed = Long.parseLong(matcher.group(2));
+        total = lineTotal;
+        if (phase == GitProgress.Phase.RECEIVING_OBJECTS) {
+            if (matcher.group(4) != null) {
+                receivedBytes = bytes(matcher.group(4), matcher.group(5));
+            }
+            if (matcher.group(6) != null) {
+                reportedBytesPerSecond = bytes(matcher.group(6), matcher.group(7));
+            }
+        }
+        count();
+        if (matcher.group(8) != null) {
+            end();
+        } else {
+            report(false);
+        }
+    }
+
+    /**
+     * Parses the complete <code>--progress</code> output of command line git.
+     *
+     * @param output stderr of git
+     */
+    void parse(@NonNull String output) {
+        for (String line : output.split("[\r\n]")) {
+            line(line);
+        }
+    }
+
+    /**
+     * @return stream which parses the <code>--progress</code> output written to it
+     */
+    @NonNull
+    OutputStream stream() {
+        return new ProgressOutputStream(this);
+    }
+
+    /**
+     * The operation completed, report its summary.
+     *
+     * @return summary of the operation
+     */
+    @NonNull
+    synchronized GitProgress finish() {
+        if (running) {
+            stop();
+        }
+        GitProgress summary = snapshot(true);
+        notifyListeners(summary);
+        return summary;
+    }
+
+    private static long bytes(String value, String unit) {
+        double bytes = Double.parseDouble(value);
+        switch (unit) {
+            case "GiB":
+                bytes *= 1024;
+                // fall through
+            case "MiB":
+                bytes *= 1024;
+                // fall through
+            case "KiB":
+                bytes *= 1024;
+                // fall through
+            default:
+                return (long) bytes;
+        }
+    }
+
+    /* Copies the work of the current task to the counters of its phase */
+    private void count() {
+        if (phase == GitProgress.Phase.RECEIVING_OBJECTS) {
+            receivedObjects = completed;
+            totalObjects = total;
+        } else if (phase == GitProgress.Phase.RESOLVING_DELTAS) {
+            resolvedDeltas = completed;
+            totalDeltas = total;
+        }
+    }
+
+    private void stop() {
+        long nanos = System.nanoTime() - taskStart;
+        if (phase == GitProgress.Phase.RECEIVING_OBJECTS) {
+            receivingNanos += nanos;
+        } else if (phase == GitProgress.Phase.RESOLVING_DELTAS) {
+            resolvingDeltasNanos += nanos;
+        }
+        running = false;
+    }
+
+    private long bytesPerSecond(long receiving) {
+        if (reportedBytesPerSecond >= 0) {
+            return reportedBytesPerSecond;
+        }
+        if (receivedBytes < 0 || receiving < TimeUnit.MILLISECONDS.toNanos(1)) {
+            return -1;
+        }
+        return (long) (receivedBytes * (double) TimeUnit.SECONDS.toNanos(1) / receiving);
+    }
+
+    private GitProgress snapshot(boolean done) {
+        long now = System.nanoTime();
+        long receiving = receivingNanos;
+        long resolving = resolvingDeltasNanos;
+        if (running && phase == GitProgress.Phase.RECEIVING_OBJECTS) {
+            receiving += now - taskStart;
+        } else if (running && phase == GitProgress.Phase.RESOLVING_DELTAS) {
+            resolving += now - taskStart;
+        }
+        return new GitProgress(implementation, operation, host, phase, title, completed, total,
+                receivedObjects, totalObjects, receivedBytes, resolvedDeltas, totalDeltas,
+                TimeUnit.NANOSECONDS.toMillis(now - start), TimeUnit.NANOSECONDS.toMillis(receiving),
+                TimeUnit.NANOSECONDS.toMillis(resolving), bytesPerSecond(receiving), done);
+    }
+
+    /* Reports the progress when a task starts or ends, otherwise at most once per interval */
+    private void report(boolean force) {
+        if (LISTENERS.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (!force && now - lastReport < REPORT_INTERVAL_NANOS) {
+            return;
+        }
+        lastReport = now;
+        notifyListeners(snapshot(false));
+    }
+
+    private static void notifyListeners(GitProgress progress) {
+        for (GitProgressListener listener : LISTENERS) {
+            try {
+                listener.onProgress(progress);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Git progress listener " + listener + " failed for " + progress, e);
+            }
+        }
+    }
+
+    /* Splits the progress output at carriage returns as well as newlines, git redraws progress lines with \r */
+    private static final class ProgressOutputStream extends OutputStream {
+        private static final int MAX_LINE = 1024;
+
+        private final GitProgressTracker tracker;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        ProgressOutputStream(GitProgressTracker tracker) {
+            this.tracker = tracker;
+        }
+
+        @Override
+        public void write(int b) {
+            if (b == '\r' || b == '\n') {
+                flushLine();
+            } else if (line.size() < MAX_LINE) {
+                line.write(b);
+            }
+        }
+
+        @Override
+        public void close() {
+            flushLine();
+        }
+
+        private void flushLine() {
+            if (line.size() > 0) {
+                tracker.line(new String(line.toByteArray(), StandardCharsets.UTF_8));
+                line.reset();
+            }
+        }
+    }
+}
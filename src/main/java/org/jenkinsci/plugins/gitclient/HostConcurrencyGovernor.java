@@ -0,0 +1,274 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Limits the git operations which run at the same time against one remote
+ * host in this JVM, for both {@link CliGitAPIImpl} and {@link JGitAPIImpl}.
+ * Disabled unless
+ * <code>-Dorg.jenkinsci.plugins.gitclient.HostConcurrencyGovernor.permitsPerHost</code>
+ * is set to a positive number of operations, or
+ * <code>hostPermits</code> lists hosts with their own limit, like
+ * <code>github.com=8,git.example.com=2</code>. Hosts which are not listed
+ * use <code>permitsPerHost</code>, or are not limited if it is not set.
+ * <p>
+ * Operations waiting for a host are queued first by {@link Priority}, then
+ * in arrival order, so that remote reference queries of polling and
+ * background prefetches never delay the fetches and clones of builds. An
+ * operation which runs inside another operation on the same thread and
+ * host, like the reference query of a fetch, runs with the permit of the
+ * outer operation. The time spent in the queue is reported by
+ * {@link GitOperationEvent#getQueueMillis()}.
+ */
+final class HostConcurrencyGovernor {
+
+    static final int PERMITS_PER_HOST = Integer.getInteger(HostConcurrencyGovernor.class.getName() + ".permitsPerHost", 0);
+    static final String HOST_PERMITS = System.getProperty(HostConcurrencyGovernor.class.getName() + ".hostPermits", "");
+
+    private static final Logger LOGGER = Logger.getLogger(HostConcurrencyGovernor.class.getName());
+
+    /* Not final, replaced by tests */
+    static HostConcurrencyGovernor INSTANCE = new HostConcurrencyGovernor(PERMITS_PER_HOST, parseHostPermits(HOST_PERMITS));
+
+    private static final ThreadLocal<Priority> THREAD_PRIORITY = new ThreadLocal<>();
+
+    /**
+     * Order in which queued operations get a permit.
+     */
+    enum Priority {
+        /** Fetches, clones and pushes */
+        BUILD,
+        /** Remote reference queries, mostly from polling and branch scanning */
+        QUERY,
+        /** Prefetches of {@link BackgroundPrefetch} */
+        BACKGROUND
+    }
+
+    /**
+     * Permit to run an operation, returned to its host by {@link #close()}.
+     */
+    final class Permit implements AutoCloseable {
+        private final Host host;
+        private final Thread thread = Thread.currentThread();
+        private final long queueNanos;
+        private boolean closed;
+
+        Permit(@CheckForNull Host host, long queueNanos) {
+            this.host = host;
+            this.queueNanos = queueNanos;
+        }
+
+        /**
+         * @return time spent waiting for the permit in nanoseconds
+         */
+        long getQueueNanos() {
+            return queueNanos;
+        }
+
+        @Override
+        public void close() {
+            if (host != null && !closed) {
+                closed = true;
+                release(host, thread);
+            }
+        }
+    }
+
+    private static final class Host {
+        private final int permits;
+        private int active;
+        private final Map<Priority, Deque<Object>> queues = new HashMap<>();
+        /* Permits held by each thread, for operations nested in another operation */
+        private final Map<Thread, Integer> holders = new HashMap<>();
+
+        Host(int permits) {
+            this.permits = permits;
+        }
+
+        /* True if the waiter is the first of the highest priority queue and a permit is free */
+        boolean isNext(Object waiter) {
+            if (active >= permits) {
+                return false;
+            }
+            for (Priority priority : Priority.values()) {
+                Deque<Object> queue = queues.get(priority);
+                if (queue != null && !queue.isEmpty()) {
+                    return queue.peekFirst() == waiter;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final int permitsPerHost;
+    private final Map<String, Integer> hostPermits;
+    private final Map<String, Host> hosts = new HashMap<>();
+
+    /**
+     * @param permitsPerHost operations at the same time against a host which is not in hostPermits, 0 for no limit
+     * @param hostPermits operations at the same time by host name
+     */
+    HostConcurrencyGovernor(int permitsPerHost, @NonNull Map<String, Integer> hostPermits) {
+        this.permitsPerHost = permitsPerHost;
+        Map<String, Integer> permits = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : hostPermits.entrySet()) {
+            permits.put(entry.getKey().toLowerCase(Locale.ENGLISH), entry.getValue());
+        }
+        this.hostPermits = Collections.unmodifiableMap(permits);
+    }
+
+    static HostConcurrencyGovernor get() {
+        return INSTANCE;
+    }
+
+    boolean isEnabled() {
+        return permitsPerHost > 0 || !hostPermits.isEmpty();
+    }
+
+    /**
+     * Parses a list of hosts and permits like <code>github.com=8,git.example.com=2</code>.
+     *
+     * @param value comma separated list of host=permits
+     * @return permits by host, without the invalid entries
+     */
+    @NonNull
+    static Map<String, Integer> parseHostPermits(@CheckForNull String value) {
+        Map<String, Integer> permits = new HashMap<>();
+        if (value == null) {
+            return permits;
+        }
+        for (String entry : value.split(",")) {
+            String[] hostAndPermits = entry.trim().split("=");
+            if (hostAndPermits.length != 2 || hostAndPermits[0].trim().isEmpty()) {
+                if (!entry.trim().isEmpty()) {
+                    LOGGER.warning("Ignored invalid host permits '" + entry + "'");
+                }
+                continue;
+            }
+            try {
+                permits.put(hostAndPermits[0].trim(), Integer.parseInt(hostAndPermits[1].trim()));
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Ignored invalid host permits '" + entry + "'");
+            }
+        }
+        return permits;
+    }
+
+    /**
+     * Priority of the operations of the current thread instead of the
+     * priority of their operation name, or null to restore it.
+     *
+     * @param priority priority of the following operations, or null
+     * @return the priority set before, or null
+     */
+    @CheckForNull
+    static Priority setThreadPriority(@CheckForNull Priority priority) {
+        Priority previous = THREAD_PRIORITY.get();
+        if (priority == null) {
+            THREAD_PRIORITY.remove();
+        } else {
+            THREAD_PRIORITY.set(priority);
+        }
+        return previous;
+    }
+
+    /**
+     * @param operation operation name, like "fetch" or "ls-remote"
+     * @return priority of the operation on the current thread
+     */
+    @NonNull
+    static Priority priorityOf(@NonNull String operation) {
+        Priority priority = THREAD_PRIORITY.get();
+        if (priority != null) {
+            return priority;
+        }
+        return operation.equals("ls-remote") ? Priority.QUERY : Priority.BUILD;
+    }
+
+    private int permitsOf(String host) {
+        Integer permits = hostPermits.get(host);
+        return permits != null ? permits : permitsPerHost;
+    }
+
+    /**
+     * Waits until an operation may run against the host.
+     *
+     * @param host remote host, or null for local operations, which are not limited
+     * @param priority priority of the operation
+     * @return permit to close when the operation completed
+     * @throws InterruptedException if interrupted while queued
+     */
+    @NonNull
+    Permit acquire(@CheckForNull String host, @NonNull Priority priority) throws InterruptedException {
+        if (host == null || host.isEmpty() || !isEnabled()) {
+            return new Permit(null, 0);
+        }
+        String name = host.toLowerCase(Locale.ENGLISH);
+        int permits = permitsOf(name);
+        if (permits <= 0) {
+            return new Permit(null, 0);
+        }
+        long start = System.nanoTime();
+        Thread thread = Thread.currentThread();
+        synchronized (this) {
+            Host state = hosts.computeIfAbsent(name, k -> new Host(permits));
+            Integer held = state.holders.get(thread);
+            if (held != null) {
+                state.holders.put(thread, held + 1);
+                return new Permit(state, 0);
+            }
+            Object waiter = new Object();
+            Deque<Object> queue = state.queues.computeIfAbsent(priority, k -> new ArrayDeque<>());
+            queue.addLast(waiter);
+            try {
+                while (!state.isNext(waiter)) {
+                    wait();
+                }
+            } finally {
+                queue.remove(waiter);
+                notifyAll(); // the next waiter may be able to run if this one was interrupted
+            }
+            state.active++;
+            state.holders.put(thread, 1);
+            return new Permit(state, System.nanoTime() - start);
+        }
+    }
+
+    private synchronized void release(Host state, Thread thread) {
+        Integer held = state.holders.get(thread);
+        if (held != null && held > 1) {
+            state.holders.put(thread, held - 1);
+            return;
+        }
+        state.holders.remove(thread);
+        state.active--;
+        notifyAll();
+    }
+
+    /* For tests */
+    synchronized int getActive(String host) {
+        Host state = hosts.get(host.toLowerCase(Locale.ENGLISH));
+        return state == null ? 0 : state.active;
+    }
+
+    /* For tests */
+    synchronized int getQueued(String host) {
+        Host state = hosts.get(host.toLowerCase(Locale.ENGLISH));
+        int queued = 0;
+        if (state != null) {
+            for (Deque<Object> queue : state.queues.values()) {
+                queued += queue.size();
+            }
+        }
+        return queued;
+    }
+}
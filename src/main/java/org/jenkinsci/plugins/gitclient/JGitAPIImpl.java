@@ -37,6 +37,8 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -62,12 +64,14 @@ import org.eclipse.jgit.api.errors.JGitInternalException;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.errors.InvalidPatternException;
 import org.eclipse.jgit.errors.LockFailedException;
 import org.eclipse.jgit.errors.NotSupportedException;
 import org.eclipse.jgit.errors.TransportException;
 import org.eclipse.jgit.fnmatch.FileNameMatcher;
-import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
 import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
@@ -107,6 +111,8 @@ import org.eclipse.jgit.transport.RemoteRefUpdate;
 import org.jenkinsci.plugins.gitclient.jgit.PreemptiveAuthHttpClientConnectionFactory;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.SystemReader;
 import org.jenkinsci.plugins.gitclient.trilead.SmartCredentialsProvider;
 import org.jenkinsci.plugins.gitclient.trilead.TrileadSessionFactory;
 
@@ -117,6 +123,7 @@ import com.google.common.base.Predicates;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.plugins.git.GitObject;
@@ -136,6 +143,19 @@ import org.eclipse.jgit.api.RebaseResult;
 public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Constant which makes remote reference queries use git protocol version 2.
+     *
+     * <code>USE_PROTOCOL_V2=Boolean.valueOf(System.getProperty(JGitAPIImpl.class.getName() + ".protocolV2", "false"))</code>.
+     *
+     * With protocol version 2 the server only sends the references below
+     * the prefixes requested by the client. Prefixes are derived from the
+     * heads only and tags only arguments and from patterns starting with
+     * <code>refs/</code>. Servers which do not support protocol version 2
+     * answer with all their references as before.
+     */
+    static boolean USE_PROTOCOL_V2 = Boolean.valueOf(System.getProperty(JGitAPIImpl.class.getName() + ".protocolV2", "false"));
+
     private final TaskListener listener;
     private PersonIdent author, committer;
 
@@ -302,6 +322,12 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public void execute() throws GitException, InterruptedException {
+                try (BackgroundPrefetch.InUse inUse = BackgroundPrefetch.use(workspace)) {
+                    doExecute();
+                }
+            }
+
+            private void doExecute() throws GitException, InterruptedException {
 
                 if(! sparseCheckoutPaths.isEmpty()) {
                     listener.getLogger().println("[ERROR] JGit doesn't support sparse checkout.");
@@ -553,6 +579,10 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             private List<RefSpec> refspecs;
             private boolean shouldPrune = false;
             private boolean tags = true;
+            private boolean shallow;
+            private Integer depth;
+            private boolean skipIfUpToDate;
+            private List<ObjectId> commits;
 
             @Override
             public org.jenkinsci.plugins.gitclient.FetchCommand from(URIish remote, List<RefSpec> refspecs) {
@@ -574,9 +604,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public org.jenkinsci.plugins.gitclient.FetchCommand shallow(boolean shallow) {
-                if (shallow) {
-                    listener.getLogger().println("[WARNING] JGit doesn't support shallow clone. This flag is ignored");
-                }
+                this.shallow = shallow;
                 return this;
             }
 
@@ -594,48 +622,187 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public org.jenkinsci.plugins.gitclient.FetchCommand depth(Integer depth) {
-                listener.getLogger().println("[WARNING] JGit doesn't support shallow clone and therefore depth is meaningless. This flag is ignored");
+                this.depth = depth;
+                return this;
+            }
+
+            @Override
+            public org.jenkinsci.plugins.gitclient.FetchCommand filter(String filter) {
+                if (filter != null && !filter.isEmpty()) {
+                    listener.getLogger().println("[WARNING] JGit doesn't support partial clone. The filter is ignored");
+                }
                 return this;
             }
 
+            @Override
+            public org.jenkinsci.plugins.gitclient.FetchCommand skipIfUpToDate(boolean skipIfUpToDate) {
+                this.skipIfUpToDate = skipIfUpToDate;
+                return this;
+            }
+
+            @Override
+            public org.jenkinsci.plugins.gitclient.FetchCommand commits(List<ObjectId> commits) {
+                this.commits = commits;
+                return this;
+            }
+
+            private boolean isCommitFetch() {
+                return commits != null && !commits.isEmpty();
+            }
+
+            /* Compares the references of the remote repository with the local references */
+            private boolean isUpToDate(Repository repo, String remoteUrl) throws InterruptedException {
+                if (isCommitFetch()) {
+                    return FetchCommits.isPresent(repo, commits);
+                }
+                if (refspecs == null) {
+                    return false;
+                }
+                try {
+                    Map<String, ObjectId> advertised = getRemoteReferences(remoteUrl, null, null, false, false);
+                    return FetchUpToDate.isUpToDate(advertised, repo, refspecs, tags, shouldPrune);
+                } catch (IOException | GitException e) {
+                    listener.getLogger().println("Failed to compare references with " + url + ", fetching: " + e.getMessage());
+                    return false;
+                }
+            }
+
             @Override
             public void execute() throws GitException, InterruptedException {
-                try (Repository repo = getRepository()) {
-                    Git git = git(repo);
+                try (BackgroundPrefetch.InUse inUse = BackgroundPrefetch.use(workspace)) {
+                    doExecute();
+                }
+            }
 
-                    List<RefSpec> allRefSpecs = new ArrayList<>();
-                    if (refspecs != null)
-                        for (RefSpec rs: refspecs)
-                            if (rs != null)
-                                allRefSpecs.add(rs);
-
-                    FetchCommand fetch = git.fetch();
-                    fetch.setTagOpt(tags ? TagOpt.FETCH_TAGS : TagOpt.NO_TAGS);
-                    /* JGit 4.5 required a work around that the tags refspec had to be passed in addition to setting
-                     * the FETCH_TAGS tagOpt.  JGit 4.9.0 fixed that bug.
-                     * However, JGit 4.9 and later will not accept an empty refspec.
-                     * If the refspec is empty and tag fetch is requested, must add the tags refspec to fetch.
-                     */
-                    if (allRefSpecs.isEmpty() && tags) {
-                        allRefSpecs.add(new RefSpec("+refs/tags/*:refs/tags/*"));
+            private void doExecute() throws GitException, InterruptedException {
+                warnShallowIgnored(shallow, depth);
+                if (url == null) {
+                    throw new GitException("FetchCommand requires a valid repository url in remote config");
+                }
+                try (Repository repo = getRepository()) {
+                    String remoteUrl = repo.getConfig().getString("remote", url.toString(), "url");
+                    if (remoteUrl == null) {
+                        remoteUrl = url.toString();
                     }
-                    if (url == null) {
-                        throw new GitException("FetchCommand requires a valid repository url in remote config");
+                    GitOperationRecorder recorder = new GitOperationRecorder("jgit", "fetch", GitOperationRecorder.hostOf(remoteUrl), null);
+                    try {
+                        execute(repo, remoteUrl, recorder);
+                    } finally {
+                        recorder.finish();
                     }
-                    fetch.setRemote(url.toString());
-                    fetch.setCredentialsProvider(getProvider());
+                } catch (GitAPIException e) {
+                    throw new GitException(e);
+                }
+            }
 
-                    fetch.setRefSpecs(allRefSpecs);
-                    fetch.setRemoveDeletedRefs(shouldPrune);
+            private void execute(Repository repo, String remoteUrl, GitOperationRecorder recorder) throws GitAPIException, InterruptedException {
+                Git git = git(repo);
 
+                List<RefSpec> allRefSpecs = new ArrayList<>();
+                if (refspecs != null)
+                    for (RefSpec rs: refspecs)
+                        if (rs != null)
+                            allRefSpecs.add(rs);
+
+                FetchCommand fetch = git.fetch();
+                fetch.setTagOpt(tags ? TagOpt.FETCH_TAGS : TagOpt.NO_TAGS);
+                /* JGit 4.5 required a work around that the tags refspec had to be passed in addition to setting
+                 * the FETCH_TAGS tagOpt.  JGit 4.9.0 fixed that bug.
+                 * However, JGit 4.9 and later will not accept an empty refspec.
+                 * If the refspec is empty and tag fetch is requested, must add the tags refspec to fetch.
+                 */
+                if (allRefSpecs.isEmpty() && tags) {
+                    allRefSpecs.add(new RefSpec("+refs/tags/*:refs/tags/*"));
+                }
+                /* The comparison may wait for a cached query run by another thread, it must not hold a permit */
+                if (skipIfUpToDate && isUpToDate(repo, remoteUrl)) {
+                    listener.getLogger().println("References are up to date with " + url + ", fetch skipped");
+                    recorder.skipped();
+                    recorder.succeeded();
+                    return;
+                }
+                recorder.queue();
+                fetch.setRemote(url.toString());
+                fetch.setCredentialsProvider(getProvider());
+                /* Progress is reported to the progress listeners only, fetch has never logged task titles */
+                fetch.setProgressMonitor(new JGitProgressMonitor(TaskListener.NULL, recorder.progress()));
+
+                long packBytes = packBytes(repo);
+                if (isCommitFetch()) {
+                    fetchCommits(fetch, remoteUrl);
+                    recorder.progress().receivedBytes(Math.max(0, packBytes(repo) - packBytes));
+                    recorder.succeeded();
+                    return;
+                }
+                fetch.setRefSpecs(allRefSpecs);
+                fetch.setRemoveDeletedRefs(shouldPrune);
+
+                fetch.call();
+                recorder.progress().receivedBytes(Math.max(0, packBytes(repo) - packBytes));
+                recorder.succeeded();
+                registerPrefetch(remoteUrl);
+            }
+
+            /* Requests the commits by object id, or through the refspecs covering them if the server refuses */
+            private void fetchCommits(FetchCommand fetch, String remoteUrl) throws GitAPIException, InterruptedException {
+                fetch.setRemoveDeletedRefs(false);
+                fetch.setRefSpecs(FetchCommits.wants(commits));
+                try {
                     fetch.call();
-                } catch (GitAPIException e) {
-                    throw new GitException(e);
+                    return;
+                } catch (org.eclipse.jgit.api.errors.TransportException e) {
+                    List<RefSpec> covering;
+                    try {
+                        /* Not from the cache: this thread holds a permit of the host the cached query may wait for */
+                        Map<String, ObjectId> advertised = lsRemoteReferences(remoteUrl, getProvider(), null, false, false);
+                        covering = FetchCommits.covering(advertised, commits, refspecs);
+                    } catch (GitException lsRemoteException) {
+                        e.addSuppressed(lsRemoteException);
+                        throw e;
+                    }
+                    if (covering.isEmpty()) {
+                        throw e;
+                    }
+                    listener.getLogger().println("Fetch of commits by object id failed, fetching " + covering + " from " + url);
+                    fetch.setRefSpecs(covering);
                 }
+                fetch.call();
             }
         };
     }
 
+    /* Prefetches run with a client of their own, which does not log to this build */
+    private void registerPrefetch(String url) {
+        BackgroundPrefetch prefetch = BackgroundPrefetch.get();
+        if (!prefetch.isEnabled()) {
+            return;
+        }
+        File dir = workspace;
+        CredentialsProvider credentialsProvider = getProvider();
+        prefetch.register(dir, url, () -> {
+            JGitAPIImpl client = new JGitAPIImpl(dir, TaskListener.NULL);
+            client.setCredentialsProvider(credentialsProvider);
+            client.prefetch(url);
+        });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    void prefetch(String url) throws GitException, InterruptedException {
+        org.jenkinsci.plugins.gitclient.FetchCommand fetch;
+        try {
+            fetch = fetch_().from(new URIish(url), Collections.singletonList(BackgroundPrefetch.refSpec(url))).tags(false).prune(true);
+        } catch (URISyntaxException e) {
+            throw new GitException(e);
+        }
+        File fetchHead;
+        try (Repository repo = getRepository()) {
+            fetchHead = new File(repo.getDirectory(), "FETCH_HEAD");
+        }
+        /* JGit always writes FETCH_HEAD, it does not collect garbage after fetching */
+        BackgroundPrefetch.keepFetchHead(workspace, fetchHead, fetch::execute);
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -664,7 +831,15 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                         refSpecs.add(rs);
             fetch.setRefSpecs(refSpecs);
 
-            fetch.call();
+            String remoteUrl = repo.getConfig().getString("remote", remoteName != null ? remoteName : Constants.DEFAULT_REMOTE_NAME, "url");
+            GitOperationRecorder recorder = new GitOperationRecorder("jgit", "fetch", GitOperationRecorder.hostOf(remoteUrl), null);
+            try {
+                queue(recorder);
+                fetch.call();
+                recorder.succeeded();
+            } finally {
+                recorder.finish();
+            }
         } catch (GitAPIException e) {
             throw new GitException(e);
         }
@@ -763,24 +938,61 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public Map<String, ObjectId> getRemoteReferences(String url, String pattern, boolean headsOnly, boolean tagsOnly)
             throws GitException, InterruptedException {
+        return getRemoteReferences(url, null, pattern, headsOnly, tagsOnly);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public RemoteReferencesCommand remoteReferences() {
+        return remoteReferences(listener);
+    }
+
+    @Override
+    Map<String, ObjectId> getRemoteReferences(String url, @CheckForNull StandardCredentials credentials,
+                                              String pattern, boolean headsOnly, boolean tagsOnly)
+            throws GitException, InterruptedException {
+        CredentialsProvider credentialsProvider = getProvider();
+        if (credentials != null) {
+            SmartCredentialsProvider repositoryProvider = new SmartCredentialsProvider(listener);
+            repositoryProvider.addDefaultCredentials(credentials);
+            credentialsProvider = repositoryProvider;
+        }
+        final CredentialsProvider finalProvider = credentialsProvider;
+        String query = "getRemoteReferences " + pattern + " " + headsOnly + " " + tagsOnly;
+        return new HashMap<>(cachedRemoteQuery(query, url, finalProvider,
+                () -> lsRemoteReferences(url, finalProvider, pattern, headsOnly, tagsOnly)));
+    }
+
+    private Map<String, ObjectId> lsRemoteReferences(String url, CredentialsProvider credentialsProvider,
+                                                     String pattern, boolean headsOnly, boolean tagsOnly)
+            throws GitException {
         Map<String, ObjectId> references = new HashMap<>();
         String regexPattern = null;
         if (pattern != null) {
             regexPattern = createRefRegexFromGlob(pattern);
         }
-        try (Repository repo = openDummyRepository()) {
-            LsRemoteCommand lsRemote = new LsRemoteCommand(repo);
-            if (headsOnly) {
-                lsRemote.setHeads(headsOnly);
-            }
-            if (tagsOnly) {
-                lsRemote.setTags(tagsOnly);
-            }
-            lsRemote.setRemote(url);
-            lsRemote.setCredentialsProvider(getProvider());
-            Collection<Ref> refs = lsRemote.call();
-                for (final Ref r : refs) {
+        List<String> typePrefixes = new ArrayList<>();
+        if (headsOnly) {
+            typePrefixes.add(Constants.R_HEADS);
+        }
+        if (tagsOnly) {
+            typePrefixes.add(Constants.R_TAGS);
+        }
+        List<String> prefixes = typePrefixes;
+        if (pattern != null && pattern.startsWith(Constants.R_REFS)) {
+            prefixes = narrowRefPrefixes(typePrefixes, refPrefixOfGlob(pattern));
+        }
+        GitOperationRecorder recorder = new GitOperationRecorder("jgit", "ls-remote", GitOperationRecorder.hostOf(url), null);
+        try (Repository repo = openDummyRepository();
+             final Transport tn = Transport.open(repo, applyInsteadOf(repo, url))) {
+            queue(recorder);
+            tn.setCredentialsProvider(credentialsProvider);
+            try (FetchConnection c = tn.openFetch(refPrefixSpecs(prefixes))) {
+                for (final Ref r : c.getRefs()) {
                     final String refName = r.getName();
+                    if (!typePrefixes.isEmpty() && typePrefixes.stream().noneMatch(refName::startsWith)) {
+                        continue;
+                    }
                     final ObjectId refObjectId =
                             r.getPeeledObjectId() != null ? r.getPeeledObjectId() : r.getObjectId();
                     if (regexPattern != null) {
@@ -791,8 +1003,12 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                         references.put(refName, refObjectId);
                     }
                 }
-        } catch (JGitInternalException | GitAPIException | IOException e) {
+            }
+            recorder.succeeded();
+        } catch (IOException | URISyntaxException | IllegalStateException e) {
             throw new GitException(e);
+        } finally {
+            recorder.finish();
         }
         return references;
     }
@@ -800,6 +1016,11 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public Map<String, String> getRemoteSymbolicReferences(String url, String pattern)
             throws GitException, InterruptedException {
+        String query = "getRemoteSymbolicReferences " + pattern;
+        return new HashMap<>(cachedRemoteQuery(query, url, () -> lsRemoteSymbolicReferences(url, pattern)));
+    }
+
+    private Map<String, String> lsRemoteSymbolicReferences(String url, String pattern) throws GitException {
         Map<String, String> references = new HashMap<>();
         String regexPattern = null;
         if (pattern != null) {
@@ -808,9 +1029,11 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         if (regexPattern != null && !Constants.HEAD.matches(regexPattern)) {
             return references;
         }
+        GitOperationRecorder recorder = new GitOperationRecorder("jgit", "ls-remote", GitOperationRecorder.hostOf(url), null);
         try (Repository repo = openDummyRepository()) {
+            queue(recorder);
             LsRemoteCommand lsRemote = new LsRemoteCommand(repo);
-            lsRemote.setRemote(url);
+            lsRemote.setRemote(applyInsteadOf(repo, url).toPrivateString());
             lsRemote.setCredentialsProvider(getProvider());
             Collection<Ref> refs = lsRemote.call();
             for (final Ref r : refs) {
@@ -823,8 +1046,11 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     references.put(r.getName(), r.getTarget().getName());
                 } // else do not return symbolic references with names that do not match pattern
             }
-        } catch (GitAPIException | IOException e) {
+            recorder.succeeded();
+        } catch (GitAPIException | IOException | URISyntaxException e) {
             throw new GitException(e);
+        } finally {
+            recorder.finish();
         }
         return references;
     }
@@ -872,32 +1098,174 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     @SuppressFBWarnings(value = "RCN_REDUNDANT_NULLCHECK_WOULD_HAVE_BEEN_A_NPE", justification = "Java 11 spotbugs error")
     public ObjectId getHeadRev(String remoteRepoUrl, String branchSpec) throws GitException {
-        try (Repository repo = openDummyRepository();
-             final Transport tn = Transport.open(repo, new URIish(remoteRepoUrl))) {
-            final String branchName = extractBranchNameFromBranchSpec(branchSpec);
-            String regexBranch = createRefRegexFromGlob(branchName);
+        try {
+            return cachedRemoteQuery("getHeadRev " + branchSpec, remoteRepoUrl, () -> lsRemoteHeadRev(remoteRepoUrl, branchSpec));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GitException(e);
+        }
+    }
+
+    private ObjectId lsRemoteHeadRev(String remoteRepoUrl, String branchSpec) throws GitException {
+        return lsRemoteHeadRevs(remoteRepoUrl, Collections.singletonList(branchSpec)).get(branchSpec);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, ObjectId> getHeadRevs(String remoteRepoUrl, Collection<String> branchSpecs) throws GitException, InterruptedException {
+        if (branchSpecs.isEmpty()) {
+            return new HashMap<>();
+        }
+        String query = "getHeadRevs " + String.join("\n", branchSpecs);
+        return new HashMap<>(cachedRemoteQuery(query, remoteRepoUrl, () -> lsRemoteHeadRevs(remoteRepoUrl, branchSpecs)));
+    }
 
+    /* Resolve each branch spec to the first advertised reference its pattern matches */
+    private Map<String, ObjectId> lsRemoteHeadRevs(String remoteRepoUrl, Collection<String> branchSpecs) throws GitException {
+        Map<String, Pattern> patterns = new HashMap<>();
+        List<String> prefixes = new ArrayList<>();
+        boolean anchored = true;
+        for (String branchSpec : branchSpecs) {
+            String branchName = extractBranchNameFromBranchSpec(branchSpec);
+            patterns.put(branchSpec, Pattern.compile(createRefRegexFromGlob(branchName)));
+            if (branchName.startsWith(Constants.R_REFS)) {
+                prefixes.add(refPrefixOfGlob(branchName));
+            } else {
+                anchored = false; // matches the tail of any ref name
+            }
+        }
+        if (!anchored) {
+            prefixes.clear();
+        }
+        Map<String, ObjectId> heads = new HashMap<>();
+        GitOperationRecorder recorder = new GitOperationRecorder("jgit", "ls-remote", GitOperationRecorder.hostOf(remoteRepoUrl), null);
+        try (Repository repo = openDummyRepository();
+             final Transport tn = Transport.open(repo, applyInsteadOf(repo, remoteRepoUrl))) {
+            queue(recorder);
             tn.setCredentialsProvider(getProvider());
-            try (FetchConnection c = tn.openFetch()) {
+            try (FetchConnection c = tn.openFetch(refPrefixSpecs(prefixes))) {
+                recorder.succeeded();
                 for (final Ref r : c.getRefs()) {
-                    if (r.getName().matches(regexBranch)) {
-                        return r.getPeeledObjectId() != null ? r.getPeeledObjectId() : r.getObjectId();
+                    for (Iterator<Map.Entry<String, Pattern>> it = patterns.entrySet().iterator(); it.hasNext();) {
+                        Map.Entry<String, Pattern> pattern = it.next();
+                        if (pattern.getValue().matcher(r.getName()).matches()) {
+                            heads.put(pattern.getKey(), r.getPeeledObjectId() != null ? r.getPeeledObjectId() : r.getObjectId());
+                            it.remove();
+                        }
+                    }
+                    if (patterns.isEmpty()) {
+                        break;
                     }
                 }
             }
         } catch (IOException | URISyntaxException | IllegalStateException e) {
             throw new GitException(e);
+        } finally {
+            recorder.finish();
+        }
+        return heads;
+    }
+
+    /* Answer a remote reference query from the JVM wide cache if it is enabled, the result must not be modified */
+    private <V> V cachedRemoteQuery(String query, String url, RemoteReferenceCache.Query<V> remoteQuery)
+            throws GitException, InterruptedException {
+        return cachedRemoteQuery(query, url, getProvider(), remoteQuery);
+    }
+
+    private <V> V cachedRemoteQuery(String query, String url, CredentialsProvider credentialsProvider,
+                                    RemoteReferenceCache.Query<V> remoteQuery) throws GitException, InterruptedException {
+        /* The answers of other providers may depend on anything, they are not cached */
+        String credentialsKey = null;
+        if (credentialsProvider == null) {
+            credentialsKey = RemoteReferenceCache.credentialsKey(null);
+        } else if (credentialsProvider instanceof SmartCredentialsProvider) {
+            credentialsKey = RemoteReferenceCache.credentialsKey(((SmartCredentialsProvider) credentialsProvider).getCredentials(url));
+        }
+        if (credentialsKey == null) {
+            return remoteQuery.run();
+        }
+        String key = RemoteReferenceCache.key("jgit", query, url, credentialsKey);
+        return RemoteReferenceCache.get().get(key, remoteQuery);
+    }
+
+    /* Literal start of a glob as used by createRefRegexFromGlob, characters with a regex meaning end it */
+    static String refPrefixOfGlob(String glob) {
+        for (int i = 0; i < glob.length(); ++i) {
+            if ("*?[](){}+|^$\\".indexOf(glob.charAt(i)) >= 0) {
+                return glob.substring(0, i);
+            }
+        }
+        return glob;
+    }
+
+    /* Prefixes of the refs which are of one of the types and start with the pattern prefix */
+    static List<String> narrowRefPrefixes(List<String> typePrefixes, String patternPrefix) {
+        if (typePrefixes.isEmpty()) {
+            return Collections.singletonList(patternPrefix);
         }
-        return null;
+        List<String> prefixes = new ArrayList<>();
+        for (String typePrefix : typePrefixes) {
+            if (patternPrefix.startsWith(typePrefix)) {
+                prefixes.add(patternPrefix);
+            } else if (typePrefix.startsWith(patternPrefix)) {
+                prefixes.add(typePrefix);
+            }
+        }
+        // no ref matches both, still ask for the pattern prefix rather than for all refs
+        return prefixes.isEmpty() ? Collections.singletonList(patternPrefix) : prefixes;
+    }
+
+    /*
+     * Ref specs which make a protocol version 2 connection only list the refs
+     * below the prefixes, empty if all refs are needed or if a prefix is not
+     * a valid ref spec.
+     */
+    private static Collection<RefSpec> refPrefixSpecs(List<String> prefixes) {
+        List<RefSpec> specs = new ArrayList<>();
+        try {
+            for (String prefix : new LinkedHashSet<>(prefixes)) {
+                specs.add(new RefSpec(prefix + "*:" + prefix + "*"));
+            }
+        } catch (IllegalArgumentException e) {
+            return Collections.emptyList();
+        }
+        return specs;
     }
 
     /**
-     * Creates a empty dummy {@link Repository} to keep JGit happy where it wants a valid {@link Repository} operation
-     * for remote objects.
+     * Creates an empty in-memory {@link Repository} to keep JGit happy where it wants a valid {@link Repository}
+     * for operations on remote repositories, without any disk access beyond reading the system and user git
+     * configuration, which apply to it like to a repository on disk.
      */
     private Repository openDummyRepository() throws IOException {
-        final File tempDir = Util.createTempDir();
-        return new FileRepositoryImpl(tempDir, tempDir);
+        Repository repo = new InMemoryRepository.Builder()
+                .setRepositoryDescription(new DfsRepositoryDescription("remote"))
+                .setFS(FS.DETECTED)
+                .build();
+        try {
+            SystemReader systemReader = SystemReader.getInstance();
+            repo.getConfig().fromText(systemReader.getSystemConfig().toText() + systemReader.getUserConfig().toText());
+        } catch (ConfigInvalidException e) {
+            repo.close();
+            throw new IOException(e);
+        }
+        if (USE_PROTOCOL_V2) {
+            // read by the transports of this repository, never saved
+            repo.getConfig().setInt("protocol", null, "version", 2);
+        }
+        return repo;
+    }
+
+    /**
+     * Rewrites a URL with the <code>url.&lt;base&gt;.insteadOf</code> settings of the configuration of a repository
+     * returned by {@link #openDummyRepository()}, like command line git does. JGit only rewrites the URLs of the
+     * remotes defined in the configuration.
+     */
+    private static URIish applyInsteadOf(Repository dummyRepository, String url) throws URISyntaxException {
+        // read by RemoteConfig only, the configuration of the repository is never saved
+        dummyRepository.getConfig().setString("remote", "ls-remote", "url", url);
+        List<URIish> uris = new RemoteConfig(dummyRepository.getConfig(), "ls-remote").getURIs();
+        return uris.isEmpty() ? new URIish(url) : uris.get(0);
     }
 
     /** {@inheritDoc} */
@@ -920,6 +1288,9 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public Repository getRepository() throws GitException {
         try {
+            if (isBareRepository(workspace)) {
+                return new RepositoryBuilder().setGitDir(workspace).setBare().build();
+            }
             return new RepositoryBuilder().setWorkTree(workspace).build();
         } catch (IOException e) {
             throw new GitException(e);
@@ -1290,6 +1661,10 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             private boolean shared;
             private boolean tags = true;
             private List<RefSpec> refspecs;
+            private boolean shallow;
+            private Integer depth;
+            private String referenceCache;
+            private String bundle;
 
             @Override
             public CloneCommand url(String url) {
@@ -1310,9 +1685,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public CloneCommand shallow(boolean shallow) {
-                if (shallow) {
-                    listener.getLogger().println("[WARNING] JGit doesn't support shallow clone. This flag is ignored");
-                }
+                this.shallow = shallow;
                 return this;
             }
 
@@ -1359,7 +1732,35 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public CloneCommand depth(Integer depth) {
-                listener.getLogger().println("[WARNING] JGit doesn't support shallow clone and therefore depth is meaningless. This flag is ignored");
+                this.depth = depth;
+                return this;
+            }
+
+            @Override
+            public CloneCommand filter(String filter) {
+                if (filter != null && !filter.isEmpty()) {
+                    listener.getLogger().println("[WARNING] JGit doesn't support partial clone. The filter is ignored");
+                }
+                return this;
+            }
+
+            @Override
+            public CloneCommand referenceCache(String directory) {
+                this.referenceCache = directory;
+                return this;
+            }
+
+            @Override
+            public CloneCommand worktree(boolean worktree) {
+                if (worktree) {
+                    listener.getLogger().println("[WARNING] JGit doesn't support linked worktrees. The workspace is cloned");
+                }
+                return this;
+            }
+
+            @Override
+            public CloneCommand bundle(String bundle) {
+                this.bundle = bundle;
                 return this;
             }
 
@@ -1373,6 +1774,13 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public void execute() throws GitException, InterruptedException {
+                try (BackgroundPrefetch.InUse inUse = BackgroundPrefetch.use(workspace)) {
+                    doExecute();
+                }
+            }
+
+            private void doExecute() throws GitException, InterruptedException {
+                warnShallowIgnored(shallow, depth);
                 Repository repository = null;
 
                 try {
@@ -1385,6 +1793,18 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
                     RepositoryBuilder builder = newRepositoryBuilder();
 
+                    ReferenceRepositoryCache cache = ReferenceRepositoryCache.at(referenceCache);
+                    if (cache != null && !shared && (reference == null || reference.isEmpty())) {
+                        File mirror = cache.update(url, (dir, l) -> {
+                            JGitAPIImpl client = new JGitAPIImpl(dir, l);
+                            client.setCredentialsProvider(getProvider());
+                            return client;
+                        }, listener);
+                        if (mirror != null) {
+                            reference = mirror.getAbsolutePath();
+                        }
+                    }
+
                     if (shared) {
                         if (reference == null || reference.isEmpty()) {
                             // we use origin as reference
@@ -1441,14 +1861,43 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     if (refspecs == null) {
                         refspecs = Collections.singletonList(new RefSpec("+refs/heads/*:refs/remotes/"+remote+"/*"));
                     }
+                    if (bundle != null && !bundle.isEmpty()) {
+                        if (shallow) {
+                            listener.getLogger().println("[WARNING] Shallow clones are not seeded from a bundle. The bundle is ignored");
+                        } else {
+                            try (CloneBundle cloneBundle = CloneBundle.open(bundle, repository.getDirectory(), proxy, listener)) {
+                                // read by JGit's TransportBundleFile
+                                new Git(repository).fetch()
+                                        .setProgressMonitor(new JGitProgressMonitor(listener))
+                                        .setRemote(cloneBundle.getFile().getAbsolutePath())
+                                        .setTagOpt(tags ? TagOpt.FETCH_TAGS : TagOpt.NO_TAGS)
+                                        .setRefSpecs(refspecs)
+                                        .call();
+                            } catch (IOException | GitAPIException | JGitInternalException e) {
+                                listener.getLogger().println("[WARNING] Failed to fetch bundle " + bundle + ", fetching everything from " + url + ": " + e.getMessage());
+                            }
+                        }
+                    }
+
+                    GitOperationRecorder recorder = new GitOperationRecorder("jgit", "clone", GitOperationRecorder.hostOf(url), timeout);
+                    JGitProgressMonitor monitor = new JGitProgressMonitor(listener, recorder.progress());
                     FetchCommand fetch = new Git(repository).fetch()
-                            .setProgressMonitor(new JGitProgressMonitor(listener))
+                            .setProgressMonitor(monitor)
                             .setRemote(url)
                             .setCredentialsProvider(getProvider())
                             .setTagOpt(tags ? TagOpt.FETCH_TAGS : TagOpt.NO_TAGS)
                             .setRefSpecs(refspecs);
                     if (timeout != null) fetch.setTimeout(timeout);
-                    fetch.call();
+                    try {
+                        recorder.queue();
+                        long packBytes = packBytes(repository);
+                        fetch.call();
+                        recorder.progress().receivedBytes(Math.max(0, packBytes(repository) - packBytes));
+                        recorder.objectCount(monitor.getLargestTaskCompleted());
+                        recorder.succeeded();
+                    } finally {
+                        recorder.finish();
+                    }
 
                     StoredConfig config = repository.getConfig();
                     config.setString("remote", remote, "url", url);
@@ -1884,14 +2333,24 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                         throw new GitException("PushCommand requires a remote repository URL");
                     }
                     config.setString("remote", "org_jenkinsci_plugins_gitclient_JGitAPIImpl", "url", remote.toPrivateASCIIString());
+                    GitOperationRecorder recorder = new GitOperationRecorder("jgit", "push", GitOperationRecorder.hostOf(remote), null);
+                    JGitProgressMonitor monitor = new JGitProgressMonitor(listener, recorder.progress());
                     org.eclipse.jgit.api.PushCommand pc = g.push().setRemote("org_jenkinsci_plugins_gitclient_JGitAPIImpl").setRefSpecs(ref)
-                            .setProgressMonitor(new JGitProgressMonitor(listener))
+                            .setProgressMonitor(monitor)
                             .setCredentialsProvider(getProvider())
                             .setForce(force);
                     if(tags) {
                         pc.setPushTags();
                     }
-                    Iterable<PushResult> results = pc.call();
+                    Iterable<PushResult> results;
+                    try {
+                        recorder.queue();
+                        results = pc.call();
+                        recorder.objectCount(monitor.getLargestTaskCompleted());
+                        recorder.succeeded();
+                    } finally {
+                        recorder.finish();
+                    }
                     for(PushResult result:results) for(RemoteRefUpdate update:result.getRemoteUpdates()) {
                         RemoteRefUpdate.Status status = update.getStatus();
                         if(!OK.equals(status)&&!UP_TO_DATE.equals(status)) {
@@ -2175,6 +2634,37 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         }
     }
 
+    /* Size of the pack files of a repository, JGit does not report the bytes it receives */
+    private static long packBytes(Repository repo) {
+        File[] packs = repo.getDirectory() == null ? null
+                : new File(repo.getDirectory(), "objects/pack").listFiles((dir, name) -> name.endsWith(".pack"));
+        long bytes = 0;
+        if (packs != null) {
+            for (File pack : packs) {
+                bytes += pack.length();
+            }
+        }
+        return bytes;
+    }
+
+    /* Waits for the host of the operation, see HostConcurrencyGovernor */
+    private static void queue(GitOperationRecorder recorder) throws GitException {
+        try {
+            recorder.queue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GitException(e);
+        }
+    }
+
+    /* JGit 5.x has no client side shallow fetch, the complete history is downloaded instead */
+    private void warnShallowIgnored(boolean shallow, Integer depth) {
+        if (shallow) {
+            listener.getLogger().println("[WARNING] JGit doesn't support shallow clone"
+                    + (depth != null ? " (depth " + depth + ")" : "") + ". The complete history is fetched");
+        }
+    }
+
     /**
      * Update submodules.
      *
@@ -2186,6 +2676,8 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             private boolean recursive      = false;
             private boolean remoteTracking = false;
             private String  ref            = null;
+            private boolean shallow        = false;
+            private Integer depth          = null;
 
             @Override
             public org.jenkinsci.plugins.gitclient.SubmoduleUpdateCommand recursive(boolean recursive) {
@@ -2219,15 +2711,13 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public org.jenkinsci.plugins.gitclient.SubmoduleUpdateCommand shallow(boolean shallow) {
-                if (shallow) {
-                    listener.getLogger().println("[WARNING] JGit doesn't support shallow clone. This flag is ignored");
-                }
+                this.shallow = shallow;
                 return this;
             }
 
             @Override
             public org.jenkinsci.plugins.gitclient.SubmoduleUpdateCommand depth(Integer depth) {
-                listener.getLogger().println("[WARNING] JGit doesn't support shallow clone and therefore depth is meaningless. This flag is ignored");
+                this.depth = depth;
                 return this;
             }
 
@@ -2259,6 +2749,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     listener.getLogger().println("[ERROR] JGit doesn't support submodule update --reference yet.");
                     throw new UnsupportedOperationException("not implemented yet");
                 }
+                warnShallowIgnored(shallow, depth);
 
                 try (Repository repo = getRepository()) {
                     SubmoduleUpdateCommand update = git(repo).submoduleUpdate();
@@ -2840,24 +3331,4 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         }
         return peeledTags;
     }
-
-    private static class FileRepositoryImpl extends FileRepository {
-
-        private final File tempDir;
-
-        public FileRepositoryImpl(File gitDir, File tempDir) throws IOException {
-            super(gitDir);
-            this.tempDir = tempDir;
-        }
-
-        @Override
-        public void close() {
-            super.close();
-            try {
-                Util.deleteRecursive(tempDir);
-            } catch (IOException e) {
-                // ignore
-            }
-        }
-    }
 }
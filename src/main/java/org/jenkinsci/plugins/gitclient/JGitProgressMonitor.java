@@ -1,5 +1,6 @@
 package org.jenkinsci.plugins.gitclient;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.model.TaskListener;
 
 import java.io.PrintStream;
@@ -12,7 +13,10 @@ import java.io.PrintStream;
 public class JGitProgressMonitor implements org.eclipse.jgit.lib.ProgressMonitor {
 
     private final PrintStream log;
+    private final GitProgressTracker progress;
     private int completed;
+    private int taskCompleted;
+    private int largestTaskCompleted;
 
     /**
      * Constructor for JGitProgressMonitor.
@@ -20,7 +24,18 @@ public class JGitProgressMonitor implements org.eclipse.jgit.lib.ProgressMonitor
      * @param listener a {@link hudson.model.TaskListener} object.
      */
     public JGitProgressMonitor(TaskListener listener) {
+        this(listener, null);
+    }
+
+    /**
+     * Constructor for JGitProgressMonitor which also reports the tasks to a progress tracker.
+     *
+     * @param listener a {@link hudson.model.TaskListener} object.
+     * @param progress receives the tasks and their work, or null
+     */
+    JGitProgressMonitor(TaskListener listener, @CheckForNull GitProgressTracker progress) {
         this.log = listener.getLogger();
+        this.progress = progress;
     }
 
     /** {@inheritDoc} */
@@ -30,17 +45,39 @@ public class JGitProgressMonitor implements org.eclipse.jgit.lib.ProgressMonitor
     /** {@inheritDoc} */
     public void beginTask(String title, int totalWork) {
         log.println(title);
+        taskCompleted = 0;
+        if (progress != null) {
+            progress.begin(title, totalWork == UNKNOWN ? -1 : totalWork);
+        }
     }
 
     /** {@inheritDoc} */
     public void update(int completed) {
         this.completed += completed;
+        this.taskCompleted += completed;
+        this.largestTaskCompleted = Math.max(largestTaskCompleted, taskCompleted);
+        if (progress != null) {
+            progress.add(completed);
+        }
+    }
+
+    /**
+     * Work completed by the largest task. For fetch and push, the largest
+     * task counts the objects received or sent.
+     *
+     * @return work units completed by the largest task
+     */
+    int getLargestTaskCompleted() {
+        return largestTaskCompleted;
     }
 
     /**
      * endTask.
      */
     public void endTask() {
+        if (progress != null) {
+            progress.end();
+        }
     }
 
     /**
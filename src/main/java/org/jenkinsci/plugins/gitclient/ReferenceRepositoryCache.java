@@ -0,0 +1,275 @@
+package org.jenkinsci.plugins.gitclient;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.plugins.git.GitException;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.util.FS;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Reference repositories maintained by the git client, one bare mirror per
+ * normalized remote URL below a cache directory, used by
+ * {@link CloneCommand#referenceCache(String)} and by all clones without an
+ * explicit reference when
+ * <code>-Dorg.jenkinsci.plugins.gitclient.ReferenceRepositoryCache.root</code>
+ * names a directory.
+ * <p>
+ * A mirror is created by the first clone of its URL and fetched again by a
+ * later clone when its last fetch is older than
+ * <code>fetchIntervalSeconds</code> (default 300), so that clones only
+ * download the objects the mirror does not have. Creating and fetching a
+ * mirror holds a lock file next to it, which serializes executors of the
+ * same agent and agents sharing the cache directory.
+ * <p>
+ * Mirrors never prune references nor unreachable objects, because
+ * workspaces borrow their objects through
+ * <code>.git/objects/info/alternates</code>. Mirrors are registered for
+ * {@link BackgroundPrefetch} when it is enabled.
+ * <p>
+ * Linked worktrees of a mirror share its configuration. Their remote is
+ * written under the lock when the mirror is created, the per worktree
+ * configuration is enabled when the first worktree is added, and worktrees
+ * are added by
+ * {@link #update(String, BiFunction, TaskListener, Locked)} under the lock
+ * as well, so that concurrent clones never race on the configuration or
+ * the worktree list of the mirror.
+ */
+final class ReferenceRepositoryCache {
+
+    static final String ROOT = System.getProperty(ReferenceRepositoryCache.class.getName() + ".root");
+    static final long FETCH_INTERVAL_SECONDS = Long.getLong(ReferenceRepositoryCache.class.getName() + ".fetchIntervalSeconds", 300);
+
+    /* Remote tracking branches like the workspaces, which see the references of the mirror through their worktrees */
+    static final RefSpec BRANCHES_REFSPEC = new RefSpec("+refs/heads/*:refs/remotes/origin/*");
+    private static final List<RefSpec> MIRROR_REFSPECS = Collections.unmodifiableList(Arrays.asList(
+            BRANCHES_REFSPEC,
+            new RefSpec("+refs/tags/*:refs/tags/*")));
+
+    /* Lock files cannot be locked twice by one JVM, executors of the same agent wait here first */
+    private static final ConcurrentMap<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    /**
+     * Uses a mirror while its lock is held.
+     */
+    @FunctionalInterface
+    interface Locked {
+        void run(@NonNull File mirror) throws GitException, InterruptedException;
+    }
+
+    private final File root;
+    private final long fetchIntervalMillis;
+
+    ReferenceRepositoryCache(@NonNull File root, long fetchInterval, @NonNull TimeUnit unit) {
+        this.root = root;
+        this.fetchIntervalMillis = unit.toMillis(fetchInterval);
+    }
+
+    /**
+     * Cache in a directory, or in the directory of the system property.
+     *
+     * @param root cache directory, null or empty for the system property
+     * @return the cache, or null if no directory is set
+     */
+    @CheckForNull
+    static ReferenceRepositoryCache at(@CheckForNull String root) {
+        String dir = root == null || root.isEmpty() ? ROOT : root;
+        if (dir == null || dir.isEmpty()) {
+            return null;
+        }
+        return new ReferenceRepositoryCache(new File(dir), FETCH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Directory of the mirror of a repository.
+     *
+     * @param url remote repository URL
+     * @return mirror directory, it may not exist yet
+     */
+    @NonNull
+    File mirrorOf(@NonNull String url) {
+        String normalized = RemoteReferenceCache.normalize(url);
+        String name = normalized.replaceAll("/+$", "").replaceAll("\\.git$", "");
+        name = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf(':')) + 1)
+                .replaceAll("[^A-Za-z0-9._-]", "_").toLowerCase(Locale.ENGLISH);
+        return new File(root, name + "-" + Util.getDigestOf(normalized).substring(0, 16));
+    }
+
+    /**
+     * Creates or updates the mirror of a repository. Failing to create the
+     * mirror is not an error, the clone then runs without reference.
+     *
+     * @param url remote repository URL
+     * @param clients creates a client for a mirror directory and a listener, with the credentials of the clone
+     * @param listener receives progress and warnings
+     * @return the mirror directory, or null if the mirror could not be created
+     * @throws InterruptedException if interrupted while waiting for the lock or fetching
+     */
+    @CheckForNull
+    File update(@NonNull String url, @NonNull BiFunction<File, TaskListener, GitClient> clients, @NonNull TaskListener listener) throws InterruptedException {
+        return update(url, clients, listener, null);
+    }
+
+    /**
+     * Creates or updates the mirror of a repository, then uses it while
+     * still holding its lock.
+     *
+     * @param url remote repository URL
+     * @param clients creates a client for a mirror directory and a listener, with the credentials of the clone
+     * @param listener receives progress and warnings
+     * @param locked uses the mirror, not called if the mirror could not be created
+     * @return the mirror directory, or null if the mirror could not be created
+     * @throws GitException if the use of the mirror failed
+     * @throws InterruptedException if interrupted while waiting for the lock, fetching or using the mirror
+     */
+    @CheckForNull
+    File update(@NonNull String url, @NonNull BiFunction<File, TaskListener, GitClient> clients, @NonNull TaskListener listener,
+                @CheckForNull Locked locked) throws GitException, InterruptedException {
+        File mirror = updateLocked(url, clients, listener, locked);
+        if (mirror != null) {
+            /* After the fetch, which registered the mirror like a workspace */
+            BackgroundPrefetch.get().register(mirror, url, () -> update(url, clients, TaskListener.NULL));
+        }
+        return mirror;
+    }
+
+    @CheckForNull
+    private File updateLocked(String url, BiFunction<File, TaskListener, GitClient> clients, TaskListener listener,
+                              Locked locked) throws GitException, InterruptedException {
+        File mirror = mirrorOf(url);
+        File lockFile = new File(root, mirror.getName() + ".lock");
+        Object jvmLock = LOCKS.computeIfAbsent(mirror.getAbsolutePath(), k -> new Object());
+        synchronized (jvmLock) {
+            try {
+                if (!root.isDirectory() && !root.mkdirs() && !root.isDirectory()) {
+                    throw new IOException("Failed to create " + root);
+                }
+            } catch (IOException e) {
+                listener.getLogger().println("[WARNING] Failed to create reference repository for " + url + ", cloning without reference: " + e.getMessage());
+                return null;
+            }
+            try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = channel.lock()) {
+                if (!fetch(url, mirror, clients, listener)) {
+                    return null;
+                }
+                if (locked != null) {
+                    locked.run(mirror);
+                }
+                return mirror;
+            } catch (IOException e) {
+                listener.getLogger().println("[WARNING] Failed to lock reference repository " + mirror + ", cloning without reference: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /* Creates or fetches the mirror, with its lock held; false if the mirror could not be created */
+    private boolean fetch(String url, File mirror, BiFunction<File, TaskListener, GitClient> clients, TaskListener listener) throws InterruptedException {
+        File fetched = new File(root, mirror.getName() + ".fetched");
+        try {
+            boolean exists = AbstractGitAPIImpl.isBareRepository(mirror);
+            if (exists) {
+                configure(mirror, url); // mirrors created by earlier versions
+            }
+            if (exists && System.currentTimeMillis() - fetched.lastModified() < fetchIntervalMillis) {
+                return true;
+            }
+            GitClient client = clients.apply(mirror, listener);
+            if (!exists) {
+                listener.getLogger().println("Creating reference repository " + mirror + " for " + url);
+                Util.deleteRecursive(mirror); // leftovers of a failed creation
+                client.init_().workspace(mirror.getAbsolutePath()).bare(true).execute();
+                configure(mirror, url);
+            } else {
+                listener.getLogger().println("Updating reference repository " + mirror);
+            }
+            try {
+                client.fetch_().from(new URIish(url), MIRROR_REFSPECS).tags(false).execute();
+            } catch (GitException e) {
+                if (!exists) {
+                    Util.deleteRecursive(mirror);
+                    throw e;
+                }
+                /* A stale mirror still saves most of the download */
+                listener.getLogger().println("[WARNING] Failed to update reference repository " + mirror + ": " + e.getMessage());
+                return true;
+            }
+            boolean recorded = fetched.exists() || fetched.createNewFile();
+            if (!recorded || !fetched.setLastModified(System.currentTimeMillis())) {
+                listener.getLogger().println("[WARNING] Failed to record the update of reference repository " + mirror);
+            }
+            return true;
+        } catch (IOException | URISyntaxException | GitException e) {
+            listener.getLogger().println("[WARNING] Failed to create reference repository for " + url + ", cloning without reference: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /* Objects of a deleted branch may still be used by a workspace, worktrees read the remote of the mirror;
+     * saved only if changed */
+    private static void configure(File mirror, String url) throws IOException {
+        try (Repository repo = new RepositoryBuilder().setGitDir(mirror).setBare().build()) {
+            StoredConfig config = repo.getConfig();
+            String before = config.toText();
+            config.setString("gc", null, "pruneExpire", "never");
+            config.setString("gc", null, "reflogExpireUnreachable", "never");
+            config.setString("remote", "origin", "url", url);
+            config.setString("remote", "origin", "fetch", BRANCHES_REFSPEC.toString());
+            if (!config.toText().equals(before)) {
+                config.save();
+            }
+        }
+    }
+
+    /**
+     * Enables the per worktree configuration of a mirror, where worktrees
+     * keep their sparse checkout settings. Called with the lock held before
+     * adding a worktree, because CLI git older than 2.20 refuses to use a
+     * repository with this extension.
+     *
+     * @param mirror mirror directory
+     * @throws IOException if the configuration could not be written
+     */
+    static void enableWorktreeConfig(@NonNull File mirror) throws IOException {
+        try (Repository repo = new RepositoryBuilder().setGitDir(mirror).setBare().build()) {
+            StoredConfig config = repo.getConfig();
+            if (config.getBoolean("extensions", null, "worktreeConfig", false)) {
+                return;
+            }
+            /* With per worktree configuration, a shared core.bare would make the worktrees bare as well */
+            FileBasedConfig mainConfig = new FileBasedConfig(new File(mirror, "config.worktree"), FS.DETECTED);
+            mainConfig.load();
+            mainConfig.setBoolean("core", null, "bare", true);
+            mainConfig.save();
+            config.unset("core", null, "bare");
+            config.setInt("core", null, "repositoryformatversion", 1);
+            config.setBoolean("extensions", null, "worktreeConfig", true);
+            config.save();
+        } catch (ConfigInvalidException e) {
+            throw new IOException(e);
+        }
+    }
+}
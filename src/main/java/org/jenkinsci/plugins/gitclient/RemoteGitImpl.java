@@ -33,6 +33,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -134,6 +135,15 @@ class RemoteGitImpl implements GitClient, hudson.plugins.git.IGitAPI, Serializab
                 }
             }
             if (GitCommand.class.isAssignableFrom(decl)) {
+                for (int i = 0; i < args.length; i++) {
+                    if (args[i] instanceof RemoteReferencesCommand.Listener && channel != null) {
+                        // called back from the remote side
+                        args[i] = channel.export(RemoteReferencesCommand.Listener.class, (RemoteReferencesCommand.Listener) args[i]);
+                    }
+                    if (args[i] instanceof StandardCredentials) {
+                        args[i] = CredentialsProvider.snapshot(StandardCredentials.class, (StandardCredentials) args[i]); // credentials are Serializable
+                    }
+                }
                 invocations.add(new Invocation(method, args));
                 return proxy;
             }
@@ -575,11 +585,25 @@ class RemoteGitImpl implements GitClient, hudson.plugins.git.IGitAPI, Serializab
         return proxy.getHeadRev(remoteRepoUrl, branch);
     }
 
+    /** {@inheritDoc} */
+    public Map<String, ObjectId> getHeadRevs(String remoteRepoUrl, Collection<String> branchSpecs) throws GitException, InterruptedException {
+        return proxy.getHeadRevs(remoteRepoUrl, new ArrayList<>(branchSpecs));
+    }
+
     /** {@inheritDoc} */
     public Map<String, ObjectId> getRemoteReferences(String remoteRepoUrl, String pattern, boolean headsOnly, boolean tagsOnly) throws GitException, InterruptedException {
         return proxy.getRemoteReferences(remoteRepoUrl, pattern, headsOnly, tagsOnly);
     }
 
+    /**
+     * remoteReferences.
+     *
+     * @return a {@link org.jenkinsci.plugins.gitclient.RemoteReferencesCommand} object.
+     */
+    public RemoteReferencesCommand remoteReferences() {
+        return command(RemoteReferencesCommand.class);
+    }
+
     /** {@inheritDoc} */
     public Map<String, String> getRemoteSymbolicReferences(String remoteRepoUrl, String pattern)
             throws GitException, InterruptedException {
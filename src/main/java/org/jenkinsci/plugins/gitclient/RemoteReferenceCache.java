@@ -0,0 +1,198 @@
+package org.jenkinsci.plugins.gitclient;
+
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.plugins.git.GitException;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM wide cache of remote reference queries (<code>git ls-remote</code> and
+ * its JGit equivalents), used by {@link CliGitAPIImpl} and {@link JGitAPIImpl}.
+ * <p>
+ * Disabled unless
+ * <code>-Dorg.jenkinsci.plugins.gitclient.RemoteReferenceCache.ttlSeconds</code>
+ * is set to a positive number of seconds. Results are kept for that time,
+ * at most <code>maxEntries</code> (default 1000) of them, least recently
+ * used first out. Concurrent identical queries are answered by a single
+ * query to the remote repository. Failed queries are not cached.
+ * <p>
+ * Entries are keyed by implementation, query, normalized repository URL and
+ * the {@link CredentialsDigest} of the credentials, so that clients using
+ * different credentials for the same repository do not share answers, even
+ * when the credentials share an id. Queries with credentials whose secrets
+ * are not known are not cached.
+ */
+final class RemoteReferenceCache {
+
+    static final long TTL_SECONDS = Long.getLong(RemoteReferenceCache.class.getName() + ".ttlSeconds", 0);
+    static final int MAX_ENTRIES = Integer.getInteger(RemoteReferenceCache.class.getName() + ".maxEntries", 1000);
+
+    /* Not final, replaced by tests */
+    static RemoteReferenceCache INSTANCE = new RemoteReferenceCache(TTL_SECONDS, TimeUnit.SECONDS, MAX_ENTRIES);
+
+    /**
+     * Queries the remote repository.
+     *
+     * @param <V> result of the query
+     */
+    @FunctionalInterface
+    interface Query<V> {
+        V run() throws GitException, InterruptedException;
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        private volatile long expiresNanos;
+    }
+
+    private final long ttlNanos;
+    private final Map<String, Entry> entries;
+
+    RemoteReferenceCache(long ttl, TimeUnit unit, final int maxEntries) {
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    static RemoteReferenceCache get() {
+        return INSTANCE;
+    }
+
+    boolean isEnabled() {
+        return ttlNanos > 0;
+    }
+
+    /**
+     * Key of a query.
+     *
+     * @param implementation client implementation
+     * @param query name and arguments of the query
+     * @param url remote repository URL
+     * @param credentialsKey identity of the credentials used for the query, see {@link #credentialsKey(StandardCredentials)}
+     * @return cache key
+     */
+    static String key(@NonNull String implementation, @NonNull String query, @NonNull String url, @NonNull String credentialsKey) {
+        return implementation + '\n' + query + '\n' + normalize(url) + '\n' + credentialsKey;
+    }
+
+    /**
+     * Identity of credentials as used in a key.
+     *
+     * @param credentials credentials, may be null
+     * @return an empty string if no credentials, or null if the credentials cannot be
+     *         told apart from other credentials with the same id and the query must not be cached
+     */
+    @CheckForNull
+    static String credentialsKey(@CheckForNull StandardCredentials credentials) {
+        return credentials == null ? "" : CredentialsDigest.key(credentials);
+    }
+
+    /* Scheme and host are case insensitive, a trailing slash does not change the repository */
+    static String normalize(String url) {
+        String normalized = url.trim();
+        while (normalized.endsWith("/") && normalized.length() > 1) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        int schemeEnd = normalized.indexOf("://");
+        if (schemeEnd > 0) {
+            int pathStart = normalized.indexOf('/', schemeEnd + 3);
+            String authority = pathStart < 0 ? normalized.substring(schemeEnd + 3) : normalized.substring(schemeEnd + 3, pathStart);
+            int userEnd = authority.lastIndexOf('@');
+            String user = userEnd < 0 ? "" : authority.substring(0, userEnd + 1);
+            String host = authority.substring(userEnd + 1);
+            normalized = normalized.substring(0, schemeEnd).toLowerCase(Locale.ENGLISH) + "://" + user
+                    + host.toLowerCase(Locale.ENGLISH) + (pathStart < 0 ? "" : normalized.substring(pathStart));
+        }
+        return normalized;
+    }
+
+    /**
+     * Returns the cached result of a query, or runs the query. The result
+     * is shared with other callers, callers must not modify it.
+     *
+     * @param key key of the query, see {@link #key(String, String, String, String)}
+     * @param query runs the query
+     * @param <V> result of the query
+     * @return result of the query
+     * @throws GitException if the query failed
+     * @throws InterruptedException if interrupted while running or waiting for the query
+     */
+    @SuppressWarnings("unchecked")
+    <V> V get(@NonNull String key, @NonNull Query<V> query) throws GitException, InterruptedException {
+        if (!isEnabled()) {
+            return query.run();
+        }
+        while (true) {
+            Entry entry;
+            boolean owner = false;
+            synchronized (entries) {
+                entry = entries.get(key);
+                if (entry == null || (entry.result.isDone() && System.nanoTime() - entry.expiresNanos > 0)) {
+                    entry = new Entry();
+                    entries.put(key, entry);
+                    owner = true;
+                }
+            }
+            if (owner) {
+                return (V) load(key, entry, query);
+            }
+            try {
+                return (V) entry.result.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof InterruptedException) {
+                    continue; // the thread running the query was interrupted, not this one
+                }
+                if (cause instanceof GitException) {
+                    throw (GitException) cause;
+                }
+                throw new GitException(cause);
+            }
+        }
+    }
+
+    private <V> V load(String key, Entry entry, Query<V> query) throws GitException, InterruptedException {
+        V value;
+        try {
+            value = query.run();
+        } catch (InterruptedException | RuntimeException | Error e) {
+            synchronized (entries) {
+                if (entries.get(key) == entry) {
+                    entries.remove(key);
+                }
+            }
+            entry.result.completeExceptionally(e);
+            throw e;
+        }
+        entry.expiresNanos = System.nanoTime() + ttlNanos;
+        entry.result.complete(value);
+        return value;
+    }
+
+    /**
+     * Discard all cached results.
+     */
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /* For tests */
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
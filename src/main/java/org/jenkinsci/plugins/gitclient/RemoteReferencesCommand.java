@@ -0,0 +1,114 @@
+package org.jenkinsci.plugins.gitclient;
+
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.plugins.git.GitException;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.util.Map;
+
+/**
+ * Command to list the references of many remote repositories in parallel,
+ * as {@link GitClient#getRemoteReferences(String, String, boolean, boolean)}
+ * lists them for one repository.
+ * <p>
+ * At most {@link #threads(int)} repositories are queried at a time, and at
+ * most {@link #threadsPerHost(int)} of them on the same host. Hosts take
+ * turns, so that a host with many repositories does not delay the others.
+ * The references of each repository are passed to the {@link Listener} as
+ * soon as the repository has answered.
+ *
+ * @since 3.10.0
+ */
+public interface RemoteReferencesCommand extends GitCommand {
+
+    /**
+     * Adds a repository to query. This method can be invoked multiple times.
+     *
+     * @param url URL of the remote repository
+     * @param credentials credentials for the repository, or null to use the credentials of the client for the URL
+     * @return a {@link org.jenkinsci.plugins.gitclient.RemoteReferencesCommand} object.
+     */
+    RemoteReferencesCommand repository(String url, @CheckForNull StandardCredentials credentials);
+
+    /**
+     * Only list the references matching a pattern, like
+     * {@link GitClient#getRemoteReferences(String, String, boolean, boolean)}.
+     *
+     * @param pattern only references matching this pattern, null for all references
+     * @return a {@link org.jenkinsci.plugins.gitclient.RemoteReferencesCommand} object.
+     */
+    RemoteReferencesCommand pattern(String pattern);
+
+    /**
+     * Only list branches.
+     *
+     * @param headsOnly if true, only list the references below refs/heads/
+     * @return a {@link org.jenkinsci.plugins.gitclient.RemoteReferencesCommand} object.
+     */
+    RemoteReferencesCommand headsOnly(boolean headsOnly);
+
+    /**
+     * Only list tags.
+     *
+     * @param tagsOnly if true, only list the references below refs/tags/
+     * @return a {@link org.jenkinsci.plugins.gitclient.RemoteReferencesCommand} object.
+     */
+    RemoteReferencesCommand tagsOnly(boolean tagsOnly);
+
+    /**
+     * Query repositories in parallel with the given number of threads. Default is 4.
+     *
+     * @param threads maximum number of repositories queried at a time
+     * @return a {@link org.jenkinsci.plugins.gitclient.RemoteReferencesCommand} object.
+     */
+    RemoteReferencesCommand threads(int threads);
+
+    /**
+     * Limit the number of repositories queried at a time on the same host. Default is 2.
+     *
+     * @param threadsPerHost maximum number of repositories of the same host queried at a time
+     * @return a {@link org.jenkinsci.plugins.gitclient.RemoteReferencesCommand} object.
+     */
+    RemoteReferencesCommand threadsPerHost(int threadsPerHost);
+
+    /**
+     * Receives the references of each repository.
+     *
+     * @param listener receives the references of each repository
+     * @return a {@link org.jenkinsci.plugins.gitclient.RemoteReferencesCommand} object.
+     */
+    RemoteReferencesCommand listener(Listener listener);
+
+    /**
+     * Receives the results of a {@link RemoteReferencesCommand}. Its
+     * methods are called by one thread at a time, in the order the
+     * repositories answer. When the command runs on an agent, the listener
+     * is called back from the agent.
+     */
+    @FunctionalInterface
+    interface Listener {
+        /**
+         * Called with the references of a repository.
+         *
+         * @param url URL of the repository, as passed to {@link #repository(String, StandardCredentials)}
+         * @param references references of the repository
+         */
+        void onReferences(String url, Map<String, ObjectId> references);
+
+        /**
+         * Called if the references of a repository could not be listed.
+         * By default rethrows the exception, which stops the command: the
+         * queries running are interrupted, the others are not started and
+         * {@link GitCommand#execute()} throws a {@link GitException}.
+         * Return normally to continue with the other repositories.
+         *
+         * @param url URL of the repository, as passed to {@link #repository(String, StandardCredentials)}
+         * @param e failure of the query
+         * @throws GitException to stop the command
+         */
+        default void onFailure(String url, GitException e) throws GitException {
+            throw e;
+        }
+    }
+}
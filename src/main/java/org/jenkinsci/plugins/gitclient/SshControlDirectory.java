@@ -0,0 +1,130 @@
+package org.jenkinsci.plugins.gitclient;
+
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.model.TaskListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * JVM wide directory of the control sockets of the ssh connections shared
+ * by the commands of {@link CliGitAPIImpl} when
+ * <code>-Dorg.jenkinsci.plugins.gitclient.CliGitAPIImpl.sshControlMaster=true</code>.
+ * <p>
+ * A control socket is named by a digest of the credentials followed by the
+ * <code>%C</code> hash of ssh (local host, remote host, port and user), so
+ * only the commands using the same credentials to connect to the same host
+ * and user share a connection, whichever client runs them. The master
+ * connections exit, and remove their socket, once unused for
+ * <code>sshControlPersistSeconds</code>. The remaining ones are stopped and
+ * the directory is deleted when the JVM exits.
+ */
+final class SshControlDirectory {
+
+    /* Unix domain socket paths are limited to 103 characters on some platforms, ssh adds a 17 character suffix
+     * while creating a socket and the socket name takes 54 characters */
+    static final int MAX_LENGTH = 32;
+
+    private static final Logger LOGGER = Logger.getLogger(SshControlDirectory.class.getName());
+
+    private static File directory;
+
+    private SshControlDirectory() {
+    }
+
+    /**
+     * The control socket directory of this JVM, created on first use.
+     *
+     * @param listener receives the reason why connection sharing is not possible
+     * @return directory of the control sockets, or null if connection sharing is not possible
+     */
+    @CheckForNull
+    static synchronized File get(@NonNull TaskListener listener) {
+        if (directory != null && directory.isDirectory()) {
+            return directory;
+        }
+        File tmp = new File(System.getProperty("java.io.tmpdir"));
+        if (tmp.getAbsolutePath().length() > MAX_LENGTH - 24) {
+            tmp = new File("/tmp");
+        }
+        String path = tmp.getAbsolutePath();
+        if (!tmp.isDirectory() || path.contains("%") || path.contains("\"") || path.contains("`") || path.contains("$")) {
+            listener.getLogger().println("[WARNING] ssh connection sharing disabled, no suitable temporary directory for control sockets");
+            return null;
+        }
+        File created;
+        try {
+            Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rwx------");
+            created = Files.createTempDirectory(tmp.toPath(), "gcssh", PosixFilePermissions.asFileAttribute(ownerOnly)).toFile();
+        } catch (IOException | UnsupportedOperationException e) {
+            listener.getLogger().println("[WARNING] ssh connection sharing disabled: " + e.getMessage());
+            return null;
+        }
+        if (created.getAbsolutePath().length() > MAX_LENGTH) {
+            listener.getLogger().println("[WARNING] ssh connection sharing disabled, path too long: " + created);
+            delete(created);
+            return null;
+        }
+        directory = created;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> stopMasters(created), SshControlDirectory.class.getSimpleName()));
+        return directory;
+    }
+
+    /**
+     * Control socket of ssh connections, as passed to the <code>ControlPath</code> option of ssh.
+     *
+     * @param directory directory returned by {@link #get(TaskListener)}
+     * @param credentials credentials authenticating the connections
+     * @return control socket path, including the <code>%C</code> token of ssh
+     */
+    @NonNull
+    static String controlPath(@NonNull File directory, @NonNull StandardCredentials credentials) {
+        String key = CredentialsDigest.key(credentials);
+        if (key == null) {
+            key = credentials.getClass().getName() + '/' + credentials.getId();
+        }
+        return directory.getAbsolutePath() + '/' + Util.getDigestOf(key).substring(0, 12) + "-%C";
+    }
+
+    /* Ask the ssh master connections to exit and remove their control sockets */
+    static void stopMasters(@NonNull File directory) {
+        File[] sockets = directory.listFiles();
+        if (sockets != null) {
+            for (File socket : sockets) {
+                try {
+                    // The host name is required by ssh but not used with an explicit control socket
+                    Process exit = new ProcessBuilder("ssh", "-S", socket.getAbsolutePath(), "-O", "exit", "git-client")
+                            .redirectErrorStream(true)
+                            .redirectOutput(ProcessBuilder.Redirect.to(new File("/dev/null")))
+                            .start();
+                    if (!exit.waitFor(10, TimeUnit.SECONDS)) {
+                        exit.destroy();
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "ssh master connection " + socket + " not stopped", e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                delete(socket);
+            }
+        }
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            LOGGER.log(Level.FINE, "{0} not deleted", file);
+        }
+    }
+}
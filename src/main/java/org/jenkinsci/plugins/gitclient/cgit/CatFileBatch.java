@@ -0,0 +1,259 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.Timer;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Long-lived {@code git cat-file --batch} process which answers object
+ * lookups over its pipes instead of starting a new git process per lookup.
+ * <p>
+ * The process is started on first use. It is stopped by {@link #close()},
+ * after it has been idle for longer than the idle timeout, when a lookup
+ * times out, and when the calling thread is interrupted while waiting for an
+ * answer. A stopped instance can still be used, the next lookup starts a new
+ * process.
+ */
+public class CatFileBatch implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(CatFileBatch.class.getName());
+
+    /**
+     * Object returned by a lookup.
+     */
+    public static final class ObjectData {
+        private final ObjectId id;
+        private final String type;
+        private final byte[] content;
+
+        ObjectData(ObjectId id, String type, byte[] content) {
+            this.id = id;
+            this.type = type;
+            this.content = content;
+        }
+
+        /**
+         * @return id of the object
+         */
+        public ObjectId getId() {
+            return id;
+        }
+
+        /**
+         * @return object type, one of "commit", "tree", "blob" or "tag"
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return raw (uncompressed) content of the object
+         */
+        public byte[] getContent() {
+            return content.clone();
+        }
+    }
+
+    private final String[] command;
+    private final File workDir;
+    private final Map<String, String> environment;
+    private final long idleTimeoutMillis;
+
+    private Process process;
+    private OutputStream stdin;
+    private InputStream stdout;
+    private ExecutorService reader;
+    private long lastUsed;
+    private boolean idleCheckScheduled;
+
+    /**
+     * Constructor for CatFileBatch.
+     *
+     * @param gitExe git executable
+     * @param workDir working directory of the git process, the top of the work tree
+     * @param environment variables added to the environment of the git process
+     * @param idleTimeout time after which an unused process is stopped
+     * @param unit unit of {@code idleTimeout}
+     */
+    public CatFileBatch(@NonNull String gitExe, @NonNull File workDir, @NonNull Map<String, String> environment,
+                        long idleTimeout, @NonNull TimeUnit unit) {
+        this.command = new String[] { gitExe, "cat-file", "--batch" };
+        this.workDir = workDir;
+        this.environment = environment;
+        this.idleTimeoutMillis = unit.toMillis(idleTimeout);
+    }
+
+    /**
+     * Look up an object.
+     *
+     * @param objectName any object name understood by {@code git rev-parse}, like
+     *        {@code HEAD}, {@code origin/master^{commit}} or a SHA1. Must not contain line breaks.
+     * @param timeout maximum time to wait for the answer
+     * @param unit unit of {@code timeout}
+     * @return the object, or null if the name does not resolve to an object
+     * @throws IOException if the git process cannot be started or fails, the process is stopped
+     * @throws TimeoutException if git did not answer in time, the process is stopped
+     * @throws InterruptedException if interrupted while waiting for the answer, the process is stopped
+     */
+    @CheckForNull
+    public synchronized ObjectData read(@NonNull String objectName, long timeout, @NonNull TimeUnit unit)
+            throws IOException, TimeoutException, InterruptedException {
+        if (objectName.isEmpty() || objectName.indexOf('\n') >= 0 || objectName.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Invalid object name '" + objectName + "'");
+        }
+        start();
+        lastUsed = System.currentTimeMillis();
+        boolean ok = false;
+        try {
+            stdin.write((objectName + "\n").getBytes(StandardCharsets.UTF_8));
+            stdin.flush();
+            Future<ObjectData> answer = reader.submit(this::readAnswer);
+            ObjectData data = answer.get(timeout, unit);
+            ok = true;
+            return data;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            lastUsed = System.currentTimeMillis();
+            if (!ok) {
+                stop();
+            }
+        }
+    }
+
+    /**
+     * Stop the git process if it is running.
+     */
+    @Override
+    public synchronized void close() {
+        stop();
+    }
+
+    private void start() throws IOException {
+        if (process != null) {
+            return;
+        }
+        ProcessBuilder pb = new ProcessBuilder(command).directory(workDir);
+        pb.environment().putAll(environment);
+        pb.redirectError(ProcessBuilder.Redirect.to(new File(File.pathSeparatorChar == ';' ? "NUL" : "/dev/null")));
+        process = pb.start();
+        stdin = process.getOutputStream();
+        stdout = new BufferedInputStream(process.getInputStream());
+        reader = Executors.newSingleThreadExecutor(new NamingThreadFactory(new DaemonThreadFactory(), CatFileBatch.class.getSimpleName()));
+        scheduleIdleCheck(idleTimeoutMillis);
+    }
+
+    private void stop() {
+        if (process == null) {
+            return;
+        }
+        try {
+            stdin.close(); // git exits at end of input
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to close cat-file input", e);
+        }
+        process.destroy();
+        reader.shutdownNow();
+        process = null;
+        stdin = null;
+        stdout = null;
+        reader = null;
+    }
+
+    private void scheduleIdleCheck(long delayMillis) {
+        if (idleCheckScheduled) {
+            return;
+        }
+        idleCheckScheduled = true;
+        Timer.get().schedule(this::idleCheck, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void idleCheck() {
+        idleCheckScheduled = false;
+        if (process == null) {
+            return;
+        }
+        long idle = System.currentTimeMillis() - lastUsed;
+        if (idle >= idleTimeoutMillis) {
+            stop();
+        } else {
+            scheduleIdleCheck(idleTimeoutMillis - idle);
+        }
+    }
+
+    /* Runs on the reader thread, only while read() holds the lock */
+    private ObjectData readAnswer() throws IOException {
+        String header = readLine();
+        // <sha1> SP <type> SP <size> LF, or <object> SP missing LF, or <object> SP ambiguous LF
+        String[] fields = header.split(" ");
+        if (fields.length < 3 || !ObjectId.isId(fields[0])) {
+            return null;
+        }
+        long size;
+        try {
+            size = Long.parseLong(fields[fields.length - 1]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (fields.length != 3 || size < 0 || size > Integer.MAX_VALUE - 1) {
+            throw new IOException("Unexpected cat-file output '" + header + "'");
+        }
+        byte[] content = new byte[(int) size];
+        int read = 0;
+        while (read < content.length) {
+            int n = stdout.read(content, read, content.length - read);
+            if (n < 0) {
+                throw new EOFException("cat-file output ended after " + read + " of " + size + " bytes");
+            }
+            read += n;
+        }
+        if (stdout.read() != '\n') {
+            throw new IOException("cat-file output not terminated by a newline");
+        }
+        return new ObjectData(ObjectId.fromString(fields[0]), fields[1], content);
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = stdout.read()) != '\n') {
+            if (c < 0) {
+                throw new EOFException("cat-file exited, output so far '" + line.toString("UTF-8") + "'");
+            }
+            line.write(c);
+        }
+        return line.toString("UTF-8");
+    }
+
+    @Override
+    public String toString() {
+        return "CatFileBatch" + Arrays.toString(command) + " in " + workDir;
+    }
+}
@@ -2,8 +2,12 @@ package org.jenkinsci.plugins.gitclient.cgit;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
@@ -25,6 +29,7 @@ import hudson.util.NamingThreadFactory;
  * This executor can invoke multiple git commands in parallel using threads.
  * <p>
  * If threads = 1 the caller thread is used.
+ * Commands connecting to remote hosts can be limited per host.
  * If a git command fails, invocation of all running and not yet started commands is stopped.
  */
 public class GitCommandsExecutor {
@@ -40,19 +45,50 @@ public class GitCommandsExecutor {
     public <T> void invokeAll(Collection<Callable<T>> commands) throws GitException, InterruptedException {
         ExecutorService executorService = null;
         try {
-            if (threads == 1) {
-                executorService = newExecutorService();
-            } else {
-                ThreadFactory threadFactory = new ExceptionCatchingThreadFactory(new NamingThreadFactory(new DaemonThreadFactory(), GitCommandsExecutor.class.getSimpleName()));
-                executorService = Executors.newFixedThreadPool(threads, threadFactory);
-            }
+            executorService = newExecutorService(threads);
             invokeAll(executorService, commands);
         } finally {
-            if (executorService != null) {
-                executorService.shutdownNow();
-                if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
-                    listener.getLogger().println("[WARNING] Threads did not terminate properly");
-                }
+            shutdown(executorService);
+        }
+    }
+
+    /**
+     * Invokes commands which connect to remote hosts, running at most
+     * {@code threadsPerHost} of them against the same host at a time.
+     * Hosts with commands waiting take turns for the free threads, so that
+     * the commands of a host with many repositories do not delay the
+     * commands of other hosts. Failures stop the invocation like in
+     * {@link #invokeAll(Collection)}.
+     *
+     * @param commandsByHost commands to invoke, by the host they connect to
+     * @param threadsPerHost maximum number of commands running against the same host
+     * @param <T> result of the commands
+     * @throws GitException if a command failed
+     * @throws InterruptedException if interrupted
+     */
+    public <T> void invokeAll(Map<String, ? extends Collection<Callable<T>>> commandsByHost, int threadsPerHost) throws GitException, InterruptedException {
+        ExecutorService executorService = null;
+        try {
+            executorService = newExecutorService(threads);
+            invokeAll(executorService, commandsByHost, Math.max(1, threadsPerHost));
+        } finally {
+            shutdown(executorService);
+        }
+    }
+
+    private ExecutorService newExecutorService(int threads) {
+        if (threads == 1) {
+            return newExecutorService();
+        }
+        ThreadFactory threadFactory = new ExceptionCatchingThreadFactory(new NamingThreadFactory(new DaemonThreadFactory(), GitCommandsExecutor.class.getSimpleName()));
+        return Executors.newFixedThreadPool(threads, threadFactory);
+    }
+
+    private void shutdown(ExecutorService executorService) throws InterruptedException {
+        if (executorService != null) {
+            executorService.shutdownNow();
+            if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+                listener.getLogger().println("[WARNING] Threads did not terminate properly");
             }
         }
     }
@@ -93,6 +129,53 @@ public class GitCommandsExecutor {
         }
     }
 
+    private <T> void invokeAll(ExecutorService executorService, Map<String, ? extends Collection<Callable<T>>> commandsByHost, int threadsPerHost) throws InterruptedException {
+        CompletionService<T> completionService = new ExecutorCompletionService<>(executorService);
+        Deque<String> hosts = new ArrayDeque<>();
+        Map<String, Iterator<Callable<T>>> remainingCommands = new HashMap<>();
+        Map<String, Integer> runningCommands = new HashMap<>();
+        Map<Future<T>, String> hostsOfRunningCommands = new HashMap<>();
+        int nCommands = 0;
+        for (Map.Entry<String, ? extends Collection<Callable<T>>> entry : commandsByHost.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                hosts.add(entry.getKey());
+                remainingCommands.put(entry.getKey(), entry.getValue().iterator());
+                runningCommands.put(entry.getKey(), 0);
+                nCommands += entry.getValue().size();
+            }
+        }
+
+        for (int i = 0; i < nCommands; i++) {
+            while (hostsOfRunningCommands.size() < threads) {
+                String host = nextHost(hosts, remainingCommands, runningCommands, threadsPerHost);
+                if (host == null) {
+                    break;
+                }
+                runningCommands.merge(host, 1, Integer::sum);
+                hostsOfRunningCommands.put(completionService.submit(remainingCommands.get(host).next()), host);
+            }
+            Future<T> result = completionService.take();
+            runningCommands.merge(hostsOfRunningCommands.remove(result), -1, Integer::sum);
+            checkResult(result);
+        }
+    }
+
+    /* Next host in turn which has commands waiting and is below its limit, null if none */
+    private static <T> String nextHost(Deque<String> hosts, Map<String, Iterator<Callable<T>>> remainingCommands,
+                                       Map<String, Integer> runningCommands, int threadsPerHost) {
+        for (int i = hosts.size(); i > 0; i--) {
+            String host = hosts.poll();
+            if (!remainingCommands.get(host).hasNext()) {
+                continue; // all commands of the host started
+            }
+            hosts.add(host);
+            if (runningCommands.get(host) < threadsPerHost) {
+                return host;
+            }
+        }
+        return null;
+    }
+
     private <T> void submitRemainingCommand(CompletionService<T> completionService, Iterator<Callable<T>> remainingCommands) {
         if (remainingCommands.hasNext()) {
             completionService.submit(remainingCommands.next());
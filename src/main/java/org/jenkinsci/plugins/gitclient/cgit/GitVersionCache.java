@@ -0,0 +1,137 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JVM wide cache of the <code>git --version</code> output of git executables.
+ * <p>
+ * Entries are keyed by the canonical path of the executable and remember its
+ * size and modification time, so that an upgraded or replaced executable is
+ * probed again. Executables which cannot be found on disk are probed every
+ * time.
+ */
+public final class GitVersionCache {
+
+    private static final Map<String, Entry> CACHE = new ConcurrentHashMap<>();
+
+    private static final class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String version;
+
+        Entry(long size, long lastModified, String version) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.version = version;
+        }
+
+        boolean matches(File executable) {
+            return executable.length() == size && executable.lastModified() == lastModified;
+        }
+    }
+
+    private GitVersionCache() {
+    }
+
+    /**
+     * Returns the version output of a git executable, running {@code probe} only if
+     * it is not cached yet or the executable changed since it was cached.
+     *
+     * @param gitExe git executable as passed to the process launcher, a path or a name found on the PATH
+     * @param probe runs <code>git --version</code> and returns its output
+     * @return version output of the executable
+     * @throws InterruptedException if interrupted while probing
+     */
+    public static String getVersion(@NonNull String gitExe, @NonNull Probe probe) throws InterruptedException {
+        File executable = resolve(gitExe, System.getenv("PATH"), File.pathSeparatorChar == ';');
+        if (executable == null) {
+            return probe.call();
+        }
+        String key;
+        try {
+            key = executable.getCanonicalPath();
+        } catch (IOException e) {
+            return probe.call();
+        }
+        Entry entry = CACHE.get(key);
+        if (entry != null && entry.matches(executable)) {
+            return entry.version;
+        }
+        synchronized (GitVersionCache.class) {
+            entry = CACHE.get(key);
+            if (entry != null && entry.matches(executable)) {
+                return entry.version;
+            }
+            // Record size and time before probing so a concurrent replacement is noticed next time
+            long size = executable.length();
+            long lastModified = executable.lastModified();
+            String version = probe.call();
+            CACHE.put(key, new Entry(size, lastModified, version));
+            return version;
+        }
+    }
+
+    /**
+     * Runs <code>git --version</code>. A runtime exception thrown by the probe
+     * is passed to the caller and nothing is cached.
+     */
+    @FunctionalInterface
+    public interface Probe {
+        /**
+         * @return output of <code>git --version</code>
+         * @throws InterruptedException if interrupted while git runs
+         */
+        String call() throws InterruptedException;
+    }
+
+    /**
+     * Locate a git executable the way the process launcher does.
+     *
+     * @param gitExe path or name of the executable
+     * @param path value of the PATH environment variable
+     * @param windows true to also try Windows executable extensions
+     * @return the executable file, or null if it was not found
+     */
+    @CheckForNull
+    static File resolve(@NonNull String gitExe, @CheckForNull String path, boolean windows) {
+        String[] extensions = windows ? new String[] { "", ".exe", ".cmd", ".bat" } : new String[] { "" };
+        if (gitExe.indexOf('/') >= 0 || gitExe.indexOf(File.separatorChar) >= 0) {
+            return findFile(new File(gitExe), extensions);
+        }
+        if (path == null) {
+            return null;
+        }
+        for (String dir : path.split(File.pathSeparator)) {
+            if (dir.isEmpty()) {
+                continue;
+            }
+            File found = findFile(new File(dir, gitExe), extensions);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    @CheckForNull
+    private static File findFile(File file, String[] extensions) {
+        for (String extension : extensions) {
+            File candidate = new File(file.getPath() + extension);
+            if (candidate.isFile()) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /* For tests */
+    static void clear() {
+        CACHE.clear();
+    }
+}
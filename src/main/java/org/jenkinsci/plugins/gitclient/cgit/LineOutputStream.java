@@ -0,0 +1,75 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import hudson.console.LineTransformationOutputStream;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Output stream which decodes the bytes written to it and hands them to a
+ * {@link LineHandler} one line at a time, as soon as each line is complete.
+ * <p>
+ * Used to parse the output of git commands while the process runs, so that
+ * only the current line is held in memory no matter how large the command
+ * output is. The trailing newline is not passed to the handler, a carriage
+ * return preceding it is kept.
+ * <p>
+ * A {@link RuntimeException} thrown by the handler stops further lines from
+ * being delivered, but the stream keeps consuming output so that the process
+ * is not blocked on a full pipe. The exception is rethrown by
+ * {@link #rethrowFailure()}.
+ */
+public class LineOutputStream extends LineTransformationOutputStream {
+
+    /**
+     * Receives command output one line at a time.
+     */
+    @FunctionalInterface
+    public interface LineHandler {
+        /**
+         * Called once for each line of output, in order.
+         *
+         * @param line line of output without its trailing newline
+         */
+        void handle(String line);
+    }
+
+    private final LineHandler handler;
+    private final Charset charset;
+    private RuntimeException failure;
+
+    /**
+     * Constructor for LineOutputStream.
+     *
+     * @param handler receives each decoded line
+     * @param charset encoding of the output
+     */
+    public LineOutputStream(LineHandler handler, Charset charset) {
+        this.handler = handler;
+        this.charset = charset;
+    }
+
+    @Override
+    protected void eol(byte[] b, int len) throws IOException {
+        if (failure != null) {
+            return;
+        }
+        if (len > 0 && b[len - 1] == '\n') {
+            len--;
+        }
+        try {
+            handler.handle(new String(b, 0, len, charset));
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Rethrows the first exception thrown by the handler, if any.
+     */
+    public void rethrowFailure() {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
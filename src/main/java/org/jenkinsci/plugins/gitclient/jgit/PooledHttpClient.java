@@ -0,0 +1,54 @@
+package org.jenkinsci.plugins.gitclient.jgit;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM wide {@link org.apache.http.client.HttpClient} with a pool of
+ * keep-alive connections, used by {@link PreemptiveAuthHttpClientConnection}
+ * when enabled with
+ * <code>-Dorg.jenkinsci.plugins.gitclient.jgit.PooledHttpClient.enabled=true</code>.
+ * <p>
+ * Connections are pooled by route, that is by target host and proxy, and
+ * connections bound to a user by their authentication (NTLM, client
+ * certificates) are only reused for that user. All TLS connections share
+ * one SSL context, so new connections to a host resume the TLS session of
+ * earlier ones. Limits are set with the <code>maxConnectionsPerRoute</code>
+ * (default 20) and <code>maxConnections</code> (default 100) properties,
+ * connections unused for <code>idleSeconds</code> (default 60) are closed.
+ * A request waits for a connection of the pool at most the connect timeout
+ * of JGit, or <code>connectionRequestTimeoutSeconds</code> (default 60) if
+ * JGit has no timeout, and fails otherwise.
+ * <p>
+ * Credentials, proxy and timeouts are passed with each request.
+ */
+final class PooledHttpClient {
+
+    static boolean ENABLED = Boolean.valueOf(System.getProperty(PooledHttpClient.class.getName() + ".enabled", "false"));
+    static final int MAX_CONNECTIONS_PER_ROUTE = Integer.getInteger(PooledHttpClient.class.getName() + ".maxConnectionsPerRoute", 20);
+    static final int MAX_CONNECTIONS = Integer.getInteger(PooledHttpClient.class.getName() + ".maxConnections", 100);
+    static final int IDLE_SECONDS = Integer.getInteger(PooledHttpClient.class.getName() + ".idleSeconds", 60);
+    static final int CONNECTION_REQUEST_TIMEOUT_SECONDS = Integer.getInteger(PooledHttpClient.class.getName() + ".connectionRequestTimeoutSeconds", 60);
+
+    private static CloseableHttpClient client;
+
+    private PooledHttpClient() {
+    }
+
+    static synchronized CloseableHttpClient get() {
+        if (client == null) {
+            PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+            connectionManager.setMaxTotal(MAX_CONNECTIONS);
+            client = HttpClientBuilder.create()
+                    .setConnectionManager(connectionManager)
+                    .evictExpiredConnections()
+                    .evictIdleConnections(IDLE_SECONDS, TimeUnit.SECONDS)
+                    .build();
+        }
+        return client;
+    }
+}
@@ -59,9 +59,12 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.SystemDefaultCredentialsProvider;
+import org.apache.http.util.EntityUtils;
 import org.eclipse.jgit.transport.CredentialItem;
 import org.eclipse.jgit.transport.URIish;
 import org.eclipse.jgit.transport.http.HttpConnection;
@@ -98,6 +101,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A {@link HttpConnection} which uses {@link HttpClient} and attempts to
@@ -128,6 +132,8 @@ public class PreemptiveAuthHttpClientConnection implements HttpConnection {
 
     private Boolean followRedirects;
 
+    private boolean pooled = false;
+
     @Deprecated
     private org.apache.http.conn.ssl.X509HostnameVerifier hostnameverifier;
 
@@ -176,53 +182,23 @@ public class PreemptiveAuthHttpClientConnection implements HttpConnection {
 
     private HttpClient getClient() {
         if (client == null) {
-            final HttpClientBuilder builder = HttpClientBuilder.create();
-            CredentialItem.Username u = new CredentialItem.Username();
-            CredentialItem.Password p = new CredentialItem.Password();
-            final URIish serviceUri;
-            try {
-                serviceUri = new URIish(urlStr);
-            }
-            catch (final URISyntaxException e) {
-                throw new Error(e);
-            }
-            final HttpHost targetHost = new HttpHost(serviceUri.getHost(), serviceUri.getPort(), serviceUri.getScheme());
-
-            CredentialsProvider clientCredentialsProvider = new SystemDefaultCredentialsProvider();
-            if (credentialsProvider.supports(u, p)) {
-                URIish uri = serviceUri;
-                while(uri != null) {
-                    if (credentialsProvider.get(uri, u, p)) {
-                        final String userName = u.getValue();
-                        final String password = new String(p.getValue());
-                        p.clear();
-                        final Credentials credentials = createNTCredentials(userName, password);
-                        final AuthScope authScope = new AuthScope(targetHost);
-                        clientCredentialsProvider = new BasicCredentialsProvider();
-                        clientCredentialsProvider.setCredentials(authScope, credentials);
-                        break;
-                    }
-                    uri = goUp(uri);
+            if (PooledHttpClient.ENABLED && hostnameverifier == null) {
+                client = PooledHttpClient.get();
+                pooled = true;
+                if (proxy != null && !Proxy.NO_PROXY.equals(proxy)) {
+                    isUsingProxy = true;
                 }
+                return client;
             }
-            builder.setDefaultCredentialsProvider(clientCredentialsProvider);
+            final HttpClientBuilder builder = HttpClientBuilder.create();
+            builder.setDefaultCredentialsProvider(getCredentialsProvider());
 
             if (proxy != null && !Proxy.NO_PROXY.equals(proxy)) {
                 isUsingProxy = true;
                 configureProxy(builder, proxy);
             }
 
-            final RequestConfig.Builder requestConfigBuilder = RequestConfig.custom();
-            if (readTimeout != null)
-                requestConfigBuilder.setSocketTimeout(readTimeout);
-            if (timeout != null)
-                requestConfigBuilder.setConnectTimeout(timeout);
-            if (followRedirects != null)
-                requestConfigBuilder.setRedirectsEnabled(followRedirects);
-            requestConfigBuilder.setAuthenticationEnabled(true);
-            final RequestConfig requestConfig = requestConfigBuilder.build();
-
-            builder.setDefaultRequestConfig(requestConfig);
+            builder.setDefaultRequestConfig(getRequestConfig().build());
 
             if (hostnameverifier != null) {
                 builder.setSSLHostnameVerifier(hostnameverifier);
@@ -233,6 +209,80 @@ public class PreemptiveAuthHttpClientConnection implements HttpConnection {
         return client;
     }
 
+    private CredentialsProvider getCredentialsProvider() {
+        final Credentials credentials = credentialsProvider.getResolved(
+                PreemptiveAuthHttpClientConnection.class.getName() + ' ' + urlStr, this::resolveCredentials);
+        if (credentials == null) {
+            return new SystemDefaultCredentialsProvider();
+        }
+        final CredentialsProvider clientCredentialsProvider = new BasicCredentialsProvider();
+        clientCredentialsProvider.setCredentials(new AuthScope(getTargetHost()), credentials);
+        return clientCredentialsProvider;
+    }
+
+    /* Credentials of the URL or of the closest parent URL having some */
+    private Credentials resolveCredentials(SmartCredentialsProvider provider) {
+        CredentialItem.Username u = new CredentialItem.Username();
+        CredentialItem.Password p = new CredentialItem.Password();
+        if (provider.supports(u, p)) {
+            URIish uri = getServiceUri();
+            while(uri != null) {
+                if (provider.get(uri, u, p)) {
+                    final String userName = u.getValue();
+                    final String password = new String(p.getValue());
+                    p.clear();
+                    return createNTCredentials(userName, password);
+                }
+                uri = goUp(uri);
+            }
+        }
+        return null;
+    }
+
+    private URIish getServiceUri() {
+        try {
+            return new URIish(urlStr);
+        }
+        catch (final URISyntaxException e) {
+            throw new Error(e);
+        }
+    }
+
+    private HttpHost getTargetHost() {
+        final URIish serviceUri = getServiceUri();
+        return new HttpHost(serviceUri.getHost(), serviceUri.getPort(), serviceUri.getScheme());
+    }
+
+    private RequestConfig.Builder getRequestConfig() {
+        final RequestConfig.Builder requestConfigBuilder = RequestConfig.custom();
+        if (readTimeout != null)
+            requestConfigBuilder.setSocketTimeout(readTimeout);
+        if (timeout != null)
+            requestConfigBuilder.setConnectTimeout(timeout);
+        if (followRedirects != null)
+            requestConfigBuilder.setRedirectsEnabled(followRedirects);
+        requestConfigBuilder.setAuthenticationEnabled(true);
+        return requestConfigBuilder;
+    }
+
+    /* The pooled client is shared, settings of this connection are passed with the request */
+    private HttpClientContext getPooledContext() {
+        final RequestConfig.Builder requestConfigBuilder = getRequestConfig();
+        /* JGit passes 0 when no timeout is configured, never wait forever for a connection of the pool */
+        if (timeout != null && timeout > 0)
+            requestConfigBuilder.setConnectionRequestTimeout(timeout);
+        else
+            requestConfigBuilder.setConnectionRequestTimeout(
+                    (int) TimeUnit.SECONDS.toMillis(PooledHttpClient.CONNECTION_REQUEST_TIMEOUT_SECONDS));
+        final HttpHost proxyHost = getProxyHost(proxy);
+        if (proxyHost != null)
+            requestConfigBuilder.setProxy(proxyHost);
+        final HttpClientContext context = HttpClientContext.create();
+        context.setCredentialsProvider(getCredentialsProvider());
+        context.setRequestConfig(requestConfigBuilder.build());
+        return context;
+    }
+
     static NTCredentials createNTCredentials(final String userName, final String password) {
         final int firstAt = userName.indexOf('@');
         final int firstSlash = userName.indexOf('/');
@@ -263,16 +313,23 @@ public class PreemptiveAuthHttpClientConnection implements HttpConnection {
     }
 
     private static void configureProxy(final HttpClientBuilder builder, final Proxy proxy) {
+        final HttpHost httpHost = getProxyHost(proxy);
+        if (httpHost != null) {
+            builder.setProxy(httpHost);
+        }
+    }
+
+    private static HttpHost getProxyHost(final Proxy proxy) {
         if (proxy != null && !Proxy.NO_PROXY.equals(proxy)) {
             final SocketAddress socketAddress = proxy.address();
             if (socketAddress instanceof InetSocketAddress) {
                 final InetSocketAddress inetSocketAddress = (InetSocketAddress) socketAddress;
                 final String proxyHost = inetSocketAddress.getHostName();
                 final int proxyPort = inetSocketAddress.getPort();
-                final HttpHost httpHost = new HttpHost(proxyHost, proxyPort);
-                builder.setProxy(httpHost);
+                return new HttpHost(proxyHost, proxyPort);
             }
         }
+        return null;
     }
 
     private SSLContext getSSLContext() {
@@ -316,11 +373,26 @@ public class PreemptiveAuthHttpClientConnection implements HttpConnection {
                     HttpEntityEnclosingRequest eReq = (HttpEntityEnclosingRequest) req;
                     eReq.setEntity(entity);
                 }
-                resp = getClient().execute(req);
+                resp = executeRequest();
                 entity.getBuffer().close();
                 entity = null;
             } else
-                resp = getClient().execute(req);
+                resp = executeRequest();
+    }
+
+    private HttpResponse executeRequest() throws IOException {
+        HttpClient httpClient = getClient();
+        if (!pooled) {
+            return httpClient.execute(req);
+        }
+        HttpResponse response = httpClient.execute(req, getPooledContext());
+        HttpEntity responseEntity = response.getEntity();
+        if (responseEntity != null && response.getStatusLine().getStatusCode() >= 300) {
+            /* JGit does not always read error responses, read them now to return the connection to the pool */
+            response.setEntity(new BufferedHttpEntity(responseEntity));
+            EntityUtils.consume(responseEntity);
+        }
+        return response;
     }
 
     public Map<String, List<String>> getHeaderFields() {
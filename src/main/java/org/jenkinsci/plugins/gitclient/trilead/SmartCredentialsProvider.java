@@ -4,14 +4,19 @@ import com.cloudbees.plugins.credentials.common.PasswordCredentials;
 import com.cloudbees.plugins.credentials.common.StandardCredentials;
 import com.cloudbees.plugins.credentials.common.StandardUsernameCredentials;
 import com.cloudbees.plugins.credentials.common.UsernameCredentials;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.model.TaskListener;
 import org.eclipse.jgit.errors.UnsupportedCredentialItem;
 import org.eclipse.jgit.transport.CredentialItem;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.URIish;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * SmartCredentialsProvider class.
@@ -22,10 +27,13 @@ public class SmartCredentialsProvider extends CredentialsProvider {
 
     public final TaskListener listener;
 
-    private StandardCredentials defaultCredentials;
+    /* Replaced, never modified, by the synchronized methods changing the credentials; read without locking */
+    private volatile StandardCredentials defaultCredentials;
 
-    private Map<String, StandardCredentials> specificCredentials =
-            new HashMap<>();
+    private volatile Map<String, StandardCredentials> specificCredentials =
+            Collections.emptyMap();
+
+    private volatile Map<String, Optional<Object>> resolved = new ConcurrentHashMap<>();
 
 
     /**
@@ -44,7 +52,8 @@ public class SmartCredentialsProvider extends CredentialsProvider {
      */
     public synchronized void clearCredentials() {
         defaultCredentials = null;
-        specificCredentials.clear();
+        specificCredentials = Collections.emptyMap();
+        resolved = new ConcurrentHashMap<>();
     }
 
     /**
@@ -55,7 +64,10 @@ public class SmartCredentialsProvider extends CredentialsProvider {
      * @since 1.2.0
      */
     public synchronized void addCredentials(String url, StandardCredentials credentials) {
-        specificCredentials.put(url, credentials);
+        Map<String, StandardCredentials> updated = new HashMap<>(specificCredentials);
+        updated.put(url, credentials);
+        specificCredentials = Collections.unmodifiableMap(updated);
+        resolved = new ConcurrentHashMap<>();
     }
 
     /**
@@ -67,6 +79,45 @@ public class SmartCredentialsProvider extends CredentialsProvider {
      */
     public synchronized void addDefaultCredentials(StandardCredentials credentials) {
         defaultCredentials = credentials;
+        resolved = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the credentials used for a url.
+     *
+     * @param url the url
+     * @return the credentials for the url, the default credentials if there are none, or null
+     * @since 3.10.0
+     */
+    @CheckForNull
+    public StandardCredentials getCredentials(String url) {
+        StandardCredentials c = specificCredentials.get(url);
+        return c != null ? c : defaultCredentials;
+    }
+
+    /**
+     * Returns a value derived from the credentials of this provider, like
+     * the HTTP credentials of a URL, computing it only the first time it is
+     * requested. Values are forgotten when credentials are added or cleared.
+     * Does not lock once the value is computed.
+     *
+     * @param key identifies the value, for instance the URL
+     * @param resolver computes the value from this provider, may return null
+     * @param <V> type of the value
+     * @return the value, or null
+     * @since 3.10.0
+     */
+    @CheckForNull
+    @SuppressWarnings("unchecked")
+    public <V> V getResolved(String key, Function<SmartCredentialsProvider, V> resolver) {
+        /* Read before the credentials, a value computed while credentials change goes to the discarded map */
+        Map<String, Optional<Object>> current = resolved;
+        Optional<Object> value = current.get(key);
+        if (value == null) {
+            value = Optional.ofNullable(resolver.apply(this));
+            current.putIfAbsent(key, value);
+        }
+        return (V) value.orElse(null);
     }
 
     /** {@inheritDoc} */
@@ -77,7 +128,9 @@ public class SmartCredentialsProvider extends CredentialsProvider {
 
     /** {@inheritDoc} */
     @Override
-    public synchronized boolean supports(CredentialItem... credentialItems) {
+    public boolean supports(CredentialItem... credentialItems) {
+        StandardCredentials defaultCredentials = this.defaultCredentials;
+        Map<String, StandardCredentials> specificCredentials = this.specificCredentials;
         items:
         for (CredentialItem item : credentialItems) {
             if (supports(defaultCredentials, item)) {
@@ -111,7 +164,7 @@ public class SmartCredentialsProvider extends CredentialsProvider {
 
     /** {@inheritDoc} */
     @Override
-    public synchronized boolean get(URIish uri, CredentialItem... credentialItems) throws UnsupportedCredentialItem {
+    public boolean get(URIish uri, CredentialItem... credentialItems) throws UnsupportedCredentialItem {
         StandardCredentials c = specificCredentials.get(uri == null ? null : uri.toString());
         if (c == null) {
             c = defaultCredentials;
@@ -0,0 +1,266 @@
+package org.jenkinsci.plugins.gitclient.trilead;
+
+import com.cloudbees.jenkins.plugins.sshcredentials.SSHUserPrivateKey;
+import com.cloudbees.plugins.credentials.common.StandardUsernameCredentials;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+import com.trilead.ssh2.Connection;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Util;
+import hudson.util.Secret;
+import jenkins.util.Timer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM wide pool of authenticated Trilead connections, used by
+ * {@link TrileadSessionFactory} when enabled with
+ * <code>-Dorg.jenkinsci.plugins.gitclient.trilead.TrileadConnectionPool.enabled=true</code>.
+ * <p>
+ * Connections are pooled by host, port, user name and credentials, so a
+ * connection is only reused with credentials holding the same id and the
+ * same secrets as the ones which authenticated it. Each session taken from the pool runs its commands on
+ * new channels of the pooled connection. A connection carries at most
+ * <code>maxSessionsPerConnection</code> (default 8) sessions at a time,
+ * below the default <code>MaxSessions</code> of OpenSSH, more sessions open
+ * more connections. Connections without sessions for
+ * <code>idleSeconds</code> (default 60) are closed, as are connections
+ * which were lost.
+ */
+final class TrileadConnectionPool {
+
+    static final boolean ENABLED = Boolean.valueOf(System.getProperty(TrileadConnectionPool.class.getName() + ".enabled", "false"));
+    static final int MAX_SESSIONS_PER_CONNECTION = Integer.getInteger(TrileadConnectionPool.class.getName() + ".maxSessionsPerConnection", 8);
+    static final long IDLE_SECONDS = Long.getLong(TrileadConnectionPool.class.getName() + ".idleSeconds", 60);
+
+    private static final TrileadConnectionPool INSTANCE = new TrileadConnectionPool(MAX_SESSIONS_PER_CONNECTION, IDLE_SECONDS, TimeUnit.SECONDS);
+
+    /**
+     * Opens and authenticates a new connection.
+     */
+    @FunctionalInterface
+    interface Connector {
+        /**
+         * @return the authenticated connection, or null if authentication failed
+         */
+        @CheckForNull
+        Connection connect() throws IOException, InterruptedException;
+    }
+
+    /**
+     * Identifies the connections which can be shared.
+     */
+    static final class Key {
+        private final String host;
+        private final int port;
+        private final String username;
+        private final String credentialsKey;
+        /* Only set when the secrets of the credentials are not known, the same object is then required */
+        private final StandardUsernameCredentials credentials;
+
+        Key(@NonNull String host, int port, @CheckForNull String username, @NonNull StandardUsernameCredentials credentials) {
+            this.host = host;
+            this.port = port;
+            this.username = username;
+            this.credentialsKey = credentialsKey(credentials);
+            this.credentials = credentialsKey == null ? credentials : null;
+        }
+
+        /* Credentials with the same id may hold different secrets, the key holds a digest of the secrets */
+        @CheckForNull
+        private static String credentialsKey(StandardUsernameCredentials credentials) {
+            StringBuilder secrets = new StringBuilder(credentials.getUsername()).append('\n');
+            if (credentials instanceof SSHUserPrivateKey) {
+                SSHUserPrivateKey sshUser = (SSHUserPrivateKey) credentials;
+                for (String privateKey : sshUser.getPrivateKeys()) {
+                    secrets.append(privateKey).append('\n');
+                }
+                secrets.append(Secret.toString(sshUser.getPassphrase()));
+            } else if (credentials instanceof StandardUsernamePasswordCredentials) {
+                secrets.append(Secret.toString(((StandardUsernamePasswordCredentials) credentials).getPassword()));
+            } else {
+                return null;
+            }
+            try {
+                byte[] hash = MessageDigest.getInstance("SHA-256").digest(secrets.toString().getBytes(StandardCharsets.UTF_8));
+                return credentials.getId() + '/' + Util.toHexString(hash);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return host.equals(other.host) && port == other.port && Objects.equals(username, other.username)
+                    && Objects.equals(credentialsKey, other.credentialsKey) && credentials == other.credentials;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, port, username, credentialsKey, System.identityHashCode(credentials));
+        }
+    }
+
+    private static final class Pooled {
+        private final Key key;
+        private final Connection con;
+        private int sessions;
+        private long lastUsed;
+        private volatile boolean lost;
+
+        Pooled(Key key, Connection con) {
+            this.key = key;
+            this.con = con;
+            con.addConnectionMonitor(reason -> lost = true);
+        }
+    }
+
+    /**
+     * Session on a pooled connection, returns the connection to the pool
+     * when disconnected.
+     */
+    private final class PooledSession extends TrileadSession {
+        private final Pooled pooled;
+        private boolean disconnected;
+
+        PooledSession(Pooled pooled) {
+            super(pooled.con);
+            this.pooled = pooled;
+        }
+
+        @Override
+        public void disconnect() {
+            synchronized (this) {
+                if (disconnected) {
+                    return;
+                }
+                disconnected = true;
+            }
+            release(pooled);
+        }
+    }
+
+    private final int maxSessionsPerConnection;
+    private final long idleTimeoutMillis;
+    private final Map<Key, List<Pooled>> connections = new HashMap<>();
+    private boolean idleCheckScheduled;
+
+    TrileadConnectionPool(int maxSessionsPerConnection, long idleTimeout, TimeUnit unit) {
+        this.maxSessionsPerConnection = Math.max(1, maxSessionsPerConnection);
+        this.idleTimeoutMillis = unit.toMillis(idleTimeout);
+    }
+
+    static TrileadConnectionPool get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a session on a pooled connection, opening a new connection if
+     * all pooled connections for the key are lost or busy.
+     *
+     * @param key identifies the connections which can be used
+     * @param connector opens a new connection
+     * @return a session, or null if the connector failed to authenticate
+     * @throws IOException if the connection could not be opened
+     * @throws InterruptedException if interrupted while opening the connection
+     */
+    @CheckForNull
+    TrileadSession getSession(@NonNull Key key, @NonNull Connector connector) throws IOException, InterruptedException {
+        synchronized (this) {
+            List<Pooled> pooled = connections.get(key);
+            if (pooled != null) {
+                for (Pooled p : pooled) {
+                    if (!p.lost && p.sessions < maxSessionsPerConnection) {
+                        p.sessions++;
+                        return new PooledSession(p);
+                    }
+                }
+            }
+        }
+        /* Connect without holding the lock, other hosts should not wait for a slow one */
+        Connection con = connector.connect();
+        if (con == null) {
+            return null;
+        }
+        Pooled p = new Pooled(key, con);
+        p.sessions = 1;
+        synchronized (this) {
+            connections.computeIfAbsent(key, k -> new ArrayList<>()).add(p);
+        }
+        return new PooledSession(p);
+    }
+
+    private synchronized void release(Pooled p) {
+        p.sessions--;
+        p.lastUsed = System.currentTimeMillis();
+        if (p.lost) {
+            remove(p);
+        } else if (p.sessions == 0) {
+            scheduleIdleCheck(idleTimeoutMillis);
+        }
+    }
+
+    private void remove(Pooled p) {
+        List<Pooled> pooled = connections.get(p.key);
+        if (pooled != null && pooled.remove(p) && pooled.isEmpty()) {
+            connections.remove(p.key);
+        }
+        p.con.close();
+    }
+
+    private void scheduleIdleCheck(long delayMillis) {
+        if (idleCheckScheduled) {
+            return;
+        }
+        idleCheckScheduled = true;
+        Timer.get().schedule(this::idleCheck, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void idleCheck() {
+        idleCheckScheduled = false;
+        long now = System.currentTimeMillis();
+        long nextCheck = Long.MAX_VALUE;
+        List<Pooled> closing = new ArrayList<>();
+        for (List<Pooled> pooled : connections.values()) {
+            for (Pooled p : pooled) {
+                if (p.sessions > 0) {
+                    continue;
+                }
+                long idle = now - p.lastUsed;
+                if (p.lost || idle >= idleTimeoutMillis) {
+                    closing.add(p);
+                } else {
+                    nextCheck = Math.min(nextCheck, idleTimeoutMillis - idle);
+                }
+            }
+        }
+        for (Pooled p : closing) {
+            remove(p);
+        }
+        if (nextCheck != Long.MAX_VALUE) {
+            scheduleIdleCheck(nextCheck);
+        }
+    }
+
+    /* For tests */
+    synchronized int size() {
+        int size = 0;
+        for (List<Pooled> pooled : connections.values()) {
+            size += pooled.size();
+        }
+        return size;
+    }
+}
@@ -1,7 +1,9 @@
 package org.jenkinsci.plugins.gitclient.trilead;
 
 import com.cloudbees.jenkins.plugins.sshcredentials.SSHAuthenticator;
+import com.cloudbees.plugins.credentials.common.StandardUsernameCredentials;
 import com.trilead.ssh2.Connection;
+import hudson.model.TaskListener;
 import org.eclipse.jgit.errors.TransportException;
 import org.eclipse.jgit.errors.UnsupportedCredentialItem;
 import org.eclipse.jgit.transport.CredentialsProvider;
@@ -24,26 +26,49 @@ public class TrileadSessionFactory extends SshSessionFactory {
         try {
             int p = uri.getPort();
             if (p<0)    p = 22;
-            Connection con = new Connection(uri.getHost(), p);
-            con.setTCPNoDelay(true);
-            con.connect();  // TODO: host key check
 
-            boolean authenticated;
+            final StandardUsernameCredentials credentials;
+            final String username;
+            final TaskListener listener;
             if (credentialsProvider instanceof SmartCredentialsProvider) {
                 final SmartCredentialsProvider smart = (SmartCredentialsProvider) credentialsProvider;
                 StandardUsernameCredentialsCredentialItem
                         item = new StandardUsernameCredentialsCredentialItem("Credentials for " + uri, false);
-                authenticated = smart.supports(item)
-                        && smart.get(uri, item)
-                        && SSHAuthenticator.newInstance(con, item.getValue(), uri.getUser())
-                        .authenticate(smart.listener);
+                credentials = smart.supports(item) && smart.get(uri, item) ? item.getValue() : null;
+                username = uri.getUser();
+                listener = smart.listener;
             } else if (credentialsProvider instanceof CredentialsProviderImpl) {
                 CredentialsProviderImpl sshcp = (CredentialsProviderImpl) credentialsProvider;
-
-                authenticated = SSHAuthenticator.newInstance(con, sshcp.cred).authenticate(sshcp.listener);
+                credentials = sshcp.cred;
+                username = null;
+                listener = sshcp.listener;
             } else {
-                authenticated = false;
+                credentials = null;
+                username = null;
+                listener = null;
+            }
+
+            if (TrileadConnectionPool.ENABLED && credentials != null) {
+                final int port = p;
+                TrileadSession session = TrileadConnectionPool.get().getSession(
+                        new TrileadConnectionPool.Key(uri.getHost(), port, username, credentials),
+                        () -> {
+                            Connection con = connect(uri.getHost(), port);
+                            if (SSHAuthenticator.newInstance(con, credentials, username).authenticate(listener)) {
+                                return con;
+                            }
+                            con.close();
+                            return null;
+                        });
+                if (session == null)
+                    throw new TransportException("Authentication failure");
+                return session;
             }
+
+            Connection con = connect(uri.getHost(), p);
+
+            boolean authenticated = credentials != null
+                    && SSHAuthenticator.newInstance(con, credentials, username).authenticate(listener);
             if (!authenticated && con.isAuthenticationComplete())
                 throw new TransportException("Authentication failure");
 
@@ -53,6 +78,13 @@ public class TrileadSessionFactory extends SshSessionFactory {
         }
     }
 
+    private static Connection connect(String host, int port) throws IOException {
+        Connection con = new Connection(host, port);
+        con.setTCPNoDelay(true);
+        con.connect();  // TODO: host key check
+        return con;
+    }
+
     /** {@inheritDoc} */
     @Override
     public String getType() {
@@ -0,0 +1,148 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+import hudson.plugins.git.GitException;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BackgroundPrefetchTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final BackgroundPrefetch prefetch = new BackgroundPrefetch(1, 3600000, TimeUnit.MILLISECONDS, Double.MAX_VALUE, 3, 24, false);
+
+    private File repository() throws Exception {
+        File dir = tempFolder.newFolder();
+        assertThat(new File(dir, ".git").mkdir(), is(true));
+        return dir;
+    }
+
+    private void waitForDue() throws InterruptedException {
+        Thread.sleep(10);
+    }
+
+    @Test
+    public void prefetchOncePerHost() throws Exception {
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger second = new AtomicInteger();
+        AtomicInteger other = new AtomicInteger();
+        prefetch.register(repository(), "https://github.com/jenkinsci/git-client-plugin.git", first::incrementAndGet);
+        prefetch.register(repository(), "https://github.com/jenkinsci/git-plugin.git", second::incrementAndGet);
+        prefetch.register(repository(), "https://gitlab.com/jenkinsci/git-plugin.git", other::incrementAndGet);
+        waitForDue();
+        prefetch.prefetchDue();
+        assertThat(first.get() + second.get(), is(1));
+        assertThat(other.get(), is(1));
+        prefetch.prefetchDue();
+        assertThat(first.get() + second.get(), is(1)); // host interval not elapsed
+    }
+
+    @Test
+    public void localAndDeletedRepositoriesForgotten() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        prefetch.register(repository(), "/tmp/local/repo.git", count::incrementAndGet);
+        assertThat(prefetch.size(), is(0));
+        File dir = repository();
+        prefetch.register(dir, "https://github.com/jenkinsci/git-client-plugin.git", count::incrementAndGet);
+        assertThat(prefetch.size(), is(1));
+        assertThat(new File(dir, ".git").delete(), is(true));
+        waitForDue();
+        prefetch.prefetchDue();
+        assertThat(prefetch.size(), is(0));
+        assertThat(count.get(), is(0));
+    }
+
+    @Test
+    public void leastRecentlyRegisteredForgotten() throws Exception {
+        BackgroundPrefetch small = new BackgroundPrefetch(1, 3600000, TimeUnit.MILLISECONDS, Double.MAX_VALUE, 2, 24, false);
+        AtomicInteger kept = new AtomicInteger();
+        AtomicInteger forgotten = new AtomicInteger();
+        File dir = repository();
+        small.register(dir, "https://github.com/jenkinsci/git-client-plugin.git", kept::incrementAndGet);
+        small.register(repository(), "https://github.com/jenkinsci/git-plugin.git", forgotten::incrementAndGet);
+        small.register(dir, "https://github.com/jenkinsci/git-client-plugin.git", kept::incrementAndGet);
+        small.register(repository(), "https://gitlab.com/jenkinsci/git-plugin.git", kept::incrementAndGet);
+        assertThat(small.size(), is(2));
+        waitForDue();
+        small.prefetchDue();
+        assertThat(kept.get(), is(2));
+        assertThat(forgotten.get(), is(0));
+    }
+
+    @Test
+    public void repositoriesInUseSkipped() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        File dir = repository();
+        prefetch.register(dir, "https://github.com/jenkinsci/git-client-plugin.git", count::incrementAndGet);
+        waitForDue();
+        try (BackgroundPrefetch.InUse fetch = BackgroundPrefetch.use(dir);
+             BackgroundPrefetch.InUse checkout = BackgroundPrefetch.use(dir)) {
+            fetch.close();
+            prefetch.prefetchDue();
+            assertThat(count.get(), is(0)); // the checkout still runs
+        }
+        assertThat(BackgroundPrefetch.isInUse(dir), is(false));
+        prefetch.prefetchDue();
+        assertThat(count.get(), is(1));
+    }
+
+    @Test
+    public void failedPrefetchBacksOff() throws Exception {
+        BackgroundPrefetch slow = new BackgroundPrefetch(1000, 1, TimeUnit.MILLISECONDS, Double.MAX_VALUE, 2, 24, false);
+        AtomicInteger count = new AtomicInteger();
+        slow.register(repository(), "https://github.com/jenkinsci/git-client-plugin.git", () -> {
+            count.incrementAndGet();
+            throw new GitException("unreachable");
+        });
+        Thread.sleep(1050);
+        slow.prefetchDue();
+        assertThat(count.get(), is(1));
+        Thread.sleep(1050); // host interval of at least one second, and interval
+        slow.prefetchDue();
+        assertThat(count.get(), is(1)); // waits two intervals after the failure
+    }
+
+    @Test
+    public void idleRepositoriesForgotten() throws Exception {
+        BackgroundPrefetch idle = new BackgroundPrefetch(100, 1, TimeUnit.MILLISECONDS, Double.MAX_VALUE, 2, 2, false);
+        AtomicInteger count = new AtomicInteger();
+        File dir = repository();
+        String url = "https://github.com/jenkinsci/git-client-plugin.git";
+        /* The prefetch registers itself again, as the fetch of a client does */
+        BackgroundPrefetch.Prefetch[] prefetch = new BackgroundPrefetch.Prefetch[1];
+        prefetch[0] = () -> {
+            count.incrementAndGet();
+            idle.register(dir, url, prefetch[0]);
+        };
+        idle.register(dir, url, prefetch[0]);
+        Thread.sleep(1100); // host interval of at least one second
+        idle.prefetchDue();
+        assertThat(count.get(), is(0)); // not fetched by a build for more than two intervals
+        assertThat(idle.size(), is(0));
+
+        idle.register(dir, url, prefetch[0]);
+        Thread.sleep(150);
+        idle.prefetchDue();
+        assertThat(count.get(), is(1));
+        Thread.sleep(100);
+        idle.prefetchDue();
+        assertThat(idle.size(), is(0));
+    }
+
+    @Test
+    public void disabledByDefault() throws Exception {
+        if (BackgroundPrefetch.INTERVAL_SECONDS == 0) {
+            assertThat(BackgroundPrefetch.get().isEnabled(), is(false));
+        }
+        assertThat(BackgroundPrefetch.refSpec("https://github.com/jenkinsci/git-client-plugin.git").getDestination(), startsWith("refs/prefetch/"));
+    }
+}
@@ -1,8 +1,12 @@
 package org.jenkinsci.plugins.gitclient;
 
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
 import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpServer;
 import hudson.EnvVars;
 import hudson.FilePath;
+import hudson.ProxyConfiguration;
 import hudson.model.TaskListener;
 import hudson.plugins.git.Branch;
 import hudson.plugins.git.GitException;
@@ -13,10 +17,13 @@ import hudson.plugins.git.Revision;
 import java.io.File;
 import java.io.IOException;
 import java.io.FileNotFoundException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -35,6 +42,11 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
 
@@ -43,8 +55,10 @@ import org.eclipse.jgit.internal.storage.file.FileRepository;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.transport.Daemon;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.transport.resolver.FileResolver;
 import org.eclipse.jgit.lib.Constants;
 
 import static org.hamcrest.io.FileMatchers.*;
@@ -112,6 +126,8 @@ public class GitClientTest {
     private final boolean CLI_GIT_SUPPORTS_SUBMODULE_RENAME;
     private final boolean CLI_GIT_SUPPORTS_SYMREF;
     private final boolean CLI_GIT_SUPPORTS_REV_LIST_NO_WALK;
+    private final boolean CLI_GIT_SUPPORTS_PARTIAL_CLONE;
+    private final boolean CLI_GIT_SUPPORTS_WORKTREE_CONFIG;
     private final boolean LFS_SUPPORTS_SPARSE_CHECKOUT;
 
     @Rule
@@ -133,6 +149,8 @@ public class GitClientTest {
         CLI_GIT_SUPPORTS_SUBMODULE_RENAME = cliGitClient.isAtLeastVersion(1, 9, 0, 0);
         CLI_GIT_SUPPORTS_SYMREF = cliGitClient.isAtLeastVersion(2, 8, 0, 0);
         CLI_GIT_SUPPORTS_REV_LIST_NO_WALK = cliGitClient.isAtLeastVersion(1, 5, 3, 0);
+        CLI_GIT_SUPPORTS_PARTIAL_CLONE = cliGitClient.isAtLeastVersion(2, 19, 0, 0);
+        CLI_GIT_SUPPORTS_WORKTREE_CONFIG = cliGitClient.isAtLeastVersion(2, 20, 0, 0);
 
         boolean gitLFSExists;
         try {
@@ -888,6 +906,245 @@ public class GitClientTest {
         assertTrue("abs(.) is not a bare repository",gitAPI.isBareRepository(dotFile.getAbsolutePath()));
     }
 
+    /* Answer of a query of command line git, which must be the same with and without in process reads */
+    private <T> T readInProcessAndWithGit(Callable<T> query) throws Exception {
+        boolean inProcessReads = CliGitAPIImpl.IN_PROCESS_READS;
+        try {
+            CliGitAPIImpl.IN_PROCESS_READS = false;
+            T withGit = query.call();
+            CliGitAPIImpl.IN_PROCESS_READS = true;
+            T inProcess = query.call();
+            assertThat(inProcess, is(withGit));
+            return inProcess;
+        } finally {
+            CliGitAPIImpl.IN_PROCESS_READS = inProcessReads;
+        }
+    }
+
+    @Test
+    public void testInProcessReads() throws Exception {
+        if (!gitImplName.equals("git")) {
+            return; // JGit always reads the repository in process
+        }
+        CliGitAPIImpl cliClient = (CliGitAPIImpl) gitClient;
+        commitOneFile();
+        gitClient.setRemoteUrl("upstream", "https://example.com/upstream.git");
+        cliClient.setSubmoduleUrl("module", "https://example.com/module.git");
+
+        assertThat(readInProcessAndWithGit(() -> gitClient.hasGitRepo()), is(true));
+        assertThat(readInProcessAndWithGit(() -> gitClient.hasGitRepo(false)), is(true));
+        assertThat(readInProcessAndWithGit(() -> gitClient.getRemoteUrl("origin")), is(srcRepoDir.getAbsolutePath()));
+        assertThat(readInProcessAndWithGit(() -> gitClient.getRemoteUrl("upstream")), is("https://example.com/upstream.git"));
+        assertThat(readInProcessAndWithGit(() -> cliClient.getDefaultRemote("upstream")), is("upstream"));
+        readInProcessAndWithGit(() -> cliClient.getDefaultRemote("missing"));
+        assertThat(readInProcessAndWithGit(() -> cliClient.getSubmoduleUrl("module")), is("https://example.com/module.git"));
+        assertThat(readInProcessAndWithGit(() -> gitClient.refExists("refs/heads/" + defaultBranchName)), is(true));
+        assertThat(readInProcessAndWithGit(() -> gitClient.refExists(defaultBranchName)), is(true));
+        assertThat(readInProcessAndWithGit(() -> gitClient.refExists("refs/heads/missing")), is(false));
+    }
+
+    @Test
+    public void testInProcessReadsWithInclude() throws Exception {
+        if (!gitImplName.equals("git")) {
+            return; // JGit always reads the repository in process
+        }
+        CliGitAPIImpl cliClient = (CliGitAPIImpl) gitClient;
+        commitOneFile();
+        File included = tempFolder.newFile("included.config");
+        Files.write(included.toPath(), "[remote \"included\"]\n\turl = https://example.com/included.git\n".getBytes(StandardCharsets.UTF_8));
+        new CliGitCommand(gitClient).run("config", "include.path", included.getAbsolutePath());
+
+        assertThat(readInProcessAndWithGit(() -> gitClient.hasGitRepo()), is(true));
+        assertThat(readInProcessAndWithGit(() -> gitClient.getRemoteUrl("included")), is("https://example.com/included.git"));
+        assertThat(readInProcessAndWithGit(() -> gitClient.getRemoteUrl("origin")), is(srcRepoDir.getAbsolutePath()));
+        assertThat(readInProcessAndWithGit(() -> cliClient.getDefaultRemote("included")), is("included"));
+        assertThat(readInProcessAndWithGit(() -> gitClient.refExists("refs/heads/" + defaultBranchName)), is(true));
+    }
+
+    @Test
+    public void testInProcessReadsInWorktree() throws Exception {
+        if (!gitImplName.equals("git") || !CLI_GIT_SUPPORTS_WORKTREE_CONFIG) {
+            return; // JGit always reads the repository in process
+        }
+        ObjectId commitA = commitOneFile();
+        File worktreeDir = tempFolder.newFolder();
+        new CliGitCommand(gitClient).run("worktree", "add", "--detach", worktreeDir.getAbsolutePath(), commitA.name());
+        CliGitAPIImpl worktreeClient = (CliGitAPIImpl) Git.with(TaskListener.NULL, new EnvVars()).in(worktreeDir).using(gitImplName).getClient();
+
+        assertThat(readInProcessAndWithGit(() -> worktreeClient.hasGitRepo()), is(true));
+        assertThat(readInProcessAndWithGit(() -> worktreeClient.hasGitRepo(false)), is(true));
+        assertThat(readInProcessAndWithGit(() -> worktreeClient.getRemoteUrl("origin")), is(srcRepoDir.getAbsolutePath()));
+        assertThat(readInProcessAndWithGit(() -> worktreeClient.getDefaultRemote("origin")), is("origin"));
+        assertThat(readInProcessAndWithGit(() -> worktreeClient.refExists("refs/heads/" + defaultBranchName)), is(true));
+        assertThat(readInProcessAndWithGit(() -> worktreeClient.refExists("refs/heads/missing")), is(false));
+    }
+
+    @Test
+    public void testInProcessReadsSparseCheckout() throws Exception {
+        if (!gitImplName.equals("git")) {
+            return; // JGit always reads the repository in process
+        }
+        commitFile("a/A.txt", "A", "File in a");
+        ObjectId commit = commitFile("b/B.txt", "B", "File in b");
+        boolean inProcessReads = CliGitAPIImpl.IN_PROCESS_READS;
+        CliGitAPIImpl.IN_PROCESS_READS = true;
+        try {
+            gitClient.checkout().ref(commit.name()).sparseCheckoutPaths(Collections.singletonList("a")).execute();
+            assertThat(new File(repoRoot, "a/A.txt"), is(anExistingFile()));
+            assertThat(new File(repoRoot, "b/B.txt"), is(not(anExistingFile())));
+            /* Deactivating requires reading core.sparsecheckout */
+            gitClient.checkout().ref(commit.name()).sparseCheckoutPaths(Collections.emptyList()).execute();
+            assertThat(new File(repoRoot, "b/B.txt"), is(anExistingFile()));
+        } finally {
+            CliGitAPIImpl.IN_PROCESS_READS = inProcessReads;
+        }
+    }
+
+    private <T> T readWithCatFileBatchAndWithGit(Callable<T> query) throws Exception {
+        boolean useCatFileBatch = CliGitAPIImpl.USE_CAT_FILE_BATCH;
+        try {
+            CliGitAPIImpl.USE_CAT_FILE_BATCH = false;
+            T withGit = query.call();
+            CliGitAPIImpl.USE_CAT_FILE_BATCH = true;
+            T withCatFileBatch = query.call();
+            assertThat(withCatFileBatch, is(withGit));
+            return withCatFileBatch;
+        } finally {
+            CliGitAPIImpl.USE_CAT_FILE_BATCH = useCatFileBatch;
+            ((CliGitAPIImpl) gitClient).close();
+        }
+    }
+
+    @Test
+    public void testCatFileBatchLsTree() throws Exception {
+        if (!gitImplName.equals("git")) {
+            return; // JGit does not run git
+        }
+        commitFile("dir/sub/A.txt", "A", "File in a subdirectory");
+        commitFile("dir/B.txt", "B", "File in a directory");
+        ObjectId commit = commitFile("C.txt", "C", "File at the root");
+
+        List<IndexEntry> tree = readWithCatFileBatchAndWithGit(() -> gitClient.lsTree("HEAD", false));
+        assertThat(tree, hasItem(new IndexEntry("040000", "tree", gitClient.revParse("HEAD:dir").name(), "dir")));
+        List<IndexEntry> recursive = readWithCatFileBatchAndWithGit(() -> gitClient.lsTree(commit.name(), true));
+        assertThat(recursive, hasItem(new IndexEntry("100644", "blob", gitClient.revParse("HEAD:dir/sub/A.txt").name(), "dir/sub/A.txt")));
+        readWithCatFileBatchAndWithGit(() -> gitClient.lsTree("HEAD~1", true));
+    }
+
+    @Test
+    public void testCatFileBatchGetTagMessage() throws Exception {
+        if (!gitImplName.equals("git")) {
+            return; // JGit does not run git
+        }
+        commitOneFile("Subject of the commit\n\nBody of the commit");
+        gitClient.tag("annotated", "First line\n\nSecond paragraph");
+        gitClient.ref("refs/tags/lightweight");
+        /* git tag -n does not print the signature, a signature block in the message is enough to check that */
+        File message = tempFolder.newFile();
+        Files.write(message.toPath(), ("Signed tag\n\nsecond paragraph\n"
+                + "-----BEGIN PGP SIGNATURE-----\n\niQEzBAABCAAdFiEE\n-----END PGP SIGNATURE-----\n").getBytes(StandardCharsets.UTF_8));
+        new CliGitCommand(gitClient).run("tag", "-a", "signed", "-F", message.getAbsolutePath());
+
+        assertThat(readWithCatFileBatchAndWithGit(() -> gitClient.getTagMessage("annotated")), is("First line\n\nSecond paragraph"));
+        assertThat(readWithCatFileBatchAndWithGit(() -> gitClient.getTagMessage("lightweight")), is("Subject of the commit\n\nBody of the commit"));
+        assertThat(readWithCatFileBatchAndWithGit(() -> gitClient.getTagMessage("signed")), is("Signed tag\n\nsecond paragraph"));
+    }
+
+    /* Credential files written by the client, they are created next to the workspace */
+    private Set<String> credentialFiles() {
+        Set<String> names = new HashSet<>();
+        String[] files = new File(repoRoot.getAbsolutePath() + "@tmp").list((dir, name) -> name.startsWith("jenkins-gitclient-"));
+        if (files != null) {
+            names.addAll(Arrays.asList(files));
+        }
+        return names;
+    }
+
+    private void listRemoteReferencesWithCredentials() throws Exception {
+        UsernamePasswordCredentialsImpl credentials = new UsernamePasswordCredentialsImpl(CredentialsScope.GLOBAL,
+                "reused", "reused credential files", "user", "secret");
+        Map<String, ObjectId> references = ((CliGitAPIImpl) gitClient).getRemoteReferences(srcRepoDir.getAbsolutePath(),
+                credentials, null, true, false);
+        assertThat(references.isEmpty(), is(false));
+    }
+
+    @Test
+    public void testReusedCredentialFilesWipedByClose() throws Exception {
+        if (!gitImplName.equals("git")) {
+            return; // JGit does not write credential files
+        }
+        boolean reuseCredentialFiles = CliGitAPIImpl.REUSE_CREDENTIAL_FILES;
+        CliGitAPIImpl.REUSE_CREDENTIAL_FILES = true;
+        try {
+            listRemoteReferencesWithCredentials();
+            Set<String> written = credentialFiles();
+            assertThat(written, is(not(empty())));
+            listRemoteReferencesWithCredentials();
+            assertThat(credentialFiles(), is(written));
+            ((CliGitAPIImpl) gitClient).close();
+            assertThat(credentialFiles(), is(empty()));
+        } finally {
+            CliGitAPIImpl.REUSE_CREDENTIAL_FILES = reuseCredentialFiles;
+        }
+    }
+
+    @Test
+    public void testReusedCredentialFilesWrittenConcurrently() throws Exception {
+        if (!gitImplName.equals("git")) {
+            return; // JGit does not write credential files
+        }
+        boolean reuseCredentialFiles = CliGitAPIImpl.REUSE_CREDENTIAL_FILES;
+        CliGitAPIImpl.REUSE_CREDENTIAL_FILES = true;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            listRemoteReferencesWithCredentials();
+            int count = credentialFiles().size();
+            ((CliGitAPIImpl) gitClient).close();
+            /* The files are written outside of the lock of the client, the files of all but one command are wiped */
+            List<Future<?>> commands = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                commands.add(executor.submit(() -> {
+                    listRemoteReferencesWithCredentials();
+                    return null;
+                }));
+            }
+            for (Future<?> command : commands) {
+                command.get(1, TimeUnit.MINUTES);
+            }
+            assertThat(credentialFiles(), hasSize(count));
+            try (CliGitAPIImpl client = (CliGitAPIImpl) gitClient) {
+                listRemoteReferencesWithCredentials();
+            }
+            assertThat(credentialFiles(), is(empty()));
+        } finally {
+            executor.shutdownNow();
+            CliGitAPIImpl.REUSE_CREDENTIAL_FILES = reuseCredentialFiles;
+        }
+    }
+
+    @Test
+    public void testReusedCredentialFilesWipedWhenIdle() throws Exception {
+        if (!gitImplName.equals("git")) {
+            return; // JGit does not write credential files
+        }
+        boolean reuseCredentialFiles = CliGitAPIImpl.REUSE_CREDENTIAL_FILES;
+        int idleSeconds = CliGitAPIImpl.CREDENTIAL_FILES_IDLE_SECONDS;
+        CliGitAPIImpl.REUSE_CREDENTIAL_FILES = true;
+        CliGitAPIImpl.CREDENTIAL_FILES_IDLE_SECONDS = 1;
+        try {
+            listRemoteReferencesWithCredentials();
+            assertThat(credentialFiles(), is(not(empty())));
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+            while (!credentialFiles().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertThat(credentialFiles(), is(empty()));
+        } finally {
+            CliGitAPIImpl.REUSE_CREDENTIAL_FILES = reuseCredentialFiles;
+            CliGitAPIImpl.CREDENTIAL_FILES_IDLE_SECONDS = idleSeconds;
+        }
+    }
+
     @Test
     public void testGetRemoteUrl() throws Exception {
         assertEquals(srcRepoDir.getAbsolutePath(), gitClient.getRemoteUrl("origin"));
@@ -1684,6 +1941,427 @@ public class GitClientTest {
         assertNull(nonExistent);
     }
 
+    @Test
+    public void testGetHeadRevs() throws Exception {
+        String url = repoRoot.getAbsolutePath();
+
+        ObjectId commitA = commitOneFile();
+        gitClient.branch("feature-a");
+        gitClient.tag("tag-a", "Annotated tag on commit A");
+        ObjectId commitB = commitOneFile();
+
+        List<String> branchSpecs = Arrays.asList(defaultBranchName, "*/feature-*", "refs/tags/tag-a", "this branch doesn't exist");
+        Map<String, ObjectId> heads = gitClient.getHeadRevs(url, branchSpecs);
+        assertThat(heads.keySet(), containsInAnyOrder(defaultBranchName, "*/feature-*", "refs/tags/tag-a"));
+        assertThat(heads.get(defaultBranchName), is(commitB));
+        assertThat(heads.get("*/feature-*"), is(commitA));
+        assertThat(heads.get("refs/tags/tag-a"), is(commitA));
+        for (String branchSpec : heads.keySet()) {
+            assertThat(heads.get(branchSpec), is(gitClient.getHeadRev(url, branchSpec)));
+        }
+    }
+
+    @Test
+    public void testGetRemoteReferences_AnchoredPattern() throws Exception {
+        String url = repoRoot.getAbsolutePath();
+
+        ObjectId commitA = commitOneFile();
+        gitClient.branch("feature-a");
+        gitClient.tag("tag-a", "Annotated tag on commit A");
+
+        Map<String, ObjectId> features = gitClient.getRemoteReferences(url, "refs/heads/feature-*", false, false);
+        assertThat(features.keySet(), contains("refs/heads/feature-a"));
+        assertThat(features.get("refs/heads/feature-a"), is(commitA));
+        assertThat(gitClient.getRemoteReferences(url, "refs/tags/*", false, false).keySet(), contains("refs/tags/tag-a"));
+        assertThat(gitClient.getRemoteReferences(url, "refs/tags/*", true, false).keySet(), is(empty()));
+        assertThat(gitClient.getRemoteReferences(url, "refs/heads/*", false, true).keySet(), is(empty()));
+    }
+
+    @Test
+    public void testGetRemoteReferences_ProtocolV2() throws Exception {
+        String url = "file://" + repoRoot.getAbsolutePath();
+
+        ObjectId commitA = commitOneFile();
+        gitClient.branch("feature-a");
+        gitClient.tag("tag-a", "Annotated tag on commit A");
+
+        boolean cliProtocolV2 = CliGitAPIImpl.USE_PROTOCOL_V2;
+        boolean jgitProtocolV2 = JGitAPIImpl.USE_PROTOCOL_V2;
+        CliGitAPIImpl.USE_PROTOCOL_V2 = true;
+        JGitAPIImpl.USE_PROTOCOL_V2 = true;
+        try {
+            Map<String, ObjectId> features = gitClient.getRemoteReferences(url, "refs/heads/feature-*", false, false);
+            assertThat(features.keySet(), contains("refs/heads/feature-a"));
+            assertThat(features.get("refs/heads/feature-a"), is(commitA));
+            Map<String, ObjectId> tags = gitClient.getRemoteReferences(url, null, false, true);
+            assertThat(tags.keySet(), contains("refs/tags/tag-a"));
+            assertThat(gitClient.getRemoteReferences(url, null, true, false).keySet(), hasItem("refs/heads/feature-a"));
+            assertThat(gitClient.getRemoteReferences(url, null, true, false).keySet(), not(hasItem("refs/tags/tag-a")));
+            assertThat(gitClient.getRemoteReferences(url, "refs/tags/*", true, false).keySet(), is(empty()));
+            assertThat(gitClient.getHeadRev(url, "feature-a"), is(commitA));
+        } finally {
+            CliGitAPIImpl.USE_PROTOCOL_V2 = cliProtocolV2;
+            JGitAPIImpl.USE_PROTOCOL_V2 = jgitProtocolV2;
+        }
+    }
+
+    @Test
+    public void testRemoteReferences() throws Exception {
+        String url = repoRoot.getAbsolutePath();
+        String missingUrl = new File(repoRoot, "not-a-repository").getAbsolutePath();
+        ObjectId commitA = commitOneFile();
+
+        Map<String, Map<String, ObjectId>> references = new HashMap<>();
+        List<String> failures = new ArrayList<>();
+        gitClient.remoteReferences()
+                .repository(url, null)
+                .repository(missingUrl, null)
+                .headsOnly(true)
+                .threads(2)
+                .listener(new RemoteReferencesCommand.Listener() {
+                    @Override
+                    public void onReferences(String url, Map<String, ObjectId> refs) {
+                        references.put(url, refs);
+                    }
+
+                    @Override
+                    public void onFailure(String url, GitException e) {
+                        failures.add(url);
+                    }
+                })
+                .execute();
+        assertThat(references.keySet(), contains(url));
+        assertThat(references.get(url), is(gitClient.getRemoteReferences(url, null, true, false)));
+        assertThat(references.get(url).get("refs/heads/" + defaultBranchName), is(commitA));
+        assertThat(failures, contains(missingUrl));
+
+        assertThrows(GitException.class, () -> gitClient.remoteReferences()
+                .repository(missingUrl, null)
+                .listener((u, refs) -> fail("Unexpected references for " + u))
+                .execute());
+    }
+
+    @Test
+    public void testCloneWithFilter() throws Exception {
+        ObjectId commitA = commitOneFile();
+        new CliGitCommand(gitClient).run("config", "uploadpack.allowFilter", "true");
+
+        File cloneDir = tempFolder.newFolder();
+        GitClient cloneClient = Git.with(TaskListener.NULL, new EnvVars()).in(cloneDir).using(gitImplName).getClient();
+        cloneClient.clone_().url("file://" + repoRoot.getAbsolutePath()).filter("blob:none").execute();
+        if (gitImplName.equals("git") && CLI_GIT_SUPPORTS_PARTIAL_CLONE) {
+            CliGitCommand cloneCmd = new CliGitCommand(cloneClient);
+            assertThat(cloneCmd.run("config", "extensions.partialClone"), is(arrayContaining("origin")));
+            /* The file content is not downloaded until checkout */
+            assertThat(Arrays.asList(cloneCmd.run("rev-list", "--objects", "--missing=print", commitA.name())),
+                    hasItem(startsWith("?")));
+        }
+
+        cloneClient.checkout().ref(commitA.name()).execute();
+        assertThat(cloneClient.revParse(Constants.HEAD), is(commitA));
+        assertTrue("One-File.txt not checked out", new File(cloneDir, "One-File.txt").isFile());
+    }
+
+    @Test
+    public void testCloneWithReferenceCache() throws Exception {
+        ObjectId commitA = commitOneFile();
+        String url = "file://" + repoRoot.getAbsolutePath();
+        File cacheDir = tempFolder.newFolder();
+        File mirror = new ReferenceRepositoryCache(cacheDir, 1, TimeUnit.HOURS).mirrorOf(url);
+
+        File cloneDir = tempFolder.newFolder();
+        GitClient cloneClient = Git.with(TaskListener.NULL, new EnvVars()).in(cloneDir).using(gitImplName).getClient();
+        cloneClient.clone_().url(url).referenceCache(cacheDir.getAbsolutePath()).execute();
+        assertThat(new File(mirror, "objects"), is(anExistingDirectory()));
+        assertThat("Reference repository is not bare", new File(mirror, ".git").exists(), is(false));
+        File alternates = new File(cloneDir, ".git/objects/info/alternates");
+        assertThat(alternates, is(anExistingFile()));
+        assertThat(FileUtils.readFileToString(alternates, StandardCharsets.UTF_8), containsString(mirror.getName()));
+
+        cloneClient.checkout().ref(commitA.name()).execute();
+        assertThat(cloneClient.revParse(Constants.HEAD), is(commitA));
+    }
+
+    @Test
+    public void testCloneAsWorktree() throws Exception {
+        ObjectId commitA = commitOneFile();
+        String url = "file://" + repoRoot.getAbsolutePath();
+        File cacheDir = tempFolder.newFolder();
+        File mirror = new ReferenceRepositoryCache(cacheDir, 1, TimeUnit.HOURS).mirrorOf(url);
+
+        File cloneDir = tempFolder.newFolder();
+        GitClient cloneClient = Git.with(TaskListener.NULL, new EnvVars()).in(cloneDir).using(gitImplName).getClient();
+        cloneClient.clone_().url(url).referenceCache(cacheDir.getAbsolutePath()).worktree(true).execute();
+        if (gitImplName.equals("git") && CLI_GIT_SUPPORTS_WORKTREE_CONFIG) {
+            assertThat(new File(cloneDir, ".git"), is(anExistingFile()));
+            assertThat(new File(mirror, "worktrees"), is(anExistingDirectory()));
+        } else {
+            assertThat(new File(cloneDir, ".git"), is(anExistingDirectory()));
+        }
+        assertThat(cloneClient.getRemoteUrl("origin"), is(url));
+        assertThat(cloneClient.getRemoteBranches(), hasItem(hasProperty("name", is("origin/" + defaultBranchName))));
+        assertThat(cloneClient.getBranches(), hasItem(hasProperty("name", endsWith("origin/" + defaultBranchName))));
+
+        cloneClient.checkout().ref(commitA.name()).execute();
+        assertThat(cloneClient.revParse(Constants.HEAD), is(commitA));
+        assertThat(new File(cloneDir, "One-File.txt"), is(anExistingFile()));
+
+        /* A second clone into the same workspace replaces the worktree */
+        cloneClient.clone_().url(url).referenceCache(cacheDir.getAbsolutePath()).worktree(true).execute();
+        cloneClient.checkout().ref(commitA.name()).execute();
+        assertThat(cloneClient.revParse(Constants.HEAD), is(commitA));
+    }
+
+    @Test
+    public void testCloneAsWorktreeConcurrently() throws Exception {
+        ObjectId commitA = commitOneFile();
+        String url = "file://" + repoRoot.getAbsolutePath();
+        File cacheDir = tempFolder.newFolder();
+        File mirror = new ReferenceRepositoryCache(cacheDir, 1, TimeUnit.HOURS).mirrorOf(url);
+
+        /* Worktrees are added while concurrent clones update the mirror and its configuration */
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<GitClient>> clones = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                File cloneDir = tempFolder.newFolder();
+                clones.add(executor.submit(() -> {
+                    GitClient cloneClient = Git.with(TaskListener.NULL, new EnvVars()).in(cloneDir).using(gitImplName).getClient();
+                    cloneClient.clone_().url(url).referenceCache(cacheDir.getAbsolutePath()).worktree(true).execute();
+                    return cloneClient;
+                }));
+            }
+            for (Future<GitClient> clone : clones) {
+                GitClient cloneClient = clone.get(1, TimeUnit.MINUTES);
+                cloneClient.checkout().ref(commitA.name()).execute();
+                assertThat(cloneClient.revParse(Constants.HEAD), is(commitA));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        boolean worktrees = gitImplName.equals("git") && CLI_GIT_SUPPORTS_WORKTREE_CONFIG;
+        try (FileRepository mirrorRepo = new FileRepository(mirror)) {
+            StoredConfig config = mirrorRepo.getConfig();
+            /* Only mirrors with worktrees use the extension, older CLI git refuses it */
+            assertThat(config.getBoolean("extensions", "worktreeConfig", false), is(worktrees));
+            assertThat(config.getString("remote", "origin", "url"), is(url));
+        }
+        if (worktrees) {
+            assertThat(new File(mirror, "worktrees").list().length, is(4));
+        }
+    }
+
+    @Test
+    public void testCheckoutBranchInWorktrees() throws Exception {
+        if (!gitImplName.equals("git") || !CLI_GIT_SUPPORTS_WORKTREE_CONFIG) {
+            return; // only CLI git adds worktrees
+        }
+        ObjectId commitA = commitOneFile();
+        ObjectId commitB = commitOneFile("Second commit");
+        String url = "file://" + repoRoot.getAbsolutePath();
+        File cacheDir = tempFolder.newFolder();
+
+        /* Both workspaces share the branches of the mirror */
+        List<GitClient> cloneClients = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            File cloneDir = tempFolder.newFolder();
+            GitClient cloneClient = Git.with(TaskListener.NULL, new EnvVars()).in(cloneDir).using(gitImplName).getClient();
+            cloneClient.clone_().url(url).referenceCache(cacheDir.getAbsolutePath()).worktree(true).execute();
+            assertThat(new File(cloneDir, ".git"), is(anExistingFile()));
+            cloneClients.add(cloneClient);
+        }
+        GitClient first = cloneClients.get(0);
+        GitClient second = cloneClients.get(1);
+
+        first.checkout().ref(commitA.name()).branch("feature").deleteBranchIfExist(true).execute();
+        assertThat(first.revParse(Constants.HEAD), is(commitA));
+        second.checkout().ref(commitB.name()).branch("feature").deleteBranchIfExist(true).execute();
+        assertThat(second.revParse(Constants.HEAD), is(commitB));
+        second.checkout().ref(commitA.name()).branch("feature").execute();
+        assertThat(second.revParse(Constants.HEAD), is(commitA));
+        first.checkout().ref(commitB.name()).branch("feature").deleteBranchIfExist(true).execute();
+        assertThat(first.revParse(Constants.HEAD), is(commitB));
+        assertThat(new File(first.getWorkTree().getRemote(), "One-File.txt"), is(anExistingFile()));
+    }
+
+    @Test
+    public void testCloneWithBundle() throws Exception {
+        ObjectId commitA = commitOneFile();
+        File bundle = new File(tempFolder.newFolder(), "repo.bundle");
+        CliGitAPIImpl bundleClient = (CliGitAPIImpl) Git.with(TaskListener.NULL, new EnvVars()).in(repoRoot).using("git").getClient();
+        bundleClient.launchCommand("bundle", "create", bundle.getAbsolutePath(), "--all");
+        ObjectId commitB = commitOneFile("Commit after the bundle");
+        String url = "file://" + repoRoot.getAbsolutePath();
+
+        File cloneDir = tempFolder.newFolder();
+        GitClient cloneClient = Git.with(TaskListener.NULL, new EnvVars()).in(cloneDir).using(gitImplName).getClient();
+        cloneClient.clone_().url(url).bundle(bundle.getAbsolutePath()).execute();
+        assertThat(cloneClient.revParse("origin/" + defaultBranchName), is(commitB));
+        assertThat(cloneClient.isCommitInRepo(commitA), is(true));
+        assertThat(cloneClient.getRemoteUrl("origin"), is(url));
+
+        /* A missing bundle does not fail the clone */
+        File missingDir = tempFolder.newFolder();
+        GitClient missingClient = Git.with(TaskListener.NULL, new EnvVars()).in(missingDir).using(gitImplName).getClient();
+        missingClient.clone_().url(url).bundle(new File(bundle.getParentFile(), "missing.bundle").toURI().toString()).execute();
+        assertThat(missingClient.revParse("origin/" + defaultBranchName), is(commitB));
+    }
+
+    @Test
+    public void testCloneWithBundleThroughProxy() throws Exception {
+        ObjectId commitA = commitOneFile();
+        File bundle = new File(tempFolder.newFolder(), "repo.bundle");
+        CliGitAPIImpl bundleClient = (CliGitAPIImpl) Git.with(TaskListener.NULL, new EnvVars()).in(repoRoot).using("git").getClient();
+        bundleClient.launchCommand("bundle", "create", bundle.getAbsolutePath(), "--all");
+        String url = "file://" + repoRoot.getAbsolutePath();
+
+        /* The bundle host does not resolve, only the proxy can serve it */
+        List<String> proxied = Collections.synchronizedList(new ArrayList<>());
+        HttpServer proxyServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        proxyServer.createContext("/", exchange -> {
+            proxied.add(exchange.getRequestURI().toString());
+            exchange.sendResponseHeaders(200, bundle.length());
+            try (OutputStream out = exchange.getResponseBody()) {
+                Files.copy(bundle.toPath(), out);
+            }
+        });
+        proxyServer.start();
+        try {
+            File cloneDir = tempFolder.newFolder();
+            GitClient cloneClient = Git.with(TaskListener.NULL, new EnvVars()).in(cloneDir).using(gitImplName).getClient();
+            cloneClient.setProxy(new ProxyConfiguration("127.0.0.1", proxyServer.getAddress().getPort()));
+            cloneClient.clone_().url(url).bundle("http://bundle.example.invalid/repo.bundle").execute();
+            assertThat(proxied, contains("http://bundle.example.invalid/repo.bundle"));
+            assertThat(cloneClient.isCommitInRepo(commitA), is(true));
+        } finally {
+            proxyServer.stop(0);
+        }
+    }
+
+    @Test
+    public void testFetchSkipIfUpToDate() throws Exception {
+        ObjectId commitA = commitOneFile();
+        URIish url = new URIish("file://" + repoRoot.getAbsolutePath());
+        List<RefSpec> refspecs = Collections.singletonList(new RefSpec("+refs/heads/*:refs/remotes/origin/*"));
+        File fetchDir = tempFolder.newFolder();
+        GitClient fetchClient = Git.with(TaskListener.NULL, new EnvVars()).in(fetchDir).using(gitImplName).getClient();
+        fetchClient.init_().workspace(fetchDir.getAbsolutePath()).execute();
+
+        List<Boolean> skipped = Collections.synchronizedList(new ArrayList<>());
+        GitOperationListener recording = event -> {
+            if (event.getOperation().equals("fetch")) {
+                skipped.add(event.isSkipped());
+            }
+        };
+        GitOperationListener.register(recording);
+        try {
+            fetchClient.fetch_().from(url, refspecs).skipIfUpToDate(true).execute();
+            assertThat(fetchClient.revParse("origin/" + defaultBranchName), is(commitA));
+            fetchClient.fetch_().from(url, refspecs).prune(true).skipIfUpToDate(true).execute();
+
+            ObjectId commitB = commitOneFile("Second commit");
+            fetchClient.fetch_().from(url, refspecs).prune(true).skipIfUpToDate(true).execute();
+            assertThat(fetchClient.revParse("origin/" + defaultBranchName), is(commitB));
+        } finally {
+            GitOperationListener.unregister(recording);
+        }
+        assertThat(skipped, contains(false, true, false));
+    }
+
+    @Test
+    public void testPrefetchKeepsFetchHead() throws Exception {
+        ObjectId commitA = commitOneFile();
+        String url = "file://" + repoRoot.getAbsolutePath();
+        File fetchDir = tempFolder.newFolder();
+        GitClient fetchClient = Git.with(TaskListener.NULL, new EnvVars()).in(fetchDir).using(gitImplName).getClient();
+        fetchClient.init_().workspace(fetchDir.getAbsolutePath()).execute();
+        /* Without destination, the fetched branch is only written to FETCH_HEAD */
+        fetchClient.fetch_().from(new URIish(url), Collections.singletonList(new RefSpec("refs/heads/" + defaultBranchName))).execute();
+        File fetchHead = new File(fetchDir, ".git/FETCH_HEAD");
+        byte[] fetched = Files.readAllBytes(fetchHead.toPath());
+        assertThat(new String(fetched, StandardCharsets.UTF_8), startsWith(commitA.name()));
+
+        ObjectId commitB = commitOneFile("Second commit");
+        ((AbstractGitAPIImpl) fetchClient).prefetch(url);
+        String prefetched = BackgroundPrefetch.refSpec(url).getDestination().replace("*", defaultBranchName);
+        assertThat(fetchClient.revParse(prefetched), is(commitB));
+        assertThat(Files.readAllBytes(fetchHead.toPath()), is(fetched));
+    }
+
+    @Test
+    public void testFetchSkipIfUpToDate_HostPermitAndCache() throws Exception {
+        ObjectId commitA = commitOneFile();
+        Daemon daemon = new Daemon(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        daemon.setRepositoryResolver(new FileResolver<>(repoRoot.getParentFile(), true));
+        daemon.start();
+        String host = daemon.getAddress().getAddress().getHostAddress();
+        URIish url = new URIish("git://" + host + ":" + daemon.getAddress().getPort() + "/" + repoRoot.getName());
+        List<RefSpec> refspecs = Collections.singletonList(new RefSpec("+refs/heads/*:refs/remotes/origin/*"));
+        File fetchDir = tempFolder.newFolder();
+        GitClient fetchClient = Git.with(TaskListener.NULL, new EnvVars()).in(fetchDir).using(gitImplName).getClient();
+        fetchClient.init_().workspace(fetchDir.getAbsolutePath()).execute();
+
+        HostConcurrencyGovernor governor = HostConcurrencyGovernor.INSTANCE;
+        RemoteReferenceCache cache = RemoteReferenceCache.INSTANCE;
+        HostConcurrencyGovernor.INSTANCE = new HostConcurrencyGovernor(1, Collections.emptyMap());
+        RemoteReferenceCache.INSTANCE = new RemoteReferenceCache(1, TimeUnit.MINUTES, 10);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Map<String, ObjectId>> poll;
+            Future<?> fetch;
+            /* The poll owns the cached query and waits for the permit, the fetch compares with the same query */
+            try (HostConcurrencyGovernor.Permit permit = HostConcurrencyGovernor.get().acquire(host, HostConcurrencyGovernor.Priority.BUILD)) {
+                poll = executor.submit(() -> fetchClient.getRemoteReferences(url.toString(), null, false, false));
+                while (HostConcurrencyGovernor.get().getQueued(host) < 1) {
+                    Thread.sleep(1);
+                }
+                fetch = executor.submit(() -> {
+                    fetchClient.fetch_().from(url, refspecs).skipIfUpToDate(true).execute();
+                    return null;
+                });
+                Thread.sleep(100);
+            }
+            assertThat(poll.get(1, TimeUnit.MINUTES), hasEntry("refs/heads/" + defaultBranchName, commitA));
+            fetch.get(1, TimeUnit.MINUTES);
+            assertThat(fetchClient.revParse("origin/" + defaultBranchName), is(commitA));
+            assertThat(HostConcurrencyGovernor.get().getActive(host), is(0));
+        } finally {
+            executor.shutdownNow();
+            HostConcurrencyGovernor.INSTANCE = governor;
+            RemoteReferenceCache.INSTANCE = cache;
+            daemon.stop();
+        }
+    }
+
+    @Test
+    public void testFetchCommits() throws Exception {
+        ObjectId commitA = commitOneFile();
+        ObjectId commitB = commitOneFile("Second commit");
+        URIish url = new URIish("file://" + repoRoot.getAbsolutePath());
+        List<RefSpec> refspecs = Collections.singletonList(new RefSpec("+refs/heads/*:refs/remotes/origin/*"));
+        File fetchDir = tempFolder.newFolder();
+        GitClient fetchClient = Git.with(TaskListener.NULL, new EnvVars()).in(fetchDir).using(gitImplName).getClient();
+        fetchClient.init_().workspace(fetchDir.getAbsolutePath()).execute();
+
+        List<Boolean> skipped = Collections.synchronizedList(new ArrayList<>());
+        GitOperationListener recording = event -> {
+            if (event.getOperation().equals("fetch")) {
+                skipped.add(event.isSkipped());
+            }
+        };
+        GitOperationListener.register(recording);
+        try {
+            /* The tip of a branch, fetched by object id or through its branch */
+            fetchClient.fetch_().from(url, refspecs).commits(Collections.singletonList(commitB)).tags(false).execute();
+            assertThat(fetchClient.isCommitInRepo(commitB), is(true));
+            fetchClient.fetch_().from(url, refspecs).commits(Collections.singletonList(commitA)).skipIfUpToDate(true).execute();
+        } finally {
+            GitOperationListener.unregister(recording);
+        }
+        assertThat(fetchClient.isCommitInRepo(commitA), is(true));
+        assertThat(skipped, hasItem(true));
+    }
+
     @Test
     public void testRefExists() throws Exception {
         String getSubmodulesRef = "refs/remotes/origin/tests/getSubmodules";
@@ -0,0 +1,104 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import hudson.EnvVars;
+import hudson.model.TaskListener;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GitOperationStatisticsTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final GitOperationStatistics statistics = new GitOperationStatistics();
+    private final List<GitOperationEvent> events = new CopyOnWriteArrayList<>();
+    private final GitOperationListener recording = events::add;
+
+    @After
+    public void unregister() {
+        GitOperationListener.unregister(recording);
+    }
+
+    private static GitOperationEvent event(String operation, String host, long millis, boolean succeeded) {
+        return new GitOperationEvent("git", operation, host, millis, 100, 10, -1, -1, succeeded ? 0 : 128, 10, succeeded, false, 0, null);
+    }
+
+    @Test
+    public void aggregatesByOperationAndHost() {
+        statistics.onOperation(event("fetch", "github.com", 5, true));
+        statistics.onOperation(event("fetch", "github.com", 700, false));
+        statistics.onOperation(event("rev-parse", null, 1, true));
+
+        Map<String, GitOperationStatistics.Summary> operations = statistics.getOperations();
+        assertThat(operations.keySet(), contains("git fetch", "git rev-parse"));
+        GitOperationStatistics.Summary fetch = operations.get("git fetch");
+        assertThat(fetch.getCount(), is(2L));
+        assertThat(fetch.getFailures(), is(1L));
+        assertThat(fetch.getTotalMillis(), is(705L));
+        assertThat(fetch.getMaxMillis(), is(700L));
+        assertThat(fetch.getStdoutBytes(), is(200L));
+        assertThat(fetch.getTransferredBytes(), is(0L));
+
+        long[] histogram = fetch.getHistogram();
+        long[] bounds = statistics.getHistogramBoundsMillis();
+        assertThat(histogram.length, is(bounds.length + 1));
+        assertThat(histogram[0], is(1L)); // 5ms <= 10ms
+        assertThat(histogram[5], is(1L)); // 500ms < 700ms <= 1000ms
+
+        assertThat(statistics.getHosts().keySet(), contains("github.com"));
+        assertThat(statistics.getHosts().get("github.com").getCount(), is(2L));
+    }
+
+    @Test
+    public void reset() {
+        statistics.onOperation(event("fetch", "github.com", 5, true));
+        statistics.reset();
+        assertThat(statistics.getOperations().isEmpty(), is(true));
+        assertThat(statistics.getHosts().isEmpty(), is(true));
+    }
+
+    @Test
+    public void cliGitReportsEachCommand() throws Exception {
+        GitOperationListener.register(recording);
+        File repo = tempFolder.newFolder();
+        GitClient git = Git.with(TaskListener.NULL, new EnvVars()).in(repo).using("git").getClient();
+        git.init();
+        git.hasGitRepo();
+
+        List<String> operations = events.stream().map(GitOperationEvent::getOperation).collect(Collectors.toList());
+        assertThat(operations, hasItem("init"));
+        GitOperationEvent init = events.stream().filter(e -> e.getOperation().equals("init")).findFirst().get();
+        assertThat(init.getImplementation(), is("git"));
+        assertThat(init.getHost(), is(nullValue()));
+        assertThat(init.getExitStatus(), is(0));
+        assertThat(init.isSucceeded(), is(true));
+    }
+
+    @Test
+    public void failingListenerDoesNotFailOperation() throws Exception {
+        GitOperationListener failing = event -> {
+            throw new IllegalStateException("listener failure");
+        };
+        GitOperationListener.register(failing);
+        try {
+            File repo = tempFolder.newFolder();
+            Git.with(TaskListener.NULL, new EnvVars()).in(repo).using("git").getClient().init();
+        } finally {
+            GitOperationListener.unregister(failing);
+        }
+    }
+}
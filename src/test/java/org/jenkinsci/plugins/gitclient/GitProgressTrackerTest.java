@@ -0,0 +1,104 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GitProgressTrackerTest {
+
+    private final List<GitProgress> reported = Collections.synchronizedList(new ArrayList<>());
+    private final GitProgressListener listener = reported::add;
+
+    @Before
+    public void registerListener() {
+        GitProgressListener.register(listener);
+    }
+
+    @After
+    public void unregisterListener() {
+        GitProgressListener.unregister(listener);
+    }
+
+    @Test
+    public void parseCommandLineProgress() throws Exception {
+        GitProgressTracker tracker = new GitProgressTracker("git", "fetch", "github.com");
+        try (OutputStream stream = tracker.stream()) {
+            stream.write(("remote: Enumerating objects: 273, done.\n"
+                    + "remote: Counting objects:  50% (1/2)\rremote: Counting objects: 100% (2/2), done.\n"
+                    + "remote: Compressing objects: 100% (2/2), done.\n"
+                    + "remote: Total 273 (delta 100), reused 0 (delta 0), pack-reused 0\n"
+                    + "Receiving objects:  45% (123/273), 1.20 MiB | 2.00 MiB/s\r"
+                    + "Receiving objects: 100% (273/273), 2.50 MiB | 3.00 MiB/s, done.\n"
+                    + "Resolving deltas:  50% (50/100)\rResolving deltas: 100% (100/100), done.\n"
+                    + "From https://github.com/jenkinsci/git-client-plugin\n").getBytes(StandardCharsets.UTF_8));
+        }
+        GitProgress summary = tracker.finish();
+        assertThat(summary.isDone(), is(true));
+        assertThat(summary.getPhase(), is(GitProgress.Phase.RESOLVING_DELTAS));
+        assertThat(summary.getReceivedObjects(), is(273L));
+        assertThat(summary.getTotalObjects(), is(273L));
+        assertThat(summary.getReceivedBytes(), is(2621440L));
+        assertThat(summary.getBytesPerSecond(), is(3145728L));
+        assertThat(summary.getMegabytesPerSecond(), is(3.0));
+        assertThat(summary.getResolvedDeltas(), is(100L));
+        assertThat(summary.getTotalDeltas(), is(100L));
+
+        List<GitProgress.Phase> phases = new ArrayList<>();
+        for (GitProgress progress : reported) {
+            if (phases.isEmpty() || phases.get(phases.size() - 1) != progress.getPhase()) {
+                phases.add(progress.getPhase());
+            }
+        }
+        assertThat(phases, contains(GitProgress.Phase.COUNTING_OBJECTS, GitProgress.Phase.COMPRESSING_OBJECTS,
+                GitProgress.Phase.RECEIVING_OBJECTS, GitProgress.Phase.RESOLVING_DELTAS));
+        assertThat(reported, hasItem(summary));
+    }
+
+    @Test
+    public void progressMonitorTasks() {
+        GitProgressTracker tracker = new GitProgressTracker("jgit", "clone", "github.com");
+        JGitProgressMonitor monitor = new JGitProgressMonitor(hudson.model.TaskListener.NULL, tracker);
+        monitor.beginTask("remote: Counting objects", 0);
+        monitor.update(10);
+        monitor.endTask();
+        monitor.beginTask("Receiving objects", 10);
+        monitor.update(4);
+        monitor.update(6);
+        monitor.endTask();
+        monitor.beginTask("Resolving deltas", 3);
+        monitor.update(3);
+        monitor.endTask();
+        tracker.receivedBytes(4096);
+
+        GitProgress summary = tracker.finish();
+        assertThat(summary.getReceivedObjects(), is(10L));
+        assertThat(summary.getTotalObjects(), is(10L));
+        assertThat(summary.getReceivedBytes(), is(4096L));
+        assertThat(summary.getResolvedDeltas(), is(3L));
+        assertThat(monitor.getLargestTaskCompleted(), is(10));
+        assertThat(reported.get(0).getPhase(), is(GitProgress.Phase.COUNTING_OBJECTS));
+        assertThat(reported.get(0).getTotal(), is(-1L));
+    }
+
+    @Test
+    public void noProgress() {
+        GitProgressTracker tracker = new GitProgressTracker("git", "fetch", null);
+        tracker.parse("fatal: repository 'https://example.com/missing.git/' not found\n");
+        GitProgress summary = tracker.finish();
+        assertThat(summary.getPhase(), is(nullValue()));
+        assertThat(summary.getReceivedObjects(), is(-1L));
+        assertThat(summary.getBytesPerSecond(), is(-1L));
+    }
+}
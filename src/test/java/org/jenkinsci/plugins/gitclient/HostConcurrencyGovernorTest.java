@@ -0,0 +1,120 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class HostConcurrencyGovernorTest {
+
+    private final HostConcurrencyGovernor governor = new HostConcurrencyGovernor(1, Collections.singletonMap("GitLab.com", 2));
+
+    private Thread waiter(HostConcurrencyGovernor.Priority priority, List<String> order, String name) {
+        Thread thread = new Thread(() -> {
+            try (HostConcurrencyGovernor.Permit permit = governor.acquire("github.com", priority)) {
+                synchronized (order) {
+                    order.add(name);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private void waitForQueued(String host, int queued) throws InterruptedException {
+        while (governor.getQueued(host) < queued) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void parseHostPermits() {
+        Map<String, Integer> permits = HostConcurrencyGovernor.parseHostPermits("github.com=8, git.example.com = 2,invalid,bad=x,");
+        assertThat(permits.size(), is(2));
+        assertThat(permits, hasEntry("github.com", 8));
+        assertThat(permits, hasEntry("git.example.com", 2));
+    }
+
+    @Test
+    public void permitsPerHost() throws Exception {
+        try (HostConcurrencyGovernor.Permit first = governor.acquire("gitlab.com", HostConcurrencyGovernor.Priority.BUILD);
+             HostConcurrencyGovernor.Permit second = governor.acquire("other.example.com", HostConcurrencyGovernor.Priority.BUILD)) {
+            assertThat(governor.getActive("gitlab.com"), is(1));
+            assertThat(governor.getActive("other.example.com"), is(1));
+        }
+        assertThat(governor.getActive("gitlab.com"), is(0));
+        assertThat(governor.getActive("other.example.com"), is(0));
+    }
+
+    @Test
+    public void localOperationsNotLimited() throws Exception {
+        try (HostConcurrencyGovernor.Permit permit = governor.acquire(null, HostConcurrencyGovernor.Priority.BUILD)) {
+            assertThat(permit.getQueueNanos(), is(0L));
+        }
+        HostConcurrencyGovernor disabled = new HostConcurrencyGovernor(0, Collections.emptyMap());
+        assertThat(disabled.isEnabled(), is(false));
+    }
+
+    @Test
+    public void nestedOperationsShareThePermit() throws Exception {
+        try (HostConcurrencyGovernor.Permit outer = governor.acquire("github.com", HostConcurrencyGovernor.Priority.BUILD)) {
+            try (HostConcurrencyGovernor.Permit inner = governor.acquire("github.com", HostConcurrencyGovernor.Priority.QUERY)) {
+                assertThat(governor.getActive("github.com"), is(1));
+            }
+            assertThat(governor.getActive("github.com"), is(1));
+        }
+        assertThat(governor.getActive("github.com"), is(0));
+    }
+
+    @Test
+    public void queuedByPriorityThenArrival() throws Exception {
+        List<String> order = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        try (HostConcurrencyGovernor.Permit permit = governor.acquire("github.com", HostConcurrencyGovernor.Priority.BUILD)) {
+            threads.add(waiter(HostConcurrencyGovernor.Priority.BACKGROUND, order, "prefetch"));
+            waitForQueued("github.com", 1);
+            threads.add(waiter(HostConcurrencyGovernor.Priority.QUERY, order, "poll"));
+            waitForQueued("github.com", 2);
+            threads.add(waiter(HostConcurrencyGovernor.Priority.BUILD, order, "build 1"));
+            waitForQueued("github.com", 3);
+            threads.add(waiter(HostConcurrencyGovernor.Priority.BUILD, order, "build 2"));
+            waitForQueued("github.com", 4);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(order, contains("build 1", "build 2", "poll", "prefetch"));
+        assertThat(governor.getActive("github.com"), is(0));
+    }
+
+    @Test
+    public void interruptedWaiterLeavesTheQueue() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        try (HostConcurrencyGovernor.Permit permit = governor.acquire("github.com", HostConcurrencyGovernor.Priority.BUILD)) {
+            Thread thread = new Thread(() -> {
+                try {
+                    governor.acquire("github.com", HostConcurrencyGovernor.Priority.BUILD).close();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            });
+            thread.start();
+            waitForQueued("github.com", 1);
+            thread.interrupt();
+            interrupted.await();
+            thread.join();
+            assertThat(governor.getQueued("github.com"), is(0));
+        }
+        assertThat(governor.getActive("github.com"), is(0));
+    }
+}
@@ -0,0 +1,163 @@
+package org.jenkinsci.plugins.gitclient;
+
+import com.sun.net.httpserver.HttpServer;
+import hudson.EnvVars;
+import hudson.model.TaskListener;
+import hudson.plugins.git.GitException;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.SystemReader;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThrows;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * JGit Client-specific test of the user git configuration, which applies
+ * to queries of remote repositories although they do not use a repository
+ * on disk.
+ */
+public class JGitUserConfigurationTest {
+    /* These tests are only for the JGit client. */
+    private static final String GIT_IMPL_NAME = "jgit";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private SystemReader systemReader;
+    private File userConfig;
+    private File sourceRepo;
+    private ObjectId sourceHead;
+    private GitClient gitClient;
+
+    @Before
+    public void setUserConfig() throws Exception {
+        systemReader = SystemReader.getInstance();
+        userConfig = tempFolder.newFile("gitconfig");
+        SystemReader.setInstance(new UserConfigSystemReader(systemReader, userConfig));
+
+        sourceRepo = tempFolder.newFolder("source");
+        GitClient sourceClient = Git.with(TaskListener.NULL, new EnvVars()).in(sourceRepo).using(GIT_IMPL_NAME).getClient();
+        sourceClient.init_().workspace(sourceRepo.getAbsolutePath()).execute();
+        Files.write(new File(sourceRepo, "file.txt").toPath(), "content".getBytes(StandardCharsets.UTF_8));
+        sourceClient.add("file.txt");
+        sourceClient.setAuthor("Source", "source@example.com");
+        sourceClient.setCommitter("Source", "source@example.com");
+        sourceClient.commit("Source commit");
+        sourceClient.branch("source-branch");
+        sourceHead = sourceClient.revParse("HEAD");
+
+        gitClient = Git.with(TaskListener.NULL, new EnvVars()).in(tempFolder.newFolder()).using(GIT_IMPL_NAME).getClient();
+    }
+
+    @After
+    public void restoreSystemReader() {
+        SystemReader.setInstance(systemReader);
+    }
+
+    private void writeUserConfig(String text) throws IOException {
+        Files.write(userConfig.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void insteadOfAppliesToRemoteQueries() throws Exception {
+        String url = "https://git.example.invalid/source.git";
+        writeUserConfig("[url \"" + sourceRepo.getAbsolutePath() + "\"]\n\tinsteadOf = " + url + "\n");
+
+        Map<String, ObjectId> references = gitClient.getRemoteReferences(url, null, true, false);
+        assertThat(references, hasEntry("refs/heads/source-branch", sourceHead));
+        assertThat(gitClient.getHeadRev(url, "source-branch"), is(sourceHead));
+        assertThat(gitClient.getHeadRevs(url, Collections.singletonList("source-branch")), hasEntry("source-branch", sourceHead));
+    }
+
+    @Test
+    public void httpSettingsApplyToRemoteQueries() throws Exception {
+        List<String> extraHeaders = Collections.synchronizedList(new ArrayList<>());
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            extraHeaders.add(exchange.getRequestHeaders().getFirst("X-User-Config"));
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            writeUserConfig("[http]\n\textraHeader = X-User-Config: applied\n");
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/missing.git";
+            assertThrows(GitException.class, () -> gitClient.getRemoteReferences(url, null, true, false));
+            assertThat(extraHeaders, is(not(empty())));
+            assertThat(extraHeaders, everyItem(is("applied")));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /* Reads the user configuration from a test file, everything else like the default system reader */
+    private static class UserConfigSystemReader extends SystemReader {
+        private final SystemReader delegate;
+        private final File userConfig;
+
+        UserConfigSystemReader(SystemReader delegate, File userConfig) {
+            this.delegate = delegate;
+            this.userConfig = userConfig;
+        }
+
+        @Override
+        public String getHostname() {
+            return delegate.getHostname();
+        }
+
+        @Override
+        public String getenv(String variable) {
+            return delegate.getenv(variable);
+        }
+
+        @Override
+        public String getProperty(String key) {
+            return delegate.getProperty(key);
+        }
+
+        @Override
+        public FileBasedConfig openUserConfig(Config parent, FS fs) {
+            return new FileBasedConfig(parent, userConfig, fs);
+        }
+
+        @Override
+        public FileBasedConfig openSystemConfig(Config parent, FS fs) {
+            return delegate.openSystemConfig(parent, fs);
+        }
+
+        @Override
+        public FileBasedConfig openJGitConfig(Config parent, FS fs) {
+            return delegate.openJGitConfig(parent, fs);
+        }
+
+        @Override
+        public long getCurrentTime() {
+            return delegate.getCurrentTime();
+        }
+
+        @Override
+        public int getTimezone(long when) {
+            return delegate.getTimezone(when);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ReferenceRepositoryCacheTest {
+
+    private final ReferenceRepositoryCache cache = new ReferenceRepositoryCache(new File("cache"), 1, TimeUnit.HOURS);
+
+    @Test
+    public void mirrorPerNormalizedUrl() {
+        File mirror = cache.mirrorOf("https://github.com/jenkinsci/git-client-plugin.git");
+        assertThat(mirror.getParentFile(), is(new File("cache")));
+        assertThat(mirror.getName(), startsWith("git-client-plugin-"));
+        assertThat(cache.mirrorOf("HTTPS://GitHub.com/jenkinsci/git-client-plugin.git/"), is(mirror));
+        assertThat(cache.mirrorOf("https://github.com/jenkinsci/git-plugin.git"), is(not(mirror)));
+        assertThat(cache.mirrorOf("git@github.com:jenkinsci/git-client-plugin.git"), is(not(mirror)));
+        assertThat(cache.mirrorOf("git@github.com:jenkinsci/git-client-plugin.git").getName(), startsWith("git-client-plugin-"));
+    }
+
+    @Test
+    public void noCacheWithoutDirectory() {
+        if (ReferenceRepositoryCache.ROOT == null) {
+            assertThat(ReferenceRepositoryCache.at(null), is(nullValue()));
+            assertThat(ReferenceRepositoryCache.at(""), is(nullValue()));
+        }
+        assertThat(ReferenceRepositoryCache.at("/tmp/cache").mirrorOf("https://example.com/repo.git").getParentFile(), is(new File("/tmp/cache")));
+    }
+}
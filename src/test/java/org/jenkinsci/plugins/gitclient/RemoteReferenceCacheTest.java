@@ -0,0 +1,135 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import hudson.plugins.git.GitException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class RemoteReferenceCacheTest {
+
+    private final AtomicInteger queries = new AtomicInteger();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private String query() {
+        return "answer " + queries.incrementAndGet();
+    }
+
+    @Test
+    public void disabledWithoutTtl() throws Exception {
+        RemoteReferenceCache cache = new RemoteReferenceCache(0, TimeUnit.SECONDS, 10);
+        assertThat(cache.get("key", this::query), is("answer 1"));
+        assertThat(cache.get("key", this::query), is("answer 2"));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void cachedUntilExpired() throws Exception {
+        RemoteReferenceCache cache = new RemoteReferenceCache(200, TimeUnit.MILLISECONDS, 10);
+        assertThat(cache.get("key", this::query), is("answer 1"));
+        assertThat(cache.get("key", this::query), is("answer 1"));
+        assertThat(cache.get("other", this::query), is("answer 2"));
+        Thread.sleep(300);
+        assertThat(cache.get("key", this::query), is("answer 3"));
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() throws Exception {
+        RemoteReferenceCache cache = new RemoteReferenceCache(1, TimeUnit.HOURS, 2);
+        cache.get("a", this::query);
+        cache.get("b", this::query);
+        cache.get("a", this::query);
+        cache.get("c", this::query); // evicts b
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get("a", this::query), is("answer 1"));
+        assertThat(cache.get("b", this::query), is("answer 4"));
+    }
+
+    @Test
+    public void failureNotCached() throws Exception {
+        RemoteReferenceCache cache = new RemoteReferenceCache(1, TimeUnit.HOURS, 10);
+        assertThrows(GitException.class, () -> cache.get("key", () -> {
+            throw new GitException("unreachable");
+        }));
+        assertThat(cache.get("key", this::query), is("answer 1"));
+    }
+
+    @Test
+    public void concurrentQueriesShareOneAnswer() throws Exception {
+        RemoteReferenceCache cache = new RemoteReferenceCache(1, TimeUnit.HOURS, 10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> first = executor.submit(() -> cache.get("key", () -> {
+            started.countDown();
+            release.await();
+            return query();
+        }));
+        assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+        Future<String> second = executor.submit(() -> cache.get("key", this::query));
+        Thread.sleep(100);
+        assertThat(second.isDone(), is(false));
+        release.countDown();
+        assertThat(first.get(10, TimeUnit.SECONDS), is("answer 1"));
+        assertThat(second.get(10, TimeUnit.SECONDS), is("answer 1"));
+        assertThat(queries.get(), is(1));
+    }
+
+    @Test
+    public void concurrentQueriesShareFailure() throws Exception {
+        RemoteReferenceCache cache = new RemoteReferenceCache(1, TimeUnit.HOURS, 10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> first = executor.submit(() -> cache.get("key", () -> {
+            started.countDown();
+            release.await();
+            throw new GitException("unreachable");
+        }));
+        assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+        Future<String> second = executor.submit(() -> cache.get("key", this::query));
+        Thread.sleep(100);
+        release.countDown();
+        Exception e = assertThrows(Exception.class, () -> second.get(10, TimeUnit.SECONDS));
+        assertThat(e.getCause() instanceof GitException, is(true));
+        assertThrows(Exception.class, () -> first.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void keyNormalizesUrl() {
+        assertThat(RemoteReferenceCache.key("git", "q", "HTTPS://GitHub.com/jenkinsci/Git-Client-Plugin/", "id"),
+                is(RemoteReferenceCache.key("git", "q", "https://github.com/jenkinsci/Git-Client-Plugin", "id")));
+        assertThat(RemoteReferenceCache.normalize("ssh://User@Example.COM:22/Repo.git"), is("ssh://User@example.com:22/Repo.git"));
+        assertThat(RemoteReferenceCache.normalize("git@github.com:jenkinsci/git-client-plugin.git"), is("git@github.com:jenkinsci/git-client-plugin.git"));
+    }
+
+    @Test
+    public void credentialsKeyDependsOnSecrets() {
+        String folderA = RemoteReferenceCache.credentialsKey(new UsernamePasswordCredentialsImpl(CredentialsScope.GLOBAL, "id", "folder a", "user", "secret-a"));
+        String folderB = RemoteReferenceCache.credentialsKey(new UsernamePasswordCredentialsImpl(CredentialsScope.GLOBAL, "id", "folder b", "user", "secret-b"));
+        String sameSecret = RemoteReferenceCache.credentialsKey(new UsernamePasswordCredentialsImpl(CredentialsScope.GLOBAL, "id", "copy", "user", "secret-a"));
+        assertThat(folderA, is(not(folderB)));
+        assertThat(folderA, is(sameSecret));
+        assertThat(folderA.contains("secret-a"), is(false));
+        assertThat(RemoteReferenceCache.credentialsKey(null), is(""));
+        assertThat(RemoteReferenceCache.credentialsKey(mock(StandardCredentials.class)), is(nullValue()));
+    }
+}
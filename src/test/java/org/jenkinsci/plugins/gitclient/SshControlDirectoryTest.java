@@ -0,0 +1,100 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assume.assumeTrue;
+
+import com.cloudbees.jenkins.plugins.sshcredentials.impl.BasicSSHUserPrivateKey;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import hudson.EnvVars;
+import hudson.model.TaskListener;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Connection sharing of command line git over ssh. The integration test
+ * runs when <code>-Dorg.jenkinsci.plugins.gitclient.SshControlDirectoryTest.url</code>
+ * names a repository readable with the private key <code>~/.ssh/id_rsa</code>,
+ * like <code>git@github.com:jenkinsci/git-client-plugin.git</code>.
+ */
+public class SshControlDirectoryTest {
+
+    private static final String URL = System.getProperty(SshControlDirectoryTest.class.getName() + ".url");
+    private static final File PRIVATE_KEY = new File(System.getProperty("user.home"), ".ssh/id_rsa");
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private boolean sshControlMaster;
+
+    @Before
+    public void enableConnectionSharing() {
+        sshControlMaster = CliGitAPIImpl.SSH_CONTROL_MASTER;
+        CliGitAPIImpl.SSH_CONTROL_MASTER = true;
+    }
+
+    @After
+    public void restoreConnectionSharing() {
+        CliGitAPIImpl.SSH_CONTROL_MASTER = sshControlMaster;
+    }
+
+    @Test
+    public void oneDirectoryPerJvm() {
+        File directory = SshControlDirectory.get(TaskListener.NULL);
+        assumeTrue(directory != null); // no POSIX file permissions
+        assertThat(SshControlDirectory.get(TaskListener.NULL), is(directory));
+        assertThat(directory.getAbsolutePath().length(), is(lessThanOrEqualTo(SshControlDirectory.MAX_LENGTH)));
+    }
+
+    @Test
+    public void controlPathDependsOnSecrets() {
+        File directory = new File("/tmp/gcssh0");
+        String a = SshControlDirectory.controlPath(directory, new UsernamePasswordCredentialsImpl(CredentialsScope.GLOBAL, "id", "folder a", "user", "secret-a"));
+        String b = SshControlDirectory.controlPath(directory, new UsernamePasswordCredentialsImpl(CredentialsScope.GLOBAL, "id", "folder b", "user", "secret-b"));
+        assertThat(a, startsWith("/tmp/gcssh0/"));
+        assertThat(a, endsWith("-%C"));
+        assertThat(a, is(not(b)));
+        /* %C expands to 40 characters, ssh adds 17 while creating the socket */
+        int socketName = a.substring(directory.getAbsolutePath().length()).replace("%C", "").length() + 40 + 17;
+        assertThat(SshControlDirectory.MAX_LENGTH + socketName, is(lessThanOrEqualTo(103)));
+    }
+
+    @Test
+    public void commandsShareOneMasterConnection() throws Exception {
+        assumeTrue(URL != null && PRIVATE_KEY.isFile());
+        String key = new String(Files.readAllBytes(PRIVATE_KEY.toPath()), StandardCharsets.UTF_8);
+        BasicSSHUserPrivateKey credentials = new BasicSSHUserPrivateKey(CredentialsScope.GLOBAL, "ssh-control", "git",
+                new BasicSSHUserPrivateKey.DirectEntryPrivateKeySource(key), null, "connection sharing");
+
+        File directory = SshControlDirectory.get(TaskListener.NULL);
+        assertThat(directory, is(notNullValue()));
+        for (int i = 0; i < 2; i++) {
+            /* A new client for each command, the master connection is shared by the JVM */
+            GitClient client = Git.with(TaskListener.NULL, new EnvVars()).in(tempFolder.newFolder()).using("git").getClient();
+            client.addDefaultCredentials(credentials);
+            assertThat(client.getRemoteReferences(URL, null, true, false).isEmpty(), is(false));
+            File[] sockets = directory.listFiles();
+            assertThat(sockets, arrayWithSize(1));
+            Process check = new ProcessBuilder("ssh", "-S", sockets[0].getAbsolutePath(), "-O", "check", "git-client").start();
+            assertThat(check.waitFor(), is(0));
+        }
+
+        SshControlDirectory.stopMasters(directory);
+        assertThat(directory.exists(), is(false));
+        assertThat(SshControlDirectory.get(TaskListener.NULL), is(notNullValue()));
+    }
+}
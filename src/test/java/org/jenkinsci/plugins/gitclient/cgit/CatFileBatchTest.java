@@ -0,0 +1,89 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+
+import hudson.EnvVars;
+import hudson.model.TaskListener;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.jenkinsci.plugins.gitclient.Git;
+import org.jenkinsci.plugins.gitclient.GitClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CatFileBatchTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File repo;
+    private ObjectId head;
+    private CatFileBatch batch;
+
+    @Before
+    public void createRepository() throws Exception {
+        repo = tempFolder.newFolder();
+        GitClient git = Git.with(TaskListener.NULL, new EnvVars()).in(repo).using("git").getClient();
+        git.init();
+        git.setAuthor("Cat File", "cat.file@example.com");
+        git.setCommitter("Cat File", "cat.file@example.com");
+        Files.write(new File(repo, "file.txt").toPath(), "content\n".getBytes(StandardCharsets.UTF_8));
+        git.add("file.txt");
+        git.commit("Initial commit");
+        head = git.revParse("HEAD");
+        batch = new CatFileBatch("git", repo, Collections.emptyMap(), 60, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void closeBatch() {
+        batch.close();
+    }
+
+    @Test
+    public void readCommit() throws Exception {
+        CatFileBatch.ObjectData commit = batch.read("HEAD^{commit}", 1, TimeUnit.MINUTES);
+        assertThat(commit, is(notNullValue()));
+        assertThat(commit.getId(), is(head));
+        assertThat(commit.getType(), is("commit"));
+        assertThat(new String(commit.getContent(), StandardCharsets.UTF_8), startsWith("tree "));
+    }
+
+    @Test
+    public void readBlob() throws Exception {
+        CatFileBatch.ObjectData blob = batch.read("HEAD:file.txt", 1, TimeUnit.MINUTES);
+        assertThat(blob.getType(), is("blob"));
+        assertThat(new String(blob.getContent(), StandardCharsets.UTF_8), is("content\n"));
+    }
+
+    @Test
+    public void missingObject() throws Exception {
+        assertThat(batch.read("no-such-branch", 1, TimeUnit.MINUTES), is(nullValue()));
+        assertThat(batch.read(ObjectId.zeroId().name(), 1, TimeUnit.MINUTES), is(nullValue()));
+        // the process keeps answering after a miss
+        assertThat(batch.read("HEAD", 1, TimeUnit.MINUTES).getId(), is(head));
+    }
+
+    @Test
+    public void readAfterClose() throws Exception {
+        assertThat(batch.read("HEAD", 1, TimeUnit.MINUTES).getId(), is(head));
+        batch.close();
+        assertThat(batch.read("HEAD", 1, TimeUnit.MINUTES).getId(), is(head));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLineBreak() throws Exception {
+        batch.read("HEAD\nmaster", 1, TimeUnit.MINUTES);
+    }
+}
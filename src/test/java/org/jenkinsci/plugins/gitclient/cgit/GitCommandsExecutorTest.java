@@ -4,6 +4,7 @@ import static java.util.Arrays.asList;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.theInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -15,9 +16,14 @@ import static org.mockito.Mockito.when;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import hudson.model.TaskListener;
 import hudson.plugins.git.GitException;
@@ -239,6 +245,55 @@ public class GitCommandsExecutorTest {
         }
     }
 
+    @Test
+    public void commandsByHostLimitedPerHost() throws Exception {
+        Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+        AtomicInteger maxRunningOnHost = new AtomicInteger();
+        Map<String, List<Callable<String>>> commandsByHost = new LinkedHashMap<>();
+        List<Callable<String>> allCommands = new ArrayList<>();
+        for (String host : asList("github.com", "gitlab.com", "bitbucket.org")) {
+            List<Callable<String>> commands = new ArrayList<>();
+            for (int i = 0; i < threads + 2; i++) {
+                Callable<String> command = successfulCommand("some value");
+                Callable<String> counting = () -> {
+                    AtomicInteger onHost = running.computeIfAbsent(host, k -> new AtomicInteger());
+                    maxRunningOnHost.accumulateAndGet(onHost.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(10);
+                        return command.call();
+                    } finally {
+                        onHost.decrementAndGet();
+                    }
+                };
+                commands.add(counting);
+                allCommands.add(command);
+            }
+            commandsByHost.put(host, commands);
+        }
+
+        new GitCommandsExecutor(threads, listener).invokeAll(commandsByHost, 2);
+
+        for (Callable<String> command : allCommands) {
+            verify(command).call();
+        }
+        assertThat(maxRunningOnHost.get(), is(lessThanOrEqualTo(2)));
+    }
+
+    @Test
+    public void commandsByHostFirstCommandFails() throws Exception {
+        Map<String, List<Callable<String>>> commandsByHost = new LinkedHashMap<>();
+        commandsByHost.put("github.com", asList(erroneousCommand(new RuntimeException("some error"))));
+        commandsByHost.put("gitlab.com", Collections.emptyList());
+
+        try {
+            new GitCommandsExecutor(threads, listener).invokeAll(commandsByHost, 1);
+            fail("Expected an exception but none was thrown");
+        } catch (Exception e) {
+            assertThat(e, instanceOf(GitException.class));
+            assertThat(e.getMessage(), is("java.lang.RuntimeException: some error"));
+        }
+    }
+
     private TaskListener mockTaskListener() {
         TaskListener listener = mock(TaskListener.class);
         when(listener.getLogger()).thenReturn(mock(PrintStream.class));
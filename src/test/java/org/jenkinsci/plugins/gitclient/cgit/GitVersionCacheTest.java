@@ -0,0 +1,93 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThrows;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jenkinsci.plugins.gitclient.GitException;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GitVersionCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final AtomicInteger probes = new AtomicInteger();
+
+    @After
+    public void clearCache() {
+        GitVersionCache.clear();
+    }
+
+    private String probe(File executable) throws InterruptedException {
+        return GitVersionCache.getVersion(executable.getAbsolutePath(), () -> "git version 2." + probes.incrementAndGet() + ".0");
+    }
+
+    @Test
+    public void probesOncePerExecutable() throws Exception {
+        File git = tempFolder.newFile("git");
+        assertThat(probe(git), is("git version 2.1.0"));
+        assertThat(probe(git), is("git version 2.1.0"));
+        assertThat(probes.get(), is(1));
+        File otherGit = tempFolder.newFile("other-git");
+        assertThat(probe(otherGit), is("git version 2.2.0"));
+        assertThat(probe(git), is("git version 2.1.0"));
+    }
+
+    @Test
+    public void probesAgainWhenExecutableChanges() throws Exception {
+        File git = tempFolder.newFile("git");
+        assertThat(probe(git), is("git version 2.1.0"));
+        Files.write(git.toPath(), "upgraded".getBytes(StandardCharsets.UTF_8));
+        assertThat(probe(git), is("git version 2.2.0"));
+        assertThat(probe(git), is("git version 2.2.0"));
+        assertThat(git.setLastModified(git.lastModified() - 10000), is(true));
+        assertThat(probe(git), is("git version 2.3.0"));
+    }
+
+    @Test
+    public void missingExecutableIsNotCached() throws Exception {
+        File git = new File(tempFolder.getRoot(), "missing-git");
+        assertThat(probe(git), is("git version 2.1.0"));
+        assertThat(probe(git), is("git version 2.2.0"));
+    }
+
+    @Test
+    public void failedProbeIsNotCached() throws Exception {
+        File git = tempFolder.newFile("git");
+        assertThrows(GitException.class, () -> GitVersionCache.getVersion(git.getAbsolutePath(), () -> {
+            throw new GitException("git not started");
+        }));
+        assertThat(probe(git), is("git version 2.1.0"));
+    }
+
+    @Test
+    public void resolvesFromPath() throws Exception {
+        File bin = tempFolder.newFolder("bin");
+        File git = new File(bin, "git");
+        assertThat(git.createNewFile(), is(true));
+        String path = tempFolder.newFolder("empty").getPath() + File.pathSeparator + bin.getPath();
+        assertThat(GitVersionCache.resolve("git", path, false), is(git));
+        assertThat(GitVersionCache.resolve("git", null, false), is(nullValue()));
+        assertThat(GitVersionCache.resolve("no-such-git", path, false), is(nullValue()));
+        assertThat(GitVersionCache.resolve(git.getPath(), null, false), is(git));
+    }
+
+    @Test
+    public void resolvesWindowsExtension() throws Exception {
+        File bin = tempFolder.newFolder("bin");
+        File git = new File(bin, "git.exe");
+        assertThat(git.createNewFile(), is(true));
+        assertThat(GitVersionCache.resolve("git", bin.getPath(), true), is(git));
+        assertThat(GitVersionCache.resolve("git", bin.getPath(), false), is(nullValue()));
+    }
+}
@@ -0,0 +1,65 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LineOutputStreamTest {
+
+    private final List<String> lines = new ArrayList<>();
+
+    @Test
+    public void splitsLinesAcrossWrites() throws Exception {
+        LineOutputStream out = new LineOutputStream(lines::add, StandardCharsets.UTF_8);
+        out.write("first\nsec".getBytes(StandardCharsets.UTF_8));
+        assertThat(lines, contains("first"));
+        out.write("ond\n\nlast".getBytes(StandardCharsets.UTF_8));
+        assertThat(lines, contains("first", "second", ""));
+        out.close();
+        assertThat(lines, contains("first", "second", "", "last"));
+    }
+
+    @Test
+    public void keepsCarriageReturn() throws Exception {
+        LineOutputStream out = new LineOutputStream(lines::add, StandardCharsets.UTF_8);
+        out.write("windows\r\n".getBytes(StandardCharsets.UTF_8));
+        out.close();
+        assertThat(lines, contains("windows\r"));
+    }
+
+    @Test
+    public void decodesWithCharset() throws Exception {
+        LineOutputStream out = new LineOutputStream(lines::add, StandardCharsets.UTF_8);
+        out.write("refs/tags/\u00e9t\u00e9\n".getBytes(StandardCharsets.UTF_8));
+        out.close();
+        assertThat(lines, contains("refs/tags/\u00e9t\u00e9"));
+    }
+
+    @Test
+    public void noOutput() throws Exception {
+        LineOutputStream out = new LineOutputStream(lines::add, StandardCharsets.UTF_8);
+        out.close();
+        assertThat(lines, is(empty()));
+    }
+
+    @Test
+    public void handlerFailureIsRethrown() throws Exception {
+        LineOutputStream out = new LineOutputStream(line -> {
+            lines.add(line);
+            throw new IllegalStateException("bad line " + line);
+        }, StandardCharsets.UTF_8);
+        out.write("one\ntwo\n".getBytes(StandardCharsets.UTF_8));
+        out.close();
+        assertThat(lines, contains("one"));
+        IllegalStateException e = assertThrows(IllegalStateException.class, out::rethrowFailure);
+        assertThat(e.getMessage(), is("bad line one"));
+    }
+}
@@ -0,0 +1,189 @@
+package org.jenkinsci.plugins.gitclient.jgit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import hudson.model.TaskListener;
+import org.apache.commons.io.IOUtils;
+import org.jenkinsci.plugins.gitclient.trilead.SmartCredentialsProvider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link PreemptiveAuthHttpClientConnection} using the {@link PooledHttpClient}.
+ */
+public class PooledHttpClientTest {
+
+    private boolean enabled;
+    private HttpServer server;
+    private HttpServer proxyServer;
+    private String url;
+
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<>());
+    private final List<String> authorizations = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> proxiedRequests = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void startServer() throws IOException {
+        enabled = PooledHttpClient.ENABLED;
+        PooledHttpClient.ENABLED = true;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::serve);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/repo.git/info/refs";
+    }
+
+    @After
+    public void stopServer() {
+        PooledHttpClient.ENABLED = enabled;
+        server.stop(0);
+        if (proxyServer != null) {
+            proxyServer.stop(0);
+        }
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        String path = exchange.getRequestURI().getPath();
+        if (path.startsWith("/private/")) {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if (authorization == null) {
+                exchange.getResponseHeaders().add("WWW-Authenticate", "Basic realm=\"git\"");
+                respond(exchange, 401, "");
+                return;
+            }
+            authorizations.add(authorization);
+        }
+        if (path.startsWith("/missing/")) {
+            respond(exchange, 404, "Repository not found");
+            return;
+        }
+        respond(exchange, 200, "refs");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static PreemptiveAuthHttpClientConnection connect(SmartCredentialsProvider provider, String url, Proxy proxy) throws IOException {
+        PreemptiveAuthHttpClientConnection connection = new PreemptiveAuthHttpClientConnection(provider, url, proxy);
+        connection.setRequestMethod("GET");
+        connection.setConnectTimeout(0);
+        connection.setReadTimeout(10000);
+        return connection;
+    }
+
+    private static String read(PreemptiveAuthHttpClientConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static SmartCredentialsProvider credentials(String user, String password) {
+        SmartCredentialsProvider provider = new SmartCredentialsProvider(TaskListener.NULL);
+        provider.addDefaultCredentials(new UsernamePasswordCredentialsImpl(CredentialsScope.GLOBAL, "http", "pooled", user, password));
+        return provider;
+    }
+
+    private static String basic(String user, String password) {
+        return "Basic " + Base64.getEncoder().encodeToString((user + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void connectionReusedAcrossRequests() throws Exception {
+        SmartCredentialsProvider provider = new SmartCredentialsProvider(TaskListener.NULL);
+        for (int i = 0; i < 3; i++) {
+            PreemptiveAuthHttpClientConnection connection = connect(provider, url, null);
+            assertThat(connection.getResponseCode(), is(200));
+            assertThat(read(connection), is("refs"));
+        }
+        assertThat(clientPorts, hasSize(1));
+    }
+
+    @Test
+    public void credentialsPerRequest() throws Exception {
+        String privateUrl = url.replace("/repo.git/", "/private/repo.git/");
+        PreemptiveAuthHttpClientConnection alice = connect(credentials("alice", "secret-a"), privateUrl, null);
+        assertThat(alice.getResponseCode(), is(200));
+        read(alice);
+        PreemptiveAuthHttpClientConnection bob = connect(credentials("bob", "secret-b"), privateUrl, null);
+        assertThat(bob.getResponseCode(), is(200));
+        read(bob);
+        PreemptiveAuthHttpClientConnection anonymous = connect(new SmartCredentialsProvider(TaskListener.NULL), privateUrl, null);
+        assertThat(anonymous.getResponseCode(), is(401));
+
+        assertThat(authorizations, contains(basic("alice", "secret-a"), basic("bob", "secret-b")));
+        assertThat(clientPorts, hasSize(1));
+    }
+
+    @Test
+    public void proxyPerRequest() throws Exception {
+        proxyServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        proxyServer.createContext("/", exchange -> {
+            proxiedRequests.add(exchange.getRequestURI().toString());
+            respond(exchange, 200, "proxied");
+        });
+        proxyServer.start();
+        Proxy proxy = new Proxy(Proxy.Type.HTTP, proxyServer.getAddress());
+        SmartCredentialsProvider provider = new SmartCredentialsProvider(TaskListener.NULL);
+
+        PreemptiveAuthHttpClientConnection proxied = connect(provider, url, proxy);
+        assertThat(proxied.getResponseCode(), is(200));
+        assertThat(read(proxied), is("proxied"));
+        assertThat(proxied.usingProxy(), is(true));
+
+        PreemptiveAuthHttpClientConnection direct = connect(provider, url, Proxy.NO_PROXY);
+        assertThat(direct.getResponseCode(), is(200));
+        assertThat(read(direct), is("refs"));
+        assertThat(direct.usingProxy(), is(false));
+
+        assertThat(proxiedRequests, hasSize(1));
+        assertThat(proxiedRequests.get(0), startsWith("http://"));
+    }
+
+    @Test
+    public void errorBodyBuffered() throws Exception {
+        SmartCredentialsProvider provider = new SmartCredentialsProvider(TaskListener.NULL);
+        /* More unread error responses than connections per route, each one must return its connection to the pool */
+        List<PreemptiveAuthHttpClientConnection> unread = new ArrayList<>();
+        for (int i = 0; i <= PooledHttpClient.MAX_CONNECTIONS_PER_ROUTE; i++) {
+            PreemptiveAuthHttpClientConnection missing = connect(provider, url.replace("/repo.git/", "/missing/"), null);
+            assertThat(missing.getResponseCode(), is(404));
+            unread.add(missing);
+        }
+        PreemptiveAuthHttpClientConnection connection = connect(provider, url, null);
+        assertThat(connection.getResponseCode(), is(200));
+        assertThat(read(connection), is("refs"));
+        assertThat(clientPorts, hasSize(1));
+
+        /* The error body is still readable after the connection went back to the pool */
+        assertThat(read(unread.get(0)), is("Repository not found"));
+    }
+}
@@ -1,10 +1,13 @@
 package org.jenkinsci.plugins.gitclient.trilead;
 
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import hudson.model.TaskListener;
 import hudson.util.Secret;
 import hudson.util.StreamTaskListener;
 import java.net.URISyntaxException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import org.eclipse.jgit.errors.UnsupportedCredentialItem;
 import org.eclipse.jgit.transport.CredentialItem;
 import org.eclipse.jgit.transport.URIish;
@@ -222,4 +225,32 @@ public class SmartCredentialsProviderTest {
                          provider.get(gitURI, username, password, maskedUsername, unmaskedUsername, maskedStringType);
                      });
     }
+
+    @Test
+    public void testGetResolved() {
+        StandardUsernamePasswordCredentials credentials = new StandardUsernamePasswordCredentialsImpl("resolved-username", Secret.fromString("password-secret"));
+        AtomicInteger resolutions = new AtomicInteger();
+        Function<SmartCredentialsProvider, String> resolver = p -> {
+            resolutions.incrementAndGet();
+            StandardCredentials c = p.getCredentials(gitURI.toString());
+            return c == null ? null : ((StandardUsernamePasswordCredentials) c).getUsername();
+        };
+
+        assertNull(provider.getResolved("key", resolver));
+        assertNull(provider.getResolved("key", resolver));
+        assertEquals(1, resolutions.get());
+
+        provider.addCredentials(gitURI.toString(), credentials);
+        assertEquals("resolved-username", provider.getResolved("key", resolver));
+        assertEquals("resolved-username", provider.getResolved("key", resolver));
+        assertEquals(2, resolutions.get());
+
+        provider.clearCredentials();
+        assertNull(provider.getResolved("key", resolver));
+        assertEquals(3, resolutions.get());
+
+        provider.addDefaultCredentials(credentials);
+        assertEquals("resolved-username", provider.getResolved("key", resolver));
+        assertEquals(4, resolutions.get());
+    }
 }
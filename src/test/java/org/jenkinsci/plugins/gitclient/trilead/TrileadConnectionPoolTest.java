@@ -0,0 +1,117 @@
+package org.jenkinsci.plugins.gitclient.trilead;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.common.StandardUsernameCredentials;
+import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import com.trilead.ssh2.Connection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+
+public class TrileadConnectionPoolTest {
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final StandardUsernameCredentials credentials = credentials("pool", "secret");
+
+    private static StandardUsernameCredentials credentials(String id, String password) {
+        return new UsernamePasswordCredentialsImpl(CredentialsScope.GLOBAL, id, "pooled connections", "user", password);
+    }
+
+    /* Connections are never connected, the pool only needs their identity */
+    private Connection connect() {
+        connections.incrementAndGet();
+        return new Connection("git.example.com", 22);
+    }
+
+    private TrileadConnectionPool.Key key(StandardUsernameCredentials c) {
+        return new TrileadConnectionPool.Key("git.example.com", 22, "git", c);
+    }
+
+    @Test
+    public void sessionsShareConnection() throws Exception {
+        TrileadConnectionPool pool = new TrileadConnectionPool(2, 1, TimeUnit.HOURS);
+        TrileadSession first = pool.getSession(key(credentials), this::connect);
+        TrileadSession second = pool.getSession(key(credentials), this::connect);
+        assertThat(connections.get(), is(1));
+        assertThat(second.con, is(sameInstance(first.con)));
+
+        TrileadSession third = pool.getSession(key(credentials), this::connect);
+        assertThat(connections.get(), is(2));
+        assertThat(third.con, is(not(sameInstance(first.con))));
+
+        first.disconnect();
+        first.disconnect(); // only released once
+        TrileadSession fourth = pool.getSession(key(credentials), this::connect);
+        assertThat(fourth.con, is(sameInstance(second.con)));
+        assertThat(connections.get(), is(2));
+        assertThat(pool.getSession(key(credentials), this::connect).con, is(sameInstance(third.con)));
+        assertThat(connections.get(), is(2));
+    }
+
+    @Test
+    public void otherCredentialsOtherConnection() throws Exception {
+        TrileadConnectionPool pool = new TrileadConnectionPool(8, 1, TimeUnit.HOURS);
+        /* Same id, in another folder or updated */
+        StandardUsernameCredentials sameUser = credentials("pool", "other");
+        TrileadSession first = pool.getSession(key(credentials), this::connect);
+        TrileadSession second = pool.getSession(key(sameUser), this::connect);
+        assertThat(second.con, is(not(sameInstance(first.con))));
+        TrileadSession otherUser = pool.getSession(new TrileadConnectionPool.Key("git.example.com", 22, "admin", credentials), this::connect);
+        assertThat(otherUser.con, is(not(sameInstance(first.con))));
+        assertThat(connections.get(), is(3));
+        assertThat(pool.size(), is(3));
+    }
+
+    @Test
+    public void sameSecretsShareConnection() throws Exception {
+        TrileadConnectionPool pool = new TrileadConnectionPool(8, 1, TimeUnit.HOURS);
+        TrileadSession first = pool.getSession(key(credentials), this::connect);
+        /* Credentials are looked up again for each command, the pool must not depend on the object */
+        TrileadSession second = pool.getSession(key(credentials("pool", "secret")), this::connect);
+        assertThat(second.con, is(sameInstance(first.con)));
+        TrileadSession otherId = pool.getSession(key(credentials("other", "secret")), this::connect);
+        assertThat(otherId.con, is(not(sameInstance(first.con))));
+        assertThat(connections.get(), is(2));
+    }
+
+    @Test
+    public void unknownCredentialsTypeNeedsSameObject() throws Exception {
+        TrileadConnectionPool pool = new TrileadConnectionPool(8, 1, TimeUnit.HOURS);
+        StandardUsernameCredentials unknown = mock(StandardUsernameCredentials.class);
+        TrileadSession first = pool.getSession(key(unknown), this::connect);
+        assertThat(pool.getSession(key(unknown), this::connect).con, is(sameInstance(first.con)));
+        TrileadSession other = pool.getSession(key(mock(StandardUsernameCredentials.class)), this::connect);
+        assertThat(other.con, is(not(sameInstance(first.con))));
+        assertThat(connections.get(), is(2));
+    }
+
+    @Test
+    public void idleConnectionClosed() throws Exception {
+        TrileadConnectionPool pool = new TrileadConnectionPool(8, 100, TimeUnit.MILLISECONDS);
+        TrileadSession session = pool.getSession(key(credentials), this::connect);
+        Thread.sleep(300);
+        assertThat(pool.size(), is(1)); // in use, not idle
+        session.disconnect();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (pool.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(pool.size(), is(0));
+        pool.getSession(key(credentials), this::connect);
+        assertThat(connections.get(), is(2));
+    }
+
+    @Test
+    public void failedAuthenticationNotPooled() throws Exception {
+        TrileadConnectionPool pool = new TrileadConnectionPool(8, 1, TimeUnit.HOURS);
+        assertThat(pool.getSession(key(credentials), () -> null), is(nullValue()));
+        assertThat(pool.size(), is(0));
+    }
+}